@@ -0,0 +1,3 @@
+-- Optimistic lock column for inventory rows; existing rows start at version 0
+
+ALTER TABLE inventory ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
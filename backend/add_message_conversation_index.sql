@@ -0,0 +1,4 @@
+-- Composite index backing keyset-paginated conversation history
+-- (GET /api/chat/conversation/{userId}/page)
+
+CREATE INDEX idx_messages_sender_receiver_sent ON messages (sender_id, receiver_id, sent_at);
@@ -0,0 +1,52 @@
+package com.medapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    /**
+     * Drains per-connection SSE send queues. Bounded so a burst of slow clients
+     * cannot grow threads without limit; when saturated a drain is rejected and
+     * the connection's events wait in its own queue (see SseHub), so the
+     * publishing thread never writes to a socket.
+     */
+    @Bean(name = "sseExecutor")
+    public ThreadPoolTaskExecutor sseExecutor(@Value("${app.sse.executor.core-size:4}") int coreSize,
+                                              @Value("${app.sse.executor.max-size:16}") int maxSize,
+                                              @Value("${app.sse.executor.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("sse-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Delivers queued notifications. The outbox worker never hands it more tasks
+     * than the per-channel permits allow, so one thread per permit is enough.
+     */
+    @Bean(name = "notificationExecutor")
+    public ThreadPoolTaskExecutor notificationExecutor(@Value("${app.notifications.email.concurrency:4}") int emailConcurrency,
+                                                      @Value("${app.notifications.sms.concurrency:4}") int smsConcurrency) {
+        int size = emailConcurrency + smsConcurrency;
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setQueueCapacity(size);
+        executor.setThreadNamePrefix("notify-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,29 @@
+package com.medapp.config;
+
+import com.medapp.service.SmtpConnectionPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+@Configuration
+public class MailConfig {
+
+    /**
+     * Reusable SMTP connections built from the spring.mail.* settings. Sized to the
+     * outbox's email concurrency by default, so every email worker has a connection,
+     * plus a reserve for account emails sent while a request waits.
+     */
+    @Bean(destroyMethod = "close")
+    public SmtpConnectionPool smtpConnectionPool(JavaMailSenderImpl mailSender,
+                                                 @Value("${app.mail.pool.size:${app.notifications.email.concurrency:4}}") int size,
+                                                 @Value("${app.mail.pool.max-idle-ms:60000}") long maxIdleMs,
+                                                 @Value("${app.mail.pool.max-messages-per-connection:100}") int maxMessages,
+                                                 @Value("${app.mail.pool.acquire-timeout-ms:30000}") long acquireTimeoutMs,
+                                                 @Value("${app.mail.pool.reserved-interactive:1}") int reservedInteractive,
+                                                 @Value("${app.mail.pool.interactive-acquire-timeout-ms:5000}") long interactiveAcquireTimeoutMs) {
+        return new SmtpConnectionPool(mailSender.getSession(), mailSender.getProtocol(),
+                mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword(),
+                size, maxIdleMs, maxMessages, acquireTimeoutMs, reservedInteractive, interactiveAcquireTimeoutMs);
+    }
+}
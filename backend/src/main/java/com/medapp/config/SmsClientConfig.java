@@ -0,0 +1,42 @@
+package com.medapp.config;
+
+import com.medapp.service.CircuitBreaker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+@Configuration
+public class SmsClientConfig {
+
+    /**
+     * RestTemplate for the MSG91 API on a shared java.net.http.HttpClient, which
+     * keeps HTTP/1.1 connections alive and reuses them across requests. Connect and
+     * read timeouts bound how long one slow call can hold an outbox worker.
+     */
+    @Bean(name = "smsRestTemplate")
+    public RestTemplate smsRestTemplate(@Value("${app.sms.http.connect-timeout-ms:3000}") long connectTimeoutMs,
+                                        @Value("${app.sms.http.read-timeout-ms:10000}") long readTimeoutMs) {
+        return smsRestTemplate(Duration.ofMillis(connectTimeoutMs), Duration.ofMillis(readTimeoutMs));
+    }
+
+    public static RestTemplate smsRestTemplate(Duration connectTimeout, Duration readTimeout) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        return new RestTemplate(requestFactory);
+    }
+
+    @Bean(name = "smsCircuitBreaker")
+    public CircuitBreaker smsCircuitBreaker(@Value("${app.sms.circuit.failure-threshold:5}") int failureThreshold,
+                                            @Value("${app.sms.circuit.open-ms:30000}") long openMs) {
+        return new CircuitBreaker("msg91", failureThreshold, openMs);
+    }
+}
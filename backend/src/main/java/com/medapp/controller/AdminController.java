@@ -4,6 +4,9 @@ import com.medapp.dto.ApiResponse;
 import com.medapp.dto.UserDTO;
 import com.medapp.model.User;
 import com.medapp.repository.*;
+import com.medapp.security.JwtTokenCache;
+import com.medapp.service.ChatDirectoryService;
+import com.medapp.service.ConversationSummaryService;
 import com.medapp.service.EmailService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +51,15 @@ public class AdminController {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private JwtTokenCache tokenCache;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private ChatDirectoryService chatDirectoryService;
+
     // Get all pending pharmacists
     @GetMapping("/pending-pharmacists")
     public ResponseEntity<ApiResponse<List<UserDTO>>> getPendingPharmacists() {
@@ -108,6 +120,8 @@ public class AdminController {
 
             user.setVerified(true);
             userRepository.save(user);
+            tokenCache.invalidateUser(user.getEmail());
+            chatDirectoryService.invalidate(user.getRole());
 
             // Send approval email
             emailService.sendAccountVerifiedEmail(user);
@@ -156,6 +170,9 @@ public class AdminController {
 
             // Delete the user account (CASCADE DELETE will handle related data)
             userRepository.delete(user);
+            tokenCache.invalidateUser(user.getEmail());
+            conversationSummaryService.removeUser(user.getId());
+            chatDirectoryService.invalidate(user.getRole());
 
             logger.info("Pharmacist rejected and deleted: {}", user.getEmail());
             return ResponseEntity.ok(ApiResponse.success("Pharmacist rejected successfully",
@@ -223,6 +240,8 @@ public class AdminController {
             User user = userOpt.get();
             user.setActive(request.isActive());
             userRepository.save(user);
+            tokenCache.invalidateUser(user.getEmail());
+            chatDirectoryService.invalidate(user.getRole());
 
             String status = request.isActive() ? "activated" : "deactivated";
             logger.info("User {} {} successfully", user.getEmail(), status);
@@ -251,6 +270,9 @@ public class AdminController {
 
             // Delete the user account (CASCADE DELETE will handle related data)
             userRepository.delete(user);
+            tokenCache.invalidateUser(user.getEmail());
+            conversationSummaryService.removeUser(user.getId());
+            chatDirectoryService.invalidate(user.getRole());
             logger.info("User {} deleted successfully", user.getEmail());
             return ResponseEntity.ok(ApiResponse.success("User deleted successfully"));
         } catch (Exception e) {
@@ -13,8 +13,10 @@ import com.medapp.exception.InvalidTokenException;
 import com.medapp.model.Patient;
 import com.medapp.model.User;
 import com.medapp.repository.UserRepository;
+import com.medapp.security.JwtTokenCache;
 import com.medapp.security.JwtUtil;
 import com.medapp.service.AuthService;
+import com.medapp.service.ChatDirectoryService;
 import com.medapp.service.EmailService;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
@@ -51,6 +53,10 @@ public class AuthController {
     private PasswordEncoder passwordEncoder;
     @Autowired
     private EmailService emailService;
+    @Autowired
+    private JwtTokenCache tokenCache;
+    @Autowired
+    private ChatDirectoryService chatDirectoryService;
 
     @PostMapping("/register")
     public ResponseEntity<ApiResponse<AuthResponse>> register(@Valid @RequestBody RegisterRequest request) {
@@ -137,6 +143,7 @@ public class AuthController {
             patient.setVerified(true);
             
             userRepository.save(patient);
+            chatDirectoryService.invalidate(User.Role.PATIENT);
             
             logger.info("Test user created successfully");
             return ResponseEntity.ok(ApiResponse.success("Test user created", "Use email: test@remedgo.com, password: test123"));
@@ -166,6 +173,7 @@ public class AuthController {
             admin.setPhone("1234567890");
             
             userRepository.save(admin);
+            chatDirectoryService.invalidate(User.Role.ADMIN);
             
             logger.info("Admin user created successfully");
             return ResponseEntity.ok(ApiResponse.success("Admin created", "Use email: admin@remedgo.com, password: admin123"));
@@ -186,6 +194,7 @@ public class AuthController {
             String newPassword = "password123";
             user.setPassword(passwordEncoder.encode(newPassword));
             userRepository.save(user);
+            tokenCache.invalidateUser(user.getEmail());
             
             logger.info("User password fixed successfully");
             return ResponseEntity.ok(ApiResponse.success("Password fixed", "New password: " + newPassword));
@@ -224,6 +233,9 @@ public class AuthController {
             if (request.getPhone() != null) {
                 user.setPhone(request.getPhone().trim());
             }
+            if (request.getDigestOptOut() != null) {
+                user.setDigestOptOut(request.getDigestOptOut());
+            }
             
             // Handle role-specific fields
             if (request.getAddress() != null) {
@@ -243,6 +255,8 @@ public class AuthController {
             }
             
             userRepository.save(user);
+            // Name may have changed
+            chatDirectoryService.invalidate(user.getRole());
             return ResponseEntity.ok(ApiResponse.success(user, "Profile updated"));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -328,6 +342,7 @@ public class AuthController {
             String hashedNewPassword = authService.hashPassword(request.getNewPassword());
             user.setPassword(hashedNewPassword);
             userRepository.save(user);
+            tokenCache.invalidateUser(user.getEmail());
 
             logger.info("Password updated successfully for user: {}", email);
             return ResponseEntity.ok(ApiResponse.success("Password updated successfully", "Password updated successfully"));
@@ -3,12 +3,10 @@ package com.medapp.controller;
 import com.medapp.dto.ApiResponse;
 import com.medapp.model.Inventory;
 import com.medapp.model.User;
-import com.medapp.repository.UserRepository;
+import com.medapp.security.AuthenticatedUser;
 import com.medapp.service.InventoryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,8 +22,6 @@ public class InventoryController {
     
     @Autowired
     private InventoryService inventoryService;
-    @Autowired
-    private UserRepository userRepository;
 
     // DTO for frontend
     public static class InventoryDTO {
@@ -40,6 +36,7 @@ public class InventoryController {
         public String expiryDate;
         public String lastUpdated;
         public boolean isLowStock;
+        public Long version;
 
         public InventoryDTO(Inventory i) {
             this.id = i.getId() != null ? i.getId().toString() : "";
@@ -53,20 +50,20 @@ public class InventoryController {
             this.expiryDate = i.getExpiryDate() != null ? i.getExpiryDate().toString() : "";
             this.lastUpdated = i.getLastUpdated() != null ? i.getLastUpdated().toString() : "";
             this.isLowStock = i.isLowStock();
+            this.version = i.getVersion();
         }
     }
 
     // Pharmacist-only endpoints
     @GetMapping("/my-stock")
-    public ResponseEntity<ApiResponse<List<InventoryDTO>>> getMyInventory(@AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Getting inventory for user: {}", userDetails.getUsername());
+    public ResponseEntity<ApiResponse<List<InventoryDTO>>> getMyInventory(AuthenticatedUser currentUser) {
+        logger.info("Getting inventory for user: {}", currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only pharmacists can access inventory"));
             }
             
-            List<Inventory> inventory = inventoryService.getInventoryByPharmacist(user);
+            List<Inventory> inventory = inventoryService.getInventoryByPharmacist(currentUser.getId());
             List<InventoryDTO> dtos = inventory.stream()
                 .map(InventoryDTO::new)
                 .collect(Collectors.toList());
@@ -80,15 +77,14 @@ public class InventoryController {
     }
 
     @GetMapping("/low-stock")
-    public ResponseEntity<ApiResponse<List<InventoryDTO>>> getLowStockItems(@AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Getting low stock items for user: {}", userDetails.getUsername());
+    public ResponseEntity<ApiResponse<List<InventoryDTO>>> getLowStockItems(AuthenticatedUser currentUser) {
+        logger.info("Getting low stock items for user: {}", currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only pharmacists can access inventory"));
             }
             
-            List<Inventory> lowStockItems = inventoryService.getLowStockItemsByPharmacist(user);
+            List<Inventory> lowStockItems = inventoryService.getLowStockItemsByPharmacist(currentUser.getId());
             List<InventoryDTO> dtos = lowStockItems.stream()
                 .map(InventoryDTO::new)
                 .collect(Collectors.toList());
@@ -104,11 +100,10 @@ public class InventoryController {
     @PostMapping("/add")
     public ResponseEntity<ApiResponse<InventoryDTO>> addMedicineToInventory(
             @RequestBody AddInventoryRequest request,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Adding medicine to inventory request from user: {}", userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Adding medicine to inventory request from user: {}", currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only pharmacists can add medicines to inventory"));
             }
             
@@ -127,7 +122,7 @@ public class InventoryController {
                 }
             }
             
-            Inventory added = inventoryService.addMedicineToInventory(request.medicineId, user.getId(), inventoryDetails);
+            Inventory added = inventoryService.addMedicineToInventory(request.medicineId, currentUser.getId(), inventoryDetails);
             logger.info("Medicine added to inventory successfully");
             return ResponseEntity.ok(ApiResponse.success(new InventoryDTO(added), "Medicine added to inventory successfully"));
         } catch (Exception e) {
@@ -140,17 +135,17 @@ public class InventoryController {
     public ResponseEntity<ApiResponse<InventoryDTO>> updateInventory(
             @PathVariable Long id,
             @RequestBody UpdateInventoryRequest request,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Updating inventory {} request from user: {}", id, userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Updating inventory {} request from user: {}", id, currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only pharmacists can update inventory"));
             }
             
             Inventory inventoryDetails = new Inventory();
             inventoryDetails.setStockQuantity(request.stockQuantity);
             inventoryDetails.setLowStockThreshold(request.lowStockThreshold);
+            inventoryDetails.setVersion(request.version);
             
             // Parse expiry date if provided
             if (request.expiryDate != null && !request.expiryDate.trim().isEmpty()) {
@@ -184,5 +179,6 @@ public class InventoryController {
         public Integer stockQuantity;
         public Integer lowStockThreshold;
         public String expiryDate;
+        public Long version;
     }
 } 
\ No newline at end of file
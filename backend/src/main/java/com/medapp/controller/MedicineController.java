@@ -3,12 +3,10 @@ package com.medapp.controller;
 import com.medapp.dto.ApiResponse;
 import com.medapp.model.Medicine;
 import com.medapp.model.User;
-import com.medapp.repository.UserRepository;
+import com.medapp.security.AuthenticatedUser;
 import com.medapp.service.MedicineService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,8 +21,6 @@ public class MedicineController {
     
     @Autowired
     private MedicineService medicineService;
-    @Autowired
-    private UserRepository userRepository;
 
     // DTO for frontend
     public static class MedicineDTO {
@@ -55,11 +51,10 @@ public class MedicineController {
     @PostMapping
     public ResponseEntity<ApiResponse<MedicineDTO>> createMedicine(
             @RequestBody Medicine medicine,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Creating medicine request from user: {}", userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Creating medicine request from user: {}", currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.ADMIN) {
+            if (!currentUser.hasRole(User.Role.ADMIN)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only admins can create medicines"));
             }
             
@@ -76,11 +71,10 @@ public class MedicineController {
     public ResponseEntity<ApiResponse<MedicineDTO>> updateMedicine(
             @PathVariable Long id,
             @RequestBody Medicine medicineDetails,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Updating medicine {} request from user: {}", id, userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Updating medicine {} request from user: {}", id, currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.ADMIN) {
+            if (!currentUser.hasRole(User.Role.ADMIN)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only admins can update medicines"));
             }
             
@@ -96,11 +90,10 @@ public class MedicineController {
     @DeleteMapping("/{id}")
     public ResponseEntity<ApiResponse<Void>> deleteMedicine(
             @PathVariable Long id,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Deleting medicine {} request from user: {}", id, userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Deleting medicine {} request from user: {}", id, currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.ADMIN) {
+            if (!currentUser.hasRole(User.Role.ADMIN)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only admins can delete medicines"));
             }
             
@@ -115,11 +108,10 @@ public class MedicineController {
 
     // Read-only endpoints (accessible by admins and pharmacists)
     @GetMapping
-    public ResponseEntity<ApiResponse<List<MedicineDTO>>> getAllMedicines(@AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Getting all medicines request from user: {}", userDetails.getUsername());
+    public ResponseEntity<ApiResponse<List<MedicineDTO>>> getAllMedicines(AuthenticatedUser currentUser) {
+        logger.info("Getting all medicines request from user: {}", currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.ADMIN && user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.ADMIN) && !currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only admins and pharmacists can view medicines"));
             }
             
@@ -139,11 +131,10 @@ public class MedicineController {
     @GetMapping("/{id}")
     public ResponseEntity<ApiResponse<MedicineDTO>> getMedicineById(
             @PathVariable Long id,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Getting medicine {} request from user: {}", id, userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Getting medicine {} request from user: {}", id, currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.ADMIN && user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.ADMIN) && !currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only admins and pharmacists can view medicines"));
             }
             
@@ -1,15 +1,21 @@
 package com.medapp.controller;
 
+import com.medapp.dto.DirectoryEntry;
 import com.medapp.dto.ApiResponse;
+import com.medapp.model.ConversationSummary;
 import com.medapp.model.Message;
 import com.medapp.model.User;
 import com.medapp.repository.UserRepository;
+import com.medapp.security.AuthenticatedUser;
+import com.medapp.service.ChatDirectoryService;
+import com.medapp.service.ChatEventService;
+import com.medapp.service.ConversationSummaryService;
 import com.medapp.service.MessageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +32,9 @@ public class MessageController {
     @Autowired
     private MessageService messageService;
     
+    @Autowired
+    private ChatEventService chatEventService;
+    
     @Autowired
     private UserRepository userRepository;
 
@@ -56,6 +65,22 @@ public class MessageController {
         }
     }
 
+    public static class ConversationPageDTO {
+        public List<MessageDTO> messages;
+        public boolean hasMore;
+        public String oldestId;
+        public String newestId;
+
+        public ConversationPageDTO(MessageService.ConversationPage page) {
+            this.messages = page.messages.stream()
+                .map(MessageDTO::new)
+                .collect(Collectors.toList());
+            this.hasMore = page.hasMore;
+            this.oldestId = messages.isEmpty() ? null : messages.get(0).id;
+            this.newestId = messages.isEmpty() ? null : messages.get(messages.size() - 1).id;
+        }
+    }
+
     public static class UserDTO {
         public String id;
         public String name;
@@ -68,6 +93,32 @@ public class MessageController {
             this.email = u.getEmail();
             this.role = u.getRole() != null ? u.getRole().name() : "";
         }
+
+        public UserDTO(DirectoryEntry e) {
+            this.id = e.id != null ? e.id.toString() : "";
+            this.name = e.name;
+            this.email = e.email;
+            this.role = e.role != null ? e.role.name() : "";
+        }
+    }
+
+    // Conversation partner plus the latest message and unread count
+    public static class ConversationDTO extends UserDTO {
+        public String lastMessageId;
+        public String lastSenderId;
+        public String lastMessage;
+        public String lastMessageAt;
+        public long unreadCount;
+
+        public ConversationDTO(ConversationSummaryService.ConversationView view) {
+            super(view.otherUser);
+            ConversationSummary s = view.summary;
+            this.lastMessageId = s != null && s.getLastMessageId() != null ? s.getLastMessageId().toString() : "";
+            this.lastSenderId = s != null && s.getLastSenderId() != null ? s.getLastSenderId().toString() : "";
+            this.lastMessage = s != null && s.getLastSnippet() != null ? s.getLastSnippet() : "";
+            this.lastMessageAt = s != null && s.getLastMessageAt() != null ? s.getLastMessageAt().toString() : "";
+            this.unreadCount = view.unreadCount;
+        }
     }
 
     /**
@@ -77,13 +128,13 @@ public class MessageController {
     @PostMapping("/send")
     public ResponseEntity<ApiResponse<MessageDTO>> sendMessage(
             @RequestBody Map<String, Object> body,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Send message request from user: {}", userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Send message request from user: {}", currentUser.getEmail());
         try {
             Long receiverId = Long.valueOf(body.get("receiverId").toString());
             String content = body.get("content").toString();
             
-            Message message = messageService.sendMessage(userDetails.getUsername(), receiverId, content);
+            Message message = messageService.sendMessage(currentUser.getId(), currentUser.getRole(), receiverId, content);
             
             logger.info("Message sent successfully: {}", message.getId());
             return ResponseEntity.ok(ApiResponse.success(
@@ -96,6 +147,17 @@ public class MessageController {
         }
     }
 
+    /**
+     * Live chat events for the current user (message, message-edited, message-deleted, read).
+     * EventSource cannot set headers, so the JWT may be passed as ?token=
+     * GET /api/chat/stream
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(AuthenticatedUser currentUser) {
+        logger.info("Chat stream opened by user: {}", currentUser.getEmail());
+        return chatEventService.subscribe(currentUser.getId());
+    }
+
     /**
      * Get conversation with another user
      * GET /api/chat/conversation/{userId}
@@ -103,10 +165,10 @@ public class MessageController {
     @GetMapping("/conversation/{userId}")
     public ResponseEntity<ApiResponse<List<MessageDTO>>> getConversation(
             @PathVariable Long userId,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Get conversation request from user: {} with user: {}", userDetails.getUsername(), userId);
+            AuthenticatedUser currentUser) {
+        logger.info("Get conversation request from user: {} with user: {}", currentUser.getEmail(), userId);
         try {
-            List<Message> messages = messageService.getConversation(userDetails.getUsername(), userId);
+            List<Message> messages = messageService.getConversation(currentUser.getId(), currentUser.getRole(), userId);
             List<MessageDTO> dtos = messages.stream()
                 .map(MessageDTO::new)
                 .collect(Collectors.toList());
@@ -120,15 +182,65 @@ public class MessageController {
     }
 
     /**
-     * Get available users to chat with
-     * GET /api/chat/users
+     * Get one page of a conversation with another user
+     * GET /api/chat/conversation/{userId}/page?before={messageId}&after={messageId}&limit={n}
+     */
+    @GetMapping("/conversation/{userId}/page")
+    public ResponseEntity<ApiResponse<ConversationPageDTO>> getConversationPage(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            AuthenticatedUser currentUser) {
+        logger.info("Get conversation page request from user: {} with user: {} (before={}, after={})",
+                currentUser.getEmail(), userId, before, after);
+        try {
+            MessageService.ConversationPage page = messageService.getConversationPage(
+                currentUser.getId(), currentUser.getRole(), userId, before, after, limit);
+            
+            return ResponseEntity.ok(ApiResponse.success(new ConversationPageDTO(page), "Conversation retrieved successfully"));
+        } catch (Exception e) {
+            logger.error("Failed to get conversation page: {}", e.getMessage(), e);
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * Mark messages from another user as read, optionally up to a message id
+     * POST /api/chat/conversation/{userId}/read?upTo={messageId}
+     */
+    @PostMapping("/conversation/{userId}/read")
+    public ResponseEntity<ApiResponse<Map<String, Integer>>> markConversationRead(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Long upTo,
+            AuthenticatedUser currentUser) {
+        logger.info("Mark read request from user: {} for messages from user: {} up to {}", currentUser.getEmail(), userId, upTo);
+        try {
+            int updated = messageService.markMessagesAsRead(userId, currentUser.getId(), upTo);
+            
+            return ResponseEntity.ok(ApiResponse.success(
+                Map.of("markedRead", updated),
+                "Messages marked as read"
+            ));
+        } catch (Exception e) {
+            logger.error("Failed to mark messages as read: {}", e.getMessage(), e);
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * Get available users to chat with, sorted by name; all of them unless size is given
+     * GET /api/chat/users?q={namePrefix}&page={n}&size={n}
      */
     @GetMapping("/users")
     public ResponseEntity<ApiResponse<List<UserDTO>>> getAvailableChatUsers(
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Get available chat users request from user: {}", userDetails.getUsername());
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size,
+            AuthenticatedUser currentUser) {
+        logger.info("Get available chat users request from user: {}", currentUser.getEmail());
         try {
-            List<User> users = messageService.getAvailableChatUsers(userDetails.getUsername());
+            List<DirectoryEntry> users = messageService.getAvailableChatUsers(currentUser.getRole(), q, page, size);
             List<UserDTO> dtos = users.stream()
                 .map(UserDTO::new)
                 .collect(Collectors.toList());
@@ -142,17 +254,16 @@ public class MessageController {
     }
 
     /**
-     * Get conversation partners (users you've chatted with)
+     * Get conversations (users you've chatted with, latest message and unread count), most recent first
      * GET /api/chat/conversations
      */
     @GetMapping("/conversations")
-    public ResponseEntity<ApiResponse<List<UserDTO>>> getConversationPartners(
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Get conversation partners request from user: {}", userDetails.getUsername());
+    public ResponseEntity<ApiResponse<List<ConversationDTO>>> getConversationPartners(
+            AuthenticatedUser currentUser) {
+        logger.info("Get conversation partners request from user: {}", currentUser.getEmail());
         try {
-            List<User> partners = messageService.getConversationPartners(userDetails.getUsername());
-            List<UserDTO> dtos = partners.stream()
-                .map(UserDTO::new)
+            List<ConversationDTO> dtos = messageService.getConversations(currentUser.getId()).stream()
+                .map(ConversationDTO::new)
                 .collect(Collectors.toList());
             
             logger.info("Found {} conversation partners", dtos.size());
@@ -169,9 +280,9 @@ public class MessageController {
      */
     @GetMapping("/unread-count")
     public ResponseEntity<ApiResponse<Map<String, Long>>> getUnreadMessageCount(
-            @AuthenticationPrincipal UserDetails userDetails) {
+            AuthenticatedUser currentUser) {
         try {
-            long unreadCount = messageService.getUnreadMessageCount(userDetails.getUsername());
+            long unreadCount = messageService.getUnreadMessageCount(currentUser.getId());
             
             return ResponseEntity.ok(ApiResponse.success(
                 Map.of("unreadCount", unreadCount), 
@@ -191,15 +302,15 @@ public class MessageController {
     public ResponseEntity<ApiResponse<MessageDTO>> editMessage(
             @PathVariable Long messageId,
             @RequestBody Map<String, String> body,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Edit message request from user: {} for message: {}", userDetails.getUsername(), messageId);
+            AuthenticatedUser currentUser) {
+        logger.info("Edit message request from user: {} for message: {}", currentUser.getEmail(), messageId);
         try {
             String newContent = body.get("content");
             if (newContent == null || newContent.trim().isEmpty()) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Message content cannot be empty"));
             }
             
-            Message updatedMessage = messageService.editMessage(userDetails.getUsername(), messageId, newContent.trim());
+            Message updatedMessage = messageService.editMessage(currentUser.getId(), messageId, newContent.trim());
             
             logger.info("Message edited successfully: {}", messageId);
             return ResponseEntity.ok(ApiResponse.success(
@@ -219,10 +330,10 @@ public class MessageController {
     @DeleteMapping("/messages/{messageId}")
     public ResponseEntity<ApiResponse<String>> deleteMessage(
             @PathVariable Long messageId,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Delete message request from user: {} for message: {}", userDetails.getUsername(), messageId);
+            AuthenticatedUser currentUser) {
+        logger.info("Delete message request from user: {} for message: {}", currentUser.getEmail(), messageId);
         try {
-            messageService.deleteMessage(userDetails.getUsername(), messageId);
+            messageService.deleteMessage(currentUser.getId(), messageId);
             
             logger.info("Message deleted successfully: {}", messageId);
             return ResponseEntity.ok(ApiResponse.success("Message deleted successfully", "Message deleted successfully"));
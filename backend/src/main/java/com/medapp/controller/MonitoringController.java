@@ -0,0 +1,141 @@
+package com.medapp.controller;
+
+import com.medapp.dto.ApiResponse;
+import com.medapp.model.NotificationOutbox;
+import com.medapp.security.JwtTokenCache;
+import com.medapp.service.ChatDirectoryService;
+import com.medapp.service.ChatEventService;
+import com.medapp.service.IdempotencyStore;
+import com.medapp.service.NotificationOutboxService;
+import com.medapp.service.RefillReminderService;
+import com.medapp.service.SmsService;
+import com.medapp.service.TrackingService;
+import com.medapp.service.UnreadCounterService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin-only runtime counters for the in-process caches and queues
+ */
+@RestController
+@RequestMapping("/api/admin/monitoring")
+@CrossOrigin(origins = "*", allowedHeaders = "*")
+@PreAuthorize("hasRole('ADMIN')")
+public class MonitoringController {
+    @Autowired
+    private JwtTokenCache tokenCache;
+    @Autowired
+    private ChatEventService chatEventService;
+    @Autowired
+    private ChatDirectoryService chatDirectoryService;
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+    @Autowired
+    private TrackingService trackingService;
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+    @Autowired
+    private RefillReminderService refillReminderService;
+    @Autowired
+    private SmsService smsService;
+
+    /**
+     * GET /api/admin/monitoring/token-cache
+     */
+    @GetMapping("/token-cache")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getTokenCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success(tokenCache.getStats(), "Token cache statistics"));
+    }
+
+    /**
+     * GET /api/admin/monitoring/chat-stream
+     */
+    @GetMapping("/chat-stream")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getChatStreamStats() {
+        return ResponseEntity.ok(ApiResponse.success(chatEventService.getStats(), "Chat stream statistics"));
+    }
+
+    /**
+     * GET /api/admin/monitoring/chat-directory
+     */
+    @GetMapping("/chat-directory")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getChatDirectoryStats() {
+        return ResponseEntity.ok(ApiResponse.success(chatDirectoryService.getStats(), "Chat directory statistics"));
+    }
+
+    /**
+     * GET /api/admin/monitoring/unread-counters
+     */
+    @GetMapping("/unread-counters")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getUnreadCounterStats() {
+        return ResponseEntity.ok(ApiResponse.success(unreadCounterService.getStats(), "Unread counter statistics"));
+    }
+
+    /**
+     * GET /api/admin/monitoring/tracking-stream
+     */
+    @GetMapping("/tracking-stream")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getTrackingStreamStats() {
+        return ResponseEntity.ok(ApiResponse.success(trackingService.getStreamStats(), "Tracking stream statistics"));
+    }
+
+    /**
+     * GET /api/admin/monitoring/idempotency
+     */
+    @GetMapping("/idempotency")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getIdempotencyStats() {
+        return ResponseEntity.ok(ApiResponse.success(idempotencyStore.getStats(), "Idempotency key statistics"));
+    }
+
+    /**
+     * GET /api/admin/monitoring/reminders
+     */
+    @GetMapping("/reminders")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getReminderJobStats() {
+        return ResponseEntity.ok(ApiResponse.success(refillReminderService.getJobStats(), "Refill reminder job statistics"));
+    }
+
+    /**
+     * GET /api/admin/monitoring/notifications
+     */
+    @GetMapping("/notifications")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getNotificationStats() {
+        return ResponseEntity.ok(ApiResponse.success(notificationOutboxService.getStats(), "Notification outbox statistics"));
+    }
+
+    /**
+     * GET /api/admin/monitoring/sms
+     */
+    @GetMapping("/sms")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getSmsStats() {
+        return ResponseEntity.ok(ApiResponse.success(smsService.getStats(), "SMS provider statistics"));
+    }
+
+    /**
+     * GET /api/admin/monitoring/notifications/dead?limit=50
+     */
+    @GetMapping("/notifications/dead")
+    public ResponseEntity<ApiResponse<List<NotificationOutbox>>> getDeadNotifications(
+            @RequestParam(defaultValue = "50") int limit) {
+        int size = Math.max(1, Math.min(limit, 500));
+        return ResponseEntity.ok(ApiResponse.success(notificationOutboxService.getDeadLetters(size), "Dead-lettered notifications"));
+    }
+
+    /**
+     * POST /api/admin/monitoring/notifications/{id}/retry
+     */
+    @PostMapping("/notifications/{id}/retry")
+    public ResponseEntity<ApiResponse<String>> retryDeadNotification(@PathVariable Long id) {
+        if (!notificationOutboxService.retryDead(id)) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("Notification is not dead-lettered"));
+        }
+        return ResponseEntity.ok(ApiResponse.success("Requeued", "Notification requeued"));
+    }
+}
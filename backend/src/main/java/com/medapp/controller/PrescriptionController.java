@@ -4,6 +4,7 @@ import com.medapp.dto.ApiResponse;
 import com.medapp.model.Prescription;
 import com.medapp.model.User;
 import com.medapp.repository.UserRepository;
+import com.medapp.security.AuthenticatedUser;
 import com.medapp.service.PrescriptionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -106,11 +107,10 @@ public class PrescriptionController {
 
     // Pharmacist's pending prescriptions
     @GetMapping("/pending")
-    public ResponseEntity<ApiResponse<List<PrescriptionDTO>>> getPendingPrescriptions(@AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Getting pending prescriptions for user: {}", userDetails.getUsername());
+    public ResponseEntity<ApiResponse<List<PrescriptionDTO>>> getPendingPrescriptions(AuthenticatedUser currentUser) {
+        logger.info("Getting pending prescriptions for user: {}", currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only pharmacists can access pending prescriptions"));
             }
             List<Prescription> prescriptions = prescriptionService.getPendingPrescriptions();
@@ -144,13 +144,12 @@ public class PrescriptionController {
     @GetMapping("/{id}")
     public ResponseEntity<ApiResponse<PrescriptionDTO>> getPrescriptionById(
             @PathVariable Long id,
-            @AuthenticationPrincipal UserDetails userDetails) {
+            AuthenticatedUser currentUser) {
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
             Prescription prescription = prescriptionService.getPrescriptionById(id);
             
             // Check if user has access to this prescription
-            if (user.getRole() == User.Role.PATIENT && !prescription.getPatient().getId().equals(user.getId())) {
+            if (currentUser.hasRole(User.Role.PATIENT) && !prescription.getPatient().getId().equals(currentUser.getId())) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Access denied"));
             }
             
@@ -166,10 +165,9 @@ public class PrescriptionController {
     public ResponseEntity<ApiResponse<PrescriptionDTO>> updatePrescriptionStatus(
             @PathVariable Long id,
             @RequestBody Map<String, String> body,
-            @AuthenticationPrincipal UserDetails userDetails) {
+            AuthenticatedUser currentUser) {
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only pharmacists can update prescription status"));
             }
             Prescription.Status status = Prescription.Status.valueOf(body.get("status"));
@@ -1,16 +1,21 @@
 package com.medapp.controller;
 
 import com.medapp.dto.ApiResponse;
+import com.medapp.dto.RefillStockItem;
 import com.medapp.model.*;
 import com.medapp.repository.*;
+import com.medapp.security.AuthenticatedUser;
+import com.medapp.service.IdempotencyStore;
+import com.medapp.service.InventoryService;
 import com.medapp.service.RefillRequestService;
 import com.medapp.service.RefillReminderService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.transaction.annotation.Transactional;
+import jakarta.annotation.PostConstruct;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 import com.medapp.service.TrackingService;
 import com.medapp.model.PrescriptionTracking;
@@ -24,30 +29,37 @@ import java.time.LocalDate;
 public class RefillController {
     @Autowired private RefillRequestRepository refillRequestRepository;
     @Autowired private InventoryRepository inventoryRepository;
-    @Autowired private MedicineRepository medicineRepository;
     @Autowired private UserRepository userRepository;
     @Autowired private PrescriptionRepository prescriptionRepository;
     @Autowired private MedicineFillHistoryRepository historyRepository;
+    @Autowired private FilledMedicineBatchWriter filledMedicineBatchWriter;
+    @Autowired private InventoryService inventoryService;
     @Autowired private TrackingService trackingService;
     @Autowired private RefillReminderService refillReminderService;
+    @Autowired private RefillRequestService refillRequestService;
+    @Autowired private IdempotencyStore idempotencyStore;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    // Fill and dispatch commit before their response is remembered under an Idempotency-Key
+    private TransactionTemplate transaction;
+
+    @PostConstruct
+    void init() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
 
     public static class RefillDetailDTO {
         public String prescriptionId;
         public String patientId;
         public String patientName;
         public String prescriptionImageUrl;
-        public List<Item> items = new ArrayList<>();
-        public static class Item {
-            public Long medicineId;
-            public String medicineName;
-            public int stock;
-        }
+        public List<RefillStockItem> items = new ArrayList<>();
     }
 
     @GetMapping("/refills/{id}")
     @PreAuthorize("hasRole('PHARMACIST') or hasRole('ADMIN')")
     public ResponseEntity<ApiResponse<RefillDetailDTO>> getRefillDetails(@PathVariable Long id,
-            @AuthenticationPrincipal UserDetails userDetails) {
+            AuthenticatedUser currentUser) {
         RefillRequest rr = refillRequestRepository.findById(id).orElseThrow();
         Prescription p = rr.getPrescription();
         RefillDetailDTO dto = new RefillDetailDTO();
@@ -55,18 +67,8 @@ public class RefillController {
         dto.patientId = p.getPatient().getId().toString();
         dto.patientName = p.getPatient().getName();
         dto.prescriptionImageUrl = p.getImageUrl();
-        // Provide stock per medicine available for pharmacist
-        User pharmacist = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-        for (Medicine m : medicineRepository.findAll()) {
-            Inventory inv = inventoryRepository.findByMedicineIdAndPharmacistId(m.getId(), pharmacist.getId()).orElse(null);
-            if (inv != null) {
-                RefillDetailDTO.Item it = new RefillDetailDTO.Item();
-                it.medicineId = m.getId();
-                it.medicineName = m.getName();
-                it.stock = inv.getStockQuantity();
-                dto.items.add(it);
-            }
-        }
+        // Provide stock per medicine the pharmacist holds, in one query
+        dto.items = inventoryRepository.findRefillStockByPharmacistId(currentUser.getId());
         return ResponseEntity.ok(ApiResponse.success(dto, "Refill details"));
     }
 
@@ -83,20 +85,32 @@ public class RefillController {
         public boolean enableReminders = true;
     }
 
+    public static class DispatchBatchRequest {
+        public List<Long> refillIds;
+    }
+
+    private static final int MAX_DISPATCH_BATCH = 200;
+
     @PostMapping("/refills/{id}/fill")
     @PreAuthorize("hasRole('PHARMACIST') or hasRole('ADMIN')")
-    @Transactional
     public ResponseEntity<ApiResponse<String>> fillRefill(@PathVariable Long id,
             @RequestBody FillRequest request,
-            @AuthenticationPrincipal UserDetails userDetails) {
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            AuthenticatedUser currentUser) {
+        return idempotencyStore.execute(currentUser.getId(), idempotencyKey, "fill:" + id,
+                () -> transaction.execute(status -> fill(id, request, currentUser, status)));
+    }
+
+    private ResponseEntity<ApiResponse<String>> fill(Long id, FillRequest request,
+            AuthenticatedUser currentUser, TransactionStatus status) {
         RefillRequest rr = refillRequestRepository.findById(id).orElseThrow();
         if (rr.getStatus() != RefillRequest.Status.APPROVED) {
             return ResponseEntity.badRequest().body(ApiResponse.error("Only approved requests can be filled"));
         }
-        User pharmacist = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-        if (pharmacist.getRole() != User.Role.PHARMACIST) {
+        if (!currentUser.hasRole(User.Role.PHARMACIST)) {
             return ResponseEntity.badRequest().body(ApiResponse.error("Only pharmacists can fill"));
         }
+        User pharmacist = userRepository.getReferenceById(currentUser.getId());
         // Track filling started
         try { trackingService.record(rr.getPrescription().getId(), PrescriptionTracking.Status.FILLING, null); } catch (Exception ignore) {}
         MedicineFillHistory history = new MedicineFillHistory();
@@ -105,27 +119,31 @@ public class RefillController {
         history.setPharmacist(pharmacist);
         List<FilledMedicine> filled = new ArrayList<>();
 
-        // Stock validation pass
+        // A medicine listed on several lines must cover all of them
+        Map<Long, Integer> neededByMedicine = new LinkedHashMap<>();
         for (FilledItemInput input : request.items) {
-            int timesPerDay = (input.morning ? 1 : 0) + (input.afternoon ? 1 : 0) + (input.night ? 1 : 0);
+            int timesPerDay = timesPerDay(input);
             if (timesPerDay == 0 || input.days <= 0) continue;
-            int totalNeeded = timesPerDay * input.days;
-            Inventory inv = inventoryRepository.findByMedicineIdAndPharmacistId(input.medicineId, pharmacist.getId())
-                    .orElseThrow(() -> new RuntimeException("Inventory not found for medicineId=" + input.medicineId));
-            if (inv.getStockQuantity() < totalNeeded) {
-                return ResponseEntity.badRequest().body(ApiResponse.error("Insufficient stock for medicineId=" + input.medicineId));
-            }
+            neededByMedicine.merge(input.medicineId, timesPerDay * input.days, Integer::sum);
+        }
+        // Conditional decrements; a shortfall anywhere leaves every row untouched
+        Map<Long, InventoryService.StockChange> changes;
+        try {
+            changes = inventoryService.deductStock(pharmacist.getId(), neededByMedicine);
+        } catch (RuntimeException e) {
+            status.setRollbackOnly();
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
-        // Apply stock updates and create history rows
+        // Create history rows, splitting each medicine's deduction across its lines
+        Map<Long, Integer> stockByMedicine = new HashMap<>();
         for (FilledItemInput input : request.items) {
-            int timesPerDay = (input.morning ? 1 : 0) + (input.afternoon ? 1 : 0) + (input.night ? 1 : 0);
+            int timesPerDay = timesPerDay(input);
             if (timesPerDay == 0 || input.days <= 0) continue;
             int totalNeeded = timesPerDay * input.days;
-            Inventory inv = inventoryRepository.findByMedicineIdAndPharmacistId(input.medicineId, pharmacist.getId()).orElseThrow();
-            Medicine medicine = medicineRepository.findById(input.medicineId).orElseThrow();
-            int before = inv.getStockQuantity();
-            inv.setStockQuantity(before - totalNeeded);
-            inventoryRepository.save(inv);
+            InventoryService.StockChange change = changes.get(input.medicineId);
+            Medicine medicine = change.inventory.getMedicine();
+            int before = stockByMedicine.getOrDefault(input.medicineId, change.before);
+            stockByMedicine.put(input.medicineId, before - totalNeeded);
             FilledMedicine fm = new FilledMedicine();
             fm.setHistory(history);
             fm.setMedicine(medicine);
@@ -137,8 +155,9 @@ public class RefillController {
             fm.setStockAfter(before - totalNeeded);
             filled.add(fm);
         }
-        history.setFilledMedicines(filled);
+        // Lines are written in one JDBC batch rather than cascaded one insert at a time
         historyRepository.save(history);
+        filledMedicineBatchWriter.insertAll(history.getId(), filled);
         rr.setStatus(RefillRequest.Status.FILLED);
         refillRequestRepository.save(rr);
         try { trackingService.record(rr.getPrescription().getId(), PrescriptionTracking.Status.FILLED, null); } catch (Exception ignore) {}
@@ -157,27 +176,55 @@ public class RefillController {
             }
         }
         
-        // Send Email notification to patient (always send, but with or without reminder date)
-        try {
-            if (request.enableReminders && maxDays >= 7 && refillDate != null) {
-                refillReminderService.sendMedicineFilledNotification(rr.getPrescription(), rr.getPatient(), filled, refillDate);
-            } else {
-                // Send without reminder date
-                refillReminderService.sendMedicineFilledNotification(rr.getPrescription(), rr.getPatient(), filled, "Reminders disabled");
-            }
-        } catch (Exception e) {
-            // Log error but don't fail the fill operation
-            System.err.println("Failed to send medicine filled Email: " + e.getMessage());
+        // Queue Email notification to patient (always sent, with or without reminder date) in this transaction
+        if (request.enableReminders && maxDays >= 7 && refillDate != null) {
+            refillReminderService.queueMedicineFilledNotification(rr.getPrescription(), rr.getPatient(), filled, refillDate);
+        } else {
+            // Send without reminder date
+            refillReminderService.queueMedicineFilledNotification(rr.getPrescription(), rr.getPatient(), filled, "Reminders disabled");
         }
         
         return ResponseEntity.ok(ApiResponse.success("Medicines filled successfully", "Filled"));
     }
 
+    private static int timesPerDay(FilledItemInput input) {
+        return (input.morning ? 1 : 0) + (input.afternoon ? 1 : 0) + (input.night ? 1 : 0);
+    }
+
     // Pharmacist marks a filled prescription as dispatched
     @PostMapping("/refills/{id}/dispatch")
     @PreAuthorize("hasRole('PHARMACIST') or hasRole('ADMIN')")
-    @Transactional
-    public ResponseEntity<ApiResponse<String>> dispatchRefill(@PathVariable Long id) {
+    public ResponseEntity<ApiResponse<String>> dispatchRefill(@PathVariable Long id,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            AuthenticatedUser currentUser) {
+        return idempotencyStore.execute(currentUser.getId(), idempotencyKey, "dispatch:" + id,
+                () -> transaction.execute(status -> dispatch(id)));
+    }
+
+    // Pharmacist dispatches many filled refills at once; the result lists each id separately
+    @PostMapping("/refills/dispatch-batch")
+    @PreAuthorize("hasRole('PHARMACIST') or hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<List<RefillRequestService.DispatchResult>>> dispatchRefills(
+            @RequestBody DispatchBatchRequest request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            AuthenticatedUser currentUser) {
+        if (request == null || request.refillIds == null || request.refillIds.isEmpty()) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("refillIds is required"));
+        }
+        if (request.refillIds.size() > MAX_DISPATCH_BATCH) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("At most " + MAX_DISPATCH_BATCH + " refills can be dispatched at once"));
+        }
+        if (request.refillIds.contains(null)) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("refillIds must not contain null"));
+        }
+        return idempotencyStore.execute(currentUser.getId(), idempotencyKey, "dispatch-batch:" + request.refillIds, () -> {
+            List<RefillRequestService.DispatchResult> results = refillRequestService.dispatchRefillRequests(request.refillIds);
+            long dispatched = results.stream().filter(r -> r.success).count();
+            return ResponseEntity.ok(ApiResponse.success(results, dispatched + " of " + results.size() + " refills dispatched"));
+        });
+    }
+
+    private ResponseEntity<ApiResponse<String>> dispatch(Long id) {
         // Accept either a refill request id or a prescription id and resolve the latest approved/filled request
         RefillRequest rr = refillRequestRepository.findById(id).orElse(null);
         if (rr == null) {
@@ -215,13 +262,8 @@ public class RefillController {
         // Record tracking
         try { trackingService.record(rr.getPrescription().getId(), PrescriptionTracking.Status.DISPATCHED, null); } catch (Exception ignore) {}
         
-        // Send Email notification to patient
-        try {
-            refillReminderService.sendMedicineDispatchedNotification(rr.getPrescription(), rr.getPatient());
-        } catch (Exception e) {
-            // Log error but don't fail the dispatch operation
-            System.err.println("Failed to send medicine dispatched Email: " + e.getMessage());
-        }
+        // Queue Email notification to patient; delivered once this transaction commits
+        refillReminderService.queueMedicineDispatchedNotification(rr.getPrescription(), rr.getPatient());
         
         return ResponseEntity.ok(ApiResponse.success("Refill dispatched", "Dispatched"));
     }
@@ -1,17 +1,21 @@
 package com.medapp.controller;
 
 import com.medapp.dto.ApiResponse;
+import com.medapp.model.ReminderStatsDaily;
 import com.medapp.model.User;
-import com.medapp.repository.UserRepository;
+import com.medapp.security.AuthenticatedUser;
 import com.medapp.service.RefillReminderService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/admin/refill-reminders")
 @CrossOrigin(origins = "*", allowedHeaders = "*")
@@ -20,9 +24,6 @@ public class RefillReminderController {
     
     @Autowired
     private RefillReminderService refillReminderService;
-    
-    @Autowired
-    private UserRepository userRepository;
 
     /**
      * Admin endpoint: Manually trigger refill reminder check
@@ -30,12 +31,11 @@ public class RefillReminderController {
      */
     @PostMapping("/trigger")
     public ResponseEntity<ApiResponse<String>> triggerRefillReminders(
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Manual refill reminder trigger requested by: {}", userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Manual refill reminder trigger requested by: {}", currentUser.getEmail());
         try {
             // Validate user role
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.ADMIN) {
+            if (!currentUser.hasRole(User.Role.ADMIN)) {
                 return ResponseEntity.badRequest()
                     .body(ApiResponse.error("Only admins can trigger refill reminders"));
             }
@@ -59,12 +59,11 @@ public class RefillReminderController {
      */
     @GetMapping("/stats")
     public ResponseEntity<ApiResponse<RefillReminderService.RefillReminderStats>> getRefillReminderStats(
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Refill reminder stats requested by: {}", userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Refill reminder stats requested by: {}", currentUser.getEmail());
         try {
             // Validate user role
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.ADMIN) {
+            if (!currentUser.hasRole(User.Role.ADMIN)) {
                 return ResponseEntity.badRequest()
                     .body(ApiResponse.error("Only admins can view refill reminder stats"));
             }
@@ -78,4 +77,25 @@ public class RefillReminderController {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Admin endpoint: Daily refill reminder statistics for a date range (at most a year)
+     * GET /api/admin/refill-reminders/stats/daily?from=2025-01-01&to=2025-01-31
+     */
+    @GetMapping("/stats/daily")
+    public ResponseEntity<ApiResponse<List<ReminderStatsDaily>>> getDailyRefillReminderStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            AuthenticatedUser currentUser) {
+        if (!currentUser.hasRole(User.Role.ADMIN)) {
+            return ResponseEntity.badRequest()
+                .body(ApiResponse.error("Only admins can view refill reminder stats"));
+        }
+        if (to.isBefore(from) || ChronoUnit.DAYS.between(from, to) > 366) {
+            return ResponseEntity.badRequest()
+                .body(ApiResponse.error("Date range must be ascending and at most one year"));
+        }
+        List<ReminderStatsDaily> stats = refillReminderService.getDailyReminderStats(from, to);
+        return ResponseEntity.ok(ApiResponse.success(stats, "Daily refill reminder statistics retrieved successfully"));
+    }
+}
@@ -3,12 +3,11 @@ package com.medapp.controller;
 import com.medapp.dto.ApiResponse;
 import com.medapp.model.RefillRequest;
 import com.medapp.model.User;
-import com.medapp.repository.UserRepository;
+import com.medapp.security.AuthenticatedUser;
+import com.medapp.service.IdempotencyStore;
 import com.medapp.service.RefillRequestService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,9 +25,9 @@ public class RefillRequestController {
     
     @Autowired
     private RefillRequestService refillRequestService;
-    
+
     @Autowired
-    private UserRepository userRepository;
+    private IdempotencyStore idempotencyStore;
 
     // DTO for frontend
     public static class RefillRequestDTO {
@@ -79,12 +78,18 @@ public class RefillRequestController {
     @PostMapping("/patient/refill-requests")
     public ResponseEntity<ApiResponse<RefillRequestDTO>> requestRefill(
             @RequestBody Map<String, Object> body,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Refill request from patient: {}", userDetails.getUsername());
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            AuthenticatedUser currentUser) {
+        return idempotencyStore.execute(currentUser.getId(), idempotencyKey,
+                "refill-request:" + body.get("prescriptionId"), () -> createRefillRequest(body, currentUser));
+    }
+
+    private ResponseEntity<ApiResponse<RefillRequestDTO>> createRefillRequest(Map<String, Object> body,
+            AuthenticatedUser currentUser) {
+        logger.info("Refill request from patient: {}", currentUser.getEmail());
         try {
             // Validate user role
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PATIENT) {
+            if (!currentUser.hasRole(User.Role.PATIENT)) {
                 return ResponseEntity.badRequest()
                     .body(ApiResponse.error("Only patients can request refills"));
             }
@@ -102,7 +107,7 @@ public class RefillRequestController {
             String phone = String.valueOf(addr.getOrDefault("phone", "")).trim();
 
             RefillRequest refillRequest = refillRequestService.requestRefill(
-                prescriptionId, userDetails.getUsername(),
+                prescriptionId, currentUser.getId(),
                 line1, line2, city, state, pincode, phone
             );
             
@@ -123,17 +128,16 @@ public class RefillRequestController {
      */
     @GetMapping("/patient/refill-requests")
     public ResponseEntity<ApiResponse<List<RefillRequestDTO>>> getMyRefillRequests(
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Getting refill requests for patient: {}", userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Getting refill requests for patient: {}", currentUser.getEmail());
         try {
             // Validate user role
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PATIENT) {
+            if (!currentUser.hasRole(User.Role.PATIENT)) {
                 return ResponseEntity.badRequest()
                     .body(ApiResponse.error("Only patients can view their refill requests"));
             }
             
-            List<RefillRequest> refillRequests = refillRequestService.getRefillRequestsForPatient(userDetails.getUsername());
+            List<RefillRequest> refillRequests = refillRequestService.getRefillRequestsForPatient(currentUser.getId());
             List<RefillRequestDTO> dtos = refillRequests.stream()
                 .map(RefillRequestDTO::new)
                 .collect(Collectors.toList());
@@ -153,12 +157,11 @@ public class RefillRequestController {
     @GetMapping("/pharmacist/refill-requests")
     public ResponseEntity<ApiResponse<List<RefillRequestDTO>>> getRefillRequestsByStatus(
             @RequestParam(value = "status", required = false) String status,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Getting refill requests for pharmacist: {} with status: {}", userDetails.getUsername(), status);
+            AuthenticatedUser currentUser) {
+        logger.info("Getting refill requests for pharmacist: {} with status: {}", currentUser.getEmail(), status);
         try {
             // Validate user role
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest()
                     .body(ApiResponse.error("Only pharmacists can view refill requests"));
             }
@@ -186,17 +189,16 @@ public class RefillRequestController {
     @PutMapping("/pharmacist/refill-requests/{id}/approve")
     public ResponseEntity<ApiResponse<RefillRequestDTO>> approveRefillRequest(
             @PathVariable Long id,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Approving refill request {} by pharmacist: {}", id, userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Approving refill request {} by pharmacist: {}", id, currentUser.getEmail());
         try {
             // Validate user role
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest()
                     .body(ApiResponse.error("Only pharmacists can approve refill requests"));
             }
             
-            RefillRequest approved = refillRequestService.approveRefillRequest(id, userDetails.getUsername());
+            RefillRequest approved = refillRequestService.approveRefillRequest(id, currentUser.getId());
             
             logger.info("Refill request {} approved successfully", id);
             return ResponseEntity.ok(ApiResponse.success(
@@ -217,18 +219,17 @@ public class RefillRequestController {
     public ResponseEntity<ApiResponse<RefillRequestDTO>> rejectRefillRequest(
             @PathVariable Long id,
             @RequestBody Map<String, String> body,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Rejecting refill request {} by pharmacist: {}", id, userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Rejecting refill request {} by pharmacist: {}", id, currentUser.getEmail());
         try {
             // Validate user role
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest()
                     .body(ApiResponse.error("Only pharmacists can reject refill requests"));
             }
             
             String rejectionReason = body.getOrDefault("reason", "No reason provided");
-            RefillRequest rejected = refillRequestService.rejectRefillRequest(id, userDetails.getUsername(), rejectionReason);
+            RefillRequest rejected = refillRequestService.rejectRefillRequest(id, currentUser.getId(), rejectionReason);
             
             logger.info("Refill request {} rejected successfully", id);
             return ResponseEntity.ok(ApiResponse.success(
@@ -250,14 +251,13 @@ public class RefillRequestController {
     public ResponseEntity<ApiResponse<Map<String, Object>>> fillRefillRequest(
             @PathVariable Long id,
             @RequestBody List<RefillRequestService.MedicineFillItem> items,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        logger.info("Filling refill request {} by pharmacist: {}", id, userDetails.getUsername());
+            AuthenticatedUser currentUser) {
+        logger.info("Filling refill request {} by pharmacist: {}", id, currentUser.getEmail());
         try {
-            User user = userRepository.findByEmail(userDetails.getUsername()).orElseThrow();
-            if (user.getRole() != User.Role.PHARMACIST) {
+            if (!currentUser.hasRole(User.Role.PHARMACIST)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only pharmacists can fill refill requests"));
             }
-            List<String> lowStockAlerts = refillRequestService.fillRefillRequest(id, userDetails.getUsername(), items);
+            List<String> lowStockAlerts = refillRequestService.fillRefillRequest(id, currentUser.getId(), items);
             Map<String, Object> resp = new java.util.HashMap<>();
             resp.put("message", "Medicines filled successfully");
             resp.put("lowStockAlerts", lowStockAlerts);
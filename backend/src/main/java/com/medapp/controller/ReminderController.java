@@ -4,12 +4,10 @@ import com.medapp.dto.ApiResponse;
 import com.medapp.service.RefillReminderService;
 import com.medapp.service.SmsService;
 import com.medapp.model.User;
-import com.medapp.repository.UserRepository;
+import com.medapp.security.AuthenticatedUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -23,9 +21,6 @@ public class ReminderController {
     @Autowired
     private SmsService smsService;
 
-    @Autowired
-    private UserRepository userRepository;
-
     /**
      * Get reminder statistics (Admin only)
      */
@@ -47,16 +42,13 @@ public class ReminderController {
     @PreAuthorize("hasRole('PATIENT')")
     public ResponseEntity<ApiResponse<String>> updateReminderSettings(
             @RequestBody ReminderSettingsRequest request,
-            @AuthenticationPrincipal UserDetails userDetails) {
+            AuthenticatedUser currentUser) {
         try {
-            // Username is the email; resolve user and ensure patient
-            String email = userDetails.getUsername();
-            User user = userRepository.findByEmail(email).orElse(null);
-            if (user == null || user.getRole() != User.Role.PATIENT) {
+            if (!currentUser.hasRole(User.Role.PATIENT)) {
                 return ResponseEntity.badRequest().body(ApiResponse.error("Only patients can update reminder settings"));
             }
 
-            refillReminderService.updateReminderSettings(user.getId(), request.enabled);
+            refillReminderService.updateReminderSettings(currentUser.getId(), request.enabled);
 
             String message = request.enabled ? "Email reminders enabled successfully" : "Email reminders disabled successfully";
             return ResponseEntity.ok(ApiResponse.success(message, "Settings updated"));
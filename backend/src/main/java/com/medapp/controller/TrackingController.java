@@ -21,13 +21,23 @@ public class TrackingController {
 
     @GetMapping("/{prescriptionId}")
     @PreAuthorize("hasAnyRole('PATIENT','PHARMACIST','ADMIN')")
-    public ResponseEntity<ApiResponse<List<PrescriptionTracking>>> getHistory(@PathVariable Long prescriptionId) {
+    public ResponseEntity<ApiResponse<List<TrackingService.TrackingEvent>>> getHistory(@PathVariable Long prescriptionId) {
         return ResponseEntity.ok(ApiResponse.success(trackingService.history(prescriptionId), "Tracking history"));
     }
 
+    // Reconnecting EventSources send Last-Event-ID; a fresh page can pass ?lastEventId= from its loaded history
     @GetMapping(path = "/subscribe/{prescriptionId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter subscribe(@PathVariable Long prescriptionId) {
-        return trackingService.subscribe(prescriptionId);
+    public SseEmitter subscribe(@PathVariable Long prescriptionId,
+                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        String lastEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+        Long after = null;
+        if (lastEventId != null) {
+            try {
+                after = Long.valueOf(lastEventId.trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        return trackingService.subscribe(prescriptionId, after);
     }
 
     @PostMapping("/{prescriptionId}")
@@ -0,0 +1,20 @@
+package com.medapp.dto;
+
+import com.medapp.model.User;
+
+/**
+ * A chat directory row: just what the sidebar needs, loaded without hydrating the User entity
+ */
+public class DirectoryEntry {
+    public final Long id;
+    public final String name;
+    public final String email;
+    public final User.Role role;
+
+    public DirectoryEntry(Long id, String name, String email, User.Role role) {
+        this.id = id;
+        this.name = name;
+        this.email = email;
+        this.role = role;
+    }
+}
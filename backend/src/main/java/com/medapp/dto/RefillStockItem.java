@@ -0,0 +1,19 @@
+package com.medapp.dto;
+
+/**
+ * A pharmacist's stock of one medicine, as shown on the refill screen
+ */
+public class RefillStockItem {
+    public Long medicineId;
+    public String medicineName;
+    public int stock;
+
+    public RefillStockItem() {}
+
+    // Used by InventoryRepository.findRefillStockByPharmacistId
+    public RefillStockItem(Long medicineId, String medicineName, Integer stock) {
+        this.medicineId = medicineId;
+        this.medicineName = medicineName;
+        this.stock = stock != null ? stock : 0;
+    }
+}
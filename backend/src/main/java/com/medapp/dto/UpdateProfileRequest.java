@@ -8,6 +8,7 @@ public class UpdateProfileRequest {
     private String address;
     private LocalDate dateOfBirth;
     private String licenseNumber;
+    private Boolean digestOptOut;
 
     public String getName() {
         return name;
@@ -48,6 +49,14 @@ public class UpdateProfileRequest {
     public void setLicenseNumber(String licenseNumber) {
         this.licenseNumber = licenseNumber;
     }
+
+    public Boolean getDigestOptOut() {
+        return digestOptOut;
+    }
+
+    public void setDigestOptOut(Boolean digestOptOut) {
+        this.digestOptOut = digestOptOut;
+    }
 }
 
 
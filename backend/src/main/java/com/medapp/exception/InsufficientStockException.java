@@ -0,0 +1,14 @@
+package com.medapp.exception;
+
+public class InsufficientStockException extends RuntimeException {
+    private final Long medicineId;
+
+    public InsufficientStockException(Long medicineId, String medicineName) {
+        super("Insufficient stock for medicine: " + medicineName);
+        this.medicineId = medicineId;
+    }
+
+    public Long getMedicineId() {
+        return medicineId;
+    }
+}
@@ -0,0 +1,23 @@
+package com.medapp.exception;
+
+/**
+ * A notification could not be handed to its provider. Retryable failures are
+ * tried again later by the outbox; the rest are dead-lettered straight away.
+ */
+public class NotificationDeliveryException extends RuntimeException {
+    private final boolean retryable;
+
+    public NotificationDeliveryException(String message, boolean retryable) {
+        super(message);
+        this.retryable = retryable;
+    }
+
+    public NotificationDeliveryException(String message, boolean retryable, Throwable cause) {
+        super(message, cause);
+        this.retryable = retryable;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
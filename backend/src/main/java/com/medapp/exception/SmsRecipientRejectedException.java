@@ -0,0 +1,13 @@
+package com.medapp.exception;
+
+/**
+ * MSG91 rejected a request because of a recipient (HTTP 400 about a number or
+ * message) rather than the request itself. Not retryable; a batch failing this
+ * way can be re-sent one recipient at a time so only the bad one fails.
+ */
+public class SmsRecipientRejectedException extends NotificationDeliveryException {
+
+    public SmsRecipientRejectedException(String message, Throwable cause) {
+        super(message, false, cause);
+    }
+}
@@ -0,0 +1,83 @@
+package com.medapp.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Read model with one row per conversation, keyed by the user pair with the lower
+ * id as user A. Maintained in the same transaction as the message writes.
+ */
+@Entity
+@Table(name = "conversation_summary",
+       uniqueConstraints = @UniqueConstraint(name = "uk_conversation_summary_pair", columnNames = {"user_a_id", "user_b_id"}),
+       indexes = {
+           @Index(name = "idx_conversation_summary_a_recent", columnList = "user_a_id, last_message_at"),
+           @Index(name = "idx_conversation_summary_b_recent", columnList = "user_b_id, last_message_at")
+       })
+public class ConversationSummary {
+    public static final int SNIPPET_LENGTH = 200;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_a_id", nullable = false)
+    private Long userAId;
+
+    @Column(name = "user_b_id", nullable = false)
+    private Long userBId;
+
+    @Column(name = "last_message_id")
+    private Long lastMessageId;
+
+    @Column(name = "last_sender_id")
+    private Long lastSenderId;
+
+    @Column(name = "last_snippet", length = SNIPPET_LENGTH)
+    private String lastSnippet;
+
+    @Column(name = "last_message_at")
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "unread_for_a", nullable = false)
+    private int unreadForA;
+
+    @Column(name = "unread_for_b", nullable = false)
+    private int unreadForB;
+
+    public Long getId() { return id; }
+    public Long getUserAId() { return userAId; }
+    public void setUserAId(Long userAId) { this.userAId = userAId; }
+    public Long getUserBId() { return userBId; }
+    public void setUserBId(Long userBId) { this.userBId = userBId; }
+    public Long getLastMessageId() { return lastMessageId; }
+    public void setLastMessageId(Long lastMessageId) { this.lastMessageId = lastMessageId; }
+    public Long getLastSenderId() { return lastSenderId; }
+    public void setLastSenderId(Long lastSenderId) { this.lastSenderId = lastSenderId; }
+    public String getLastSnippet() { return lastSnippet; }
+    public void setLastSnippet(String lastSnippet) { this.lastSnippet = lastSnippet; }
+    public LocalDateTime getLastMessageAt() { return lastMessageAt; }
+    public void setLastMessageAt(LocalDateTime lastMessageAt) { this.lastMessageAt = lastMessageAt; }
+    public int getUnreadForA() { return unreadForA; }
+    public void setUnreadForA(int unreadForA) { this.unreadForA = unreadForA; }
+    public int getUnreadForB() { return unreadForB; }
+    public void setUnreadForB(int unreadForB) { this.unreadForB = unreadForB; }
+
+    /**
+     * Unread count from the point of view of the given participant
+     */
+    public int getUnreadFor(Long userId) {
+        return userId.equals(userAId) ? unreadForA : unreadForB;
+    }
+
+    public Long getOtherUserId(Long userId) {
+        return userId.equals(userAId) ? userBId : userAId;
+    }
+
+    public static String snippetOf(String content) {
+        if (content == null) {
+            return null;
+        }
+        return content.length() <= SNIPPET_LENGTH ? content : content.substring(0, SNIPPET_LENGTH);
+    }
+}
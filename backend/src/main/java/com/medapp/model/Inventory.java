@@ -31,6 +31,11 @@ public class Inventory {
     @Column(name = "last_updated")
     private LocalDateTime lastUpdated;
     
+    // Optimistic lock for manual edits; fills bump it through InventoryRepository.decrementStock
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint not null default 0")
+    private Long version;
+    
     @PrePersist
     protected void onCreate() {
         lastUpdated = LocalDateTime.now();
@@ -98,6 +103,14 @@ public class Inventory {
         this.lastUpdated = lastUpdated;
     }
     
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
     // Helper method to check if stock is low
     public boolean isLowStock() {
         return stockQuantity <= lowStockThreshold;
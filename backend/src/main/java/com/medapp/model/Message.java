@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_sender_receiver_sent", columnList = "sender_id, receiver_id, sent_at")
+})
 public class Message {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,133 @@
+package com.medapp.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A patient notification waiting to be delivered. Rows are written in the same
+ * transaction as the business change and drained by NotificationOutboxWorker;
+ * the body is rendered up front so delivery never touches the entities again.
+ */
+@Entity
+@Table(name = "notification_outbox", indexes = {
+        @Index(name = "idx_notification_outbox_due", columnList = "status, channel, next_attempt_at"),
+        @Index(name = "idx_notification_outbox_claim", columnList = "claim_token"),
+        @Index(name = "idx_notification_outbox_digest", columnList = "recipient, notification_type, status")
+})
+public class NotificationOutbox {
+
+    public enum Channel {
+        EMAIL, SMS
+    }
+
+    public enum Status {
+        PENDING,  // waiting for its next attempt
+        SENDING,  // claimed by a worker until locked_until
+        SENT,
+        DEAD      // gave up; kept for inspection and manual retry
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Channel channel;
+
+    @Column(name = "notification_type", nullable = false, length = 50)
+    private String notificationType;
+
+    // Email address or phone number
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(name = "recipient_user_id")
+    private Long recipientUserId;
+
+    // Row the notification is about (the RefillReminder id for REFILL_REMINDER), so results can be written back
+    @Column(name = "reference_id")
+    private Long referenceId;
+
+    private String subject;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String body;
+
+    // Set while an email may be merged into a digest: this event's part of the digest, and who to greet
+    @Column(name = "digest_item", columnDefinition = "TEXT")
+    private String digestItem;
+
+    @Column(name = "recipient_name", length = 100)
+    private String recipientName;
+
+    // Optional HTML alternative of body (email only)
+    @Column(name = "html_body", columnDefinition = "TEXT")
+    private String htmlBody;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Status status = Status.PENDING;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+
+    public Long getId() { return id; }
+    public Channel getChannel() { return channel; }
+    public void setChannel(Channel channel) { this.channel = channel; }
+    public String getNotificationType() { return notificationType; }
+    public void setNotificationType(String notificationType) { this.notificationType = notificationType; }
+    public String getRecipient() { return recipient; }
+    public void setRecipient(String recipient) { this.recipient = recipient; }
+    public Long getRecipientUserId() { return recipientUserId; }
+    public void setRecipientUserId(Long recipientUserId) { this.recipientUserId = recipientUserId; }
+    public Long getReferenceId() { return referenceId; }
+    public void setReferenceId(Long referenceId) { this.referenceId = referenceId; }
+    public String getSubject() { return subject; }
+    public void setSubject(String subject) { this.subject = subject; }
+    public String getBody() { return body; }
+    public void setBody(String body) { this.body = body; }
+    public String getDigestItem() { return digestItem; }
+    public void setDigestItem(String digestItem) { this.digestItem = digestItem; }
+    public String getRecipientName() { return recipientName; }
+    public void setRecipientName(String recipientName) { this.recipientName = recipientName; }
+    public String getHtmlBody() { return htmlBody; }
+    public void setHtmlBody(String htmlBody) { this.htmlBody = htmlBody; }
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public LocalDateTime getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+    public String getClaimToken() { return claimToken; }
+    public LocalDateTime getLockedUntil() { return lockedUntil; }
+    public String getLastError() { return lastError; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public LocalDateTime getSentAt() { return sentAt; }
+}
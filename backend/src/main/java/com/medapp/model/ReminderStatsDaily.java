@@ -0,0 +1,61 @@
+package com.medapp.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * One row per day of refill reminder counters, kept up to date incrementally and
+ * reconciled against refill_reminders nightly.
+ *
+ * total and enabled are the totals as of that day (only moving on the current
+ * day's row); due counts enabled, unsent reminders dated that day; sent and
+ * created count reminders sent or created on that day.
+ */
+@Entity
+@Table(name = "reminder_stats_daily")
+public class ReminderStatsDaily {
+
+    @Id
+    @Column(name = "stat_date")
+    private LocalDate statDate;
+
+    @Column(name = "total_reminders", nullable = false)
+    private long totalReminders;
+
+    @Column(name = "enabled_reminders", nullable = false)
+    private long enabledReminders;
+
+    @Column(name = "due_count", nullable = false)
+    private long dueCount;
+
+    @Column(name = "sent_count", nullable = false)
+    private long sentCount;
+
+    @Column(name = "created_count", nullable = false)
+    private long createdCount;
+
+    @Column(name = "reconciled_at", nullable = false)
+    private LocalDateTime reconciledAt;
+
+    public ReminderStatsDaily() {
+    }
+
+    public ReminderStatsDaily(LocalDate statDate) {
+        this.statDate = statDate;
+    }
+
+    public LocalDate getStatDate() { return statDate; }
+    public long getTotalReminders() { return totalReminders; }
+    public void setTotalReminders(long totalReminders) { this.totalReminders = totalReminders; }
+    public long getEnabledReminders() { return enabledReminders; }
+    public void setEnabledReminders(long enabledReminders) { this.enabledReminders = enabledReminders; }
+    public long getDueCount() { return dueCount; }
+    public void setDueCount(long dueCount) { this.dueCount = dueCount; }
+    public long getSentCount() { return sentCount; }
+    public void setSentCount(long sentCount) { this.sentCount = sentCount; }
+    public long getCreatedCount() { return createdCount; }
+    public void setCreatedCount(long createdCount) { this.createdCount = createdCount; }
+    public LocalDateTime getReconciledAt() { return reconciledAt; }
+    public void setReconciledAt(LocalDateTime reconciledAt) { this.reconciledAt = reconciledAt; }
+}
@@ -0,0 +1,41 @@
+package com.medapp.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A named lease for a scheduled job. A node may run the job only while it holds
+ * an unexpired lease; if it dies, the lease runs out and another node takes over.
+ */
+@Entity
+@Table(name = "scheduler_lock")
+public class SchedulerLock {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(name = "locked_by", nullable = false)
+    private String lockedBy;
+
+    @Column(name = "locked_at", nullable = false)
+    private LocalDateTime lockedAt;
+
+    @Column(name = "locked_until", nullable = false)
+    private LocalDateTime lockedUntil;
+
+    public SchedulerLock() {
+    }
+
+    public SchedulerLock(String name, String lockedBy, LocalDateTime lockedAt, LocalDateTime lockedUntil) {
+        this.name = name;
+        this.lockedBy = lockedBy;
+        this.lockedAt = lockedAt;
+        this.lockedUntil = lockedUntil;
+    }
+
+    public String getName() { return name; }
+    public String getLockedBy() { return lockedBy; }
+    public LocalDateTime getLockedAt() { return lockedAt; }
+    public LocalDateTime getLockedUntil() { return lockedUntil; }
+}
@@ -5,7 +5,9 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+    @Index(name = "idx_users_role_active_name", columnList = "role, active, name")
+})
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 public class User {
     @Id
@@ -38,6 +40,10 @@ public class User {
     @Column
     private String profilePhoto;
 
+    // Send filled/dispatched notifications one by one instead of merging them into digests
+    @Column(name = "digest_opt_out", nullable = false)
+    private boolean digestOptOut = false;
+
     @JsonIgnore
     @Column
     private String resetToken;
@@ -121,6 +127,12 @@ public class User {
     public void setProfilePhoto(String profilePhoto) {
         this.profilePhoto = profilePhoto;
     }
+    public boolean isDigestOptOut() {
+        return digestOptOut;
+    }
+    public void setDigestOptOut(boolean digestOptOut) {
+        this.digestOptOut = digestOptOut;
+    }
     public String getResetToken() {
         return resetToken;
     }
@@ -0,0 +1,104 @@
+package com.medapp.repository;
+
+import com.medapp.model.ConversationSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, Long> {
+
+    Optional<ConversationSummary> findByUserAIdAndUserBId(Long userAId, Long userBId);
+
+    /**
+     * All conversations of a user with the partner, most recent first
+     */
+    @Query("SELECT s, u FROM ConversationSummary s, User u WHERE " +
+           "(s.userAId = :userId AND u.id = s.userBId) OR (s.userBId = :userId AND u.id = s.userAId) " +
+           "ORDER BY s.lastMessageAt DESC")
+    List<Object[]> findWithPartnerByUserId(@Param("userId") Long userId);
+
+    /**
+     * Record a new message on the pair, creating the row on first contact.
+     * Columns are assigned left to right, so last_message_id is compared before it is overwritten.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO conversation_summary " +
+                   "(user_a_id, user_b_id, last_message_id, last_sender_id, last_snippet, last_message_at, unread_for_a, unread_for_b) " +
+                   "VALUES (:userAId, :userBId, :messageId, :senderId, :snippet, :sentAt, :unreadA, :unreadB) " +
+                   "ON DUPLICATE KEY UPDATE " +
+                   "last_sender_id = IF(last_message_id IS NULL OR VALUES(last_message_id) > last_message_id, VALUES(last_sender_id), last_sender_id), " +
+                   "last_snippet = IF(last_message_id IS NULL OR VALUES(last_message_id) > last_message_id, VALUES(last_snippet), last_snippet), " +
+                   "last_message_at = IF(last_message_id IS NULL OR VALUES(last_message_id) > last_message_id, VALUES(last_message_at), last_message_at), " +
+                   "last_message_id = IF(last_message_id IS NULL OR VALUES(last_message_id) > last_message_id, VALUES(last_message_id), last_message_id), " +
+                   "unread_for_a = unread_for_a + VALUES(unread_for_a), " +
+                   "unread_for_b = unread_for_b + VALUES(unread_for_b)",
+           nativeQuery = true)
+    int recordMessage(@Param("userAId") Long userAId, @Param("userBId") Long userBId,
+                      @Param("messageId") Long messageId, @Param("senderId") Long senderId,
+                      @Param("snippet") String snippet, @Param("sentAt") LocalDateTime sentAt,
+                      @Param("unreadA") int unreadA, @Param("unreadB") int unreadB);
+
+    /**
+     * Refresh the snippet when the edited message is the latest one
+     */
+    @Modifying
+    @Query("UPDATE ConversationSummary s SET s.lastSnippet = :snippet " +
+           "WHERE s.userAId = :userAId AND s.userBId = :userBId AND s.lastMessageId = :messageId")
+    int updateSnippet(@Param("userAId") Long userAId, @Param("userBId") Long userBId,
+                      @Param("messageId") Long messageId, @Param("snippet") String snippet);
+
+    /**
+     * Lower the unread counters; never below zero
+     */
+    @Modifying
+    @Query(value = "UPDATE conversation_summary SET " +
+                   "unread_for_a = GREATEST(unread_for_a - :readA, 0), " +
+                   "unread_for_b = GREATEST(unread_for_b - :readB, 0) " +
+                   "WHERE user_a_id = :userAId AND user_b_id = :userBId",
+           nativeQuery = true)
+    int decrementUnread(@Param("userAId") Long userAId, @Param("userBId") Long userBId,
+                        @Param("readA") int readA, @Param("readB") int readB);
+
+    /**
+     * Point the summary at a different latest message (after the latest one was deleted)
+     */
+    @Modifying
+    @Query("UPDATE ConversationSummary s SET s.lastMessageId = :messageId, s.lastSenderId = :senderId, " +
+           "s.lastSnippet = :snippet, s.lastMessageAt = :sentAt " +
+           "WHERE s.userAId = :userAId AND s.userBId = :userBId")
+    int replaceLastMessage(@Param("userAId") Long userAId, @Param("userBId") Long userBId,
+                           @Param("messageId") Long messageId, @Param("senderId") Long senderId,
+                           @Param("snippet") String snippet, @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Query("DELETE FROM ConversationSummary s WHERE s.userAId = :userAId AND s.userBId = :userBId")
+    int deletePair(@Param("userAId") Long userAId, @Param("userBId") Long userBId);
+
+    /**
+     * Remove every conversation a user takes part in (used when the user is deleted)
+     */
+    @Modifying
+    @Query("DELETE FROM ConversationSummary s WHERE s.userAId = :userId OR s.userBId = :userId")
+    int deleteAllForUser(@Param("userId") Long userId);
+
+    /**
+     * Build summaries for every conversation from the messages table (first start after upgrade)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO conversation_summary " +
+                   "(user_a_id, user_b_id, last_message_id, last_sender_id, last_snippet, last_message_at, unread_for_a, unread_for_b) " +
+                   "SELECT p.user_a_id, p.user_b_id, m.id, m.sender_id, LEFT(m.content, 200), m.sent_at, p.unread_for_a, p.unread_for_b " +
+                   "FROM (SELECT LEAST(sender_id, receiver_id) AS user_a_id, GREATEST(sender_id, receiver_id) AS user_b_id, " +
+                   "MAX(id) AS last_id, " +
+                   "SUM(CASE WHEN is_read = 0 AND receiver_id < sender_id THEN 1 ELSE 0 END) AS unread_for_a, " +
+                   "SUM(CASE WHEN is_read = 0 AND receiver_id > sender_id THEN 1 ELSE 0 END) AS unread_for_b " +
+                   "FROM messages GROUP BY LEAST(sender_id, receiver_id), GREATEST(sender_id, receiver_id)) p " +
+                   "JOIN messages m ON m.id = p.last_id",
+           nativeQuery = true)
+    int rebuildFromMessages();
+}
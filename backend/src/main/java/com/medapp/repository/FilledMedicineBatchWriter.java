@@ -0,0 +1,40 @@
+package com.medapp.repository;
+
+import com.medapp.model.FilledMedicine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Inserts the lines of a fill in one JDBC batch. FilledMedicine uses IDENTITY
+ * ids, which stops Hibernate from batching its inserts, so they go through
+ * JdbcTemplate on the same transaction instead.
+ */
+@Repository
+public class FilledMedicineBatchWriter {
+
+    private static final String INSERT_SQL = "INSERT INTO filled_medicines " +
+            "(history_id, medicine_id, medicine_name, times_per_day, days, total_needed, stock_before, stock_after) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public void insertAll(Long historyId, List<FilledMedicine> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, lines, lines.size(), (ps, fm) -> {
+            ps.setLong(1, historyId);
+            ps.setLong(2, fm.getMedicine().getId());
+            ps.setString(3, fm.getMedicineName());
+            ps.setInt(4, fm.getTimesPerDay());
+            ps.setInt(5, fm.getDays());
+            ps.setInt(6, fm.getTotalNeeded());
+            ps.setInt(7, fm.getStockBefore());
+            ps.setInt(8, fm.getStockAfter());
+        });
+    }
+}
@@ -1,5 +1,6 @@
 package com.medapp.repository;
 
+import com.medapp.dto.RefillStockItem;
 import com.medapp.model.Inventory;
 import com.medapp.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -8,6 +9,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,15 +18,54 @@ import java.util.Optional;
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
     List<Inventory> findByPharmacist(User pharmacist);
     
+    @Query("SELECT i FROM Inventory i JOIN FETCH i.medicine WHERE i.pharmacist.id = :pharmacistId")
+    List<Inventory> findByPharmacistId(@Param("pharmacistId") Long pharmacistId);
+    
     @Query("SELECT i FROM Inventory i WHERE i.pharmacist = :pharmacist AND i.stockQuantity <= i.lowStockThreshold")
     List<Inventory> findLowStockItemsByPharmacist(@Param("pharmacist") User pharmacist);
     
+    @Query("SELECT i FROM Inventory i JOIN FETCH i.medicine WHERE i.pharmacist.id = :pharmacistId AND i.stockQuantity <= i.lowStockThreshold")
+    List<Inventory> findLowStockItemsByPharmacistId(@Param("pharmacistId") Long pharmacistId);
+    
     @Query("SELECT i FROM Inventory i WHERE i.pharmacist = :pharmacist AND i.expiryDate <= :date")
     List<Inventory> findExpiringItemsByPharmacist(@Param("pharmacist") User pharmacist, @Param("date") LocalDate date);
     
+    @Query("SELECT i FROM Inventory i JOIN FETCH i.medicine WHERE i.pharmacist.id = :pharmacistId AND i.expiryDate <= :date")
+    List<Inventory> findExpiringItemsByPharmacistId(@Param("pharmacistId") Long pharmacistId, @Param("date") LocalDate date);
+    
+    /**
+     * A pharmacist's stock per medicine for the refill screen, without loading entities
+     */
+    @Query("SELECT new com.medapp.dto.RefillStockItem(m.id, m.name, i.stockQuantity) " +
+           "FROM Inventory i JOIN i.medicine m WHERE i.pharmacist.id = :pharmacistId ORDER BY m.id")
+    List<RefillStockItem> findRefillStockByPharmacistId(@Param("pharmacistId") Long pharmacistId);
+    
     @Query("SELECT i FROM Inventory i WHERE i.medicine.id = :medicineId AND i.pharmacist.id = :pharmacistId")
     Optional<Inventory> findByMedicineIdAndPharmacistId(@Param("medicineId") Long medicineId, @Param("pharmacistId") Long pharmacistId);
     
+    /**
+     * A pharmacist's inventory rows for a set of medicines, with the medicine loaded
+     */
+    @Query("SELECT i FROM Inventory i JOIN FETCH i.medicine WHERE i.pharmacist.id = :pharmacistId AND i.medicine.id IN :medicineIds")
+    List<Inventory> findByPharmacistIdAndMedicineIdIn(@Param("pharmacistId") Long pharmacistId,
+                                                      @Param("medicineIds") Collection<Long> medicineIds);
+    
+    /**
+     * Take quantity units off one row, but only if that many are in stock.
+     * Returns 0 when the stock is short; the version is bumped so a manual edit
+     * based on the old row fails instead of overwriting the deduction.
+     */
+    @Modifying
+    @Query("UPDATE Inventory i SET i.stockQuantity = i.stockQuantity - :quantity, i.version = i.version + 1, " +
+           "i.lastUpdated = :now WHERE i.id = :id AND i.stockQuantity >= :quantity")
+    int decrementStock(@Param("id") Long id, @Param("quantity") int quantity, @Param("now") LocalDateTime now);
+    
+    /**
+     * Current stock for a set of rows, read past any stale copies in the persistence context
+     */
+    @Query("SELECT i.id, i.stockQuantity FROM Inventory i WHERE i.id IN :ids")
+    List<Object[]> findStockLevels(@Param("ids") Collection<Long> ids);
+    
     @Query("SELECT COUNT(i) > 0 FROM Inventory i WHERE i.medicine.id = :medicineId AND i.pharmacist.id = :pharmacistId")
     boolean existsByMedicineIdAndPharmacistId(@Param("medicineId") Long medicineId, @Param("pharmacistId") Long pharmacistId);
     
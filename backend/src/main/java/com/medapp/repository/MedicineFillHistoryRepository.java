@@ -5,7 +5,11 @@ import com.medapp.model.Patient;
 import com.medapp.model.Prescription;
 import com.medapp.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface MedicineFillHistoryRepository extends JpaRepository<MedicineFillHistory, Long> {
@@ -13,6 +17,27 @@ public interface MedicineFillHistoryRepository extends JpaRepository<MedicineFil
     List<MedicineFillHistory> findByPharmacistOrderByFillDateDesc(User pharmacist);
     List<MedicineFillHistory> findByPrescriptionOrderByFillDateDesc(Prescription prescription);
     List<MedicineFillHistory> findByPrescriptionAndStatus(Prescription prescription, MedicineFillHistory.Status status);
+
+    /**
+     * Fill histories of several prescriptions with their medicines, newest first
+     */
+    @Query("SELECT DISTINCT h FROM MedicineFillHistory h LEFT JOIN FETCH h.filledMedicines fm LEFT JOIN FETCH fm.medicine " +
+           "WHERE h.prescription.id IN :prescriptionIds ORDER BY h.fillDate DESC")
+    List<MedicineFillHistory> findWithMedicinesByPrescriptionIdIn(@Param("prescriptionIds") Collection<Long> prescriptionIds);
+
+    /**
+     * Only the most recent fill of each prescription, with its medicines
+     */
+    @Query("SELECT DISTINCT h FROM MedicineFillHistory h LEFT JOIN FETCH h.filledMedicines fm " +
+           "WHERE h.prescription.id IN :prescriptionIds AND h.fillDate = " +
+           "(SELECT MAX(h2.fillDate) FROM MedicineFillHistory h2 WHERE h2.prescription = h.prescription)")
+    List<MedicineFillHistory> findLatestWithMedicinesByPrescriptionIdIn(@Param("prescriptionIds") Collection<Long> prescriptionIds);
+
+    @Modifying
+    @Query("UPDATE MedicineFillHistory h SET h.status = :to WHERE h.prescription.id IN :prescriptionIds AND h.status = :from")
+    int updateStatusByPrescriptionIdIn(@Param("prescriptionIds") Collection<Long> prescriptionIds,
+                                       @Param("from") MedicineFillHistory.Status from,
+                                       @Param("to") MedicineFillHistory.Status to);
 }
 
 
@@ -2,11 +2,13 @@ package com.medapp.repository;
 
 import com.medapp.model.Message;
 import com.medapp.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
@@ -20,6 +22,39 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
            "ORDER BY m.sentAt ASC")
     List<Message> findMessagesBetweenUsers(@Param("user1") User user1, @Param("user2") User user2);
     
+    /**
+     * Newest messages between two users, newest first (keyset page without a cursor)
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender JOIN FETCH m.receiver WHERE " +
+           "((m.sender.id = :user1 AND m.receiver.id = :user2) OR " +
+           "(m.sender.id = :user2 AND m.receiver.id = :user1)) " +
+           "ORDER BY m.sentAt DESC, m.id DESC")
+    List<Message> findLatestPageBetweenUsers(@Param("user1") Long user1, @Param("user2") Long user2, Pageable pageable);
+
+    /**
+     * Messages between two users strictly older than the cursor (sentAt, id), newest first
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender JOIN FETCH m.receiver WHERE " +
+           "((m.sender.id = :user1 AND m.receiver.id = :user2) OR " +
+           "(m.sender.id = :user2 AND m.receiver.id = :user1)) " +
+           "AND (m.sentAt < :sentAt OR (m.sentAt = :sentAt AND m.id < :id)) " +
+           "ORDER BY m.sentAt DESC, m.id DESC")
+    List<Message> findPageBeforeBetweenUsers(@Param("user1") Long user1, @Param("user2") Long user2,
+                                             @Param("sentAt") LocalDateTime sentAt, @Param("id") Long id,
+                                             Pageable pageable);
+
+    /**
+     * Messages between two users strictly newer than the cursor (sentAt, id), oldest first
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender JOIN FETCH m.receiver WHERE " +
+           "((m.sender.id = :user1 AND m.receiver.id = :user2) OR " +
+           "(m.sender.id = :user2 AND m.receiver.id = :user1)) " +
+           "AND (m.sentAt > :sentAt OR (m.sentAt = :sentAt AND m.id > :id)) " +
+           "ORDER BY m.sentAt ASC, m.id ASC")
+    List<Message> findPageAfterBetweenUsers(@Param("user1") Long user1, @Param("user2") Long user2,
+                                            @Param("sentAt") LocalDateTime sentAt, @Param("id") Long id,
+                                            Pageable pageable);
+    
     /**
      * Find all conversations for a user (distinct conversation partners)
      */
@@ -28,21 +63,25 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
            "FROM Message m WHERE m.sender = :user OR m.receiver = :user")
     List<User> findConversationPartners(@Param("user") User user);
     
-    /**
-     * Find the latest message between two users
-     */
-    @Query("SELECT m FROM Message m WHERE " +
-           "(m.sender = :user1 AND m.receiver = :user2) OR " +
-           "(m.sender = :user2 AND m.receiver = :user1) " +
-           "ORDER BY m.sentAt DESC")
-    List<Message> findLatestMessageBetweenUsers(@Param("user1") User user1, @Param("user2") User user2);
-    
     /**
      * Count unread messages for a user
      */
     @Query("SELECT COUNT(m) FROM Message m WHERE m.receiver = :user AND m.isRead = false")
     long countUnreadMessages(@Param("user") User user);
     
+    /**
+     * Count unread messages for a user by id
+     */
+    @Query("SELECT COUNT(m) FROM Message m WHERE m.receiver.id = :userId AND m.isRead = false")
+    long countUnreadByReceiverId(@Param("userId") Long userId);
+
+    /**
+     * Unread counts for several users at once, as [receiverId, count] rows (users with none are absent)
+     */
+    @Query("SELECT m.receiver.id, COUNT(m) FROM Message m WHERE m.receiver.id IN :userIds AND m.isRead = false " +
+           "GROUP BY m.receiver.id")
+    List<Object[]> countUnreadGroupedByReceiver(@Param("userIds") List<Long> userIds);
+    
     /**
      * Count unread messages between two specific users
      */
@@ -54,6 +93,17 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
      */
     List<Message> findByReceiverAndIsReadOrderBySentAtDesc(User receiver, boolean isRead);
     
+    /**
+     * Mark unread messages from sender to receiver as read in one statement,
+     * optionally only up to (and including) a watermark message id
+     */
+    @Modifying
+    @Query("UPDATE Message m SET m.isRead = true " +
+           "WHERE m.sender.id = :senderId AND m.receiver.id = :receiverId AND m.isRead = false " +
+           "AND (:upToId IS NULL OR m.id <= :upToId)")
+    int markReadBetweenUsers(@Param("senderId") Long senderId, @Param("receiverId") Long receiverId,
+                             @Param("upToId") Long upToId);
+    
     /**
      * Delete all messages sent by a user
      */
@@ -0,0 +1,102 @@
+package com.medapp.repository;
+
+import com.medapp.model.NotificationOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, Long> {
+
+    /**
+     * Claim up to limit due rows of one channel under a fresh token, oldest first.
+     * A single UPDATE, so two workers (or two nodes) never claim the same row.
+     */
+    @Modifying
+    @Query(value = "UPDATE notification_outbox SET status = 'SENDING', claim_token = :token, locked_until = :lockedUntil " +
+                   "WHERE status = 'PENDING' AND channel = :channel AND next_attempt_at <= :now " +
+                   "ORDER BY next_attempt_at, id LIMIT :limit",
+           nativeQuery = true)
+    int claimDue(@Param("channel") String channel, @Param("token") String token,
+                 @Param("now") LocalDateTime now, @Param("lockedUntil") LocalDateTime lockedUntil,
+                 @Param("limit") int limit);
+
+    List<NotificationOutbox> findByClaimToken(String claimToken);
+
+    /**
+     * Hand back rows whose worker died mid-send
+     */
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = com.medapp.model.NotificationOutbox.Status.PENDING, " +
+           "o.claimToken = null, o.lockedUntil = null " +
+           "WHERE o.status = com.medapp.model.NotificationOutbox.Status.SENDING AND o.lockedUntil < :now")
+    int releaseExpiredClaims(@Param("now") LocalDateTime now);
+
+    // The result updates only apply while the claim is still ours
+
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = com.medapp.model.NotificationOutbox.Status.SENT, " +
+           "o.attempts = o.attempts + 1, o.sentAt = :now, o.claimToken = null, o.lockedUntil = null, o.lastError = null " +
+           "WHERE o.id = :id AND o.claimToken = :token")
+    int markSent(@Param("id") Long id, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = com.medapp.model.NotificationOutbox.Status.PENDING, " +
+           "o.attempts = o.attempts + 1, o.nextAttemptAt = :nextAttemptAt, o.lastError = :error, " +
+           "o.claimToken = null, o.lockedUntil = null " +
+           "WHERE o.id = :id AND o.claimToken = :token")
+    int markRetry(@Param("id") Long id, @Param("token") String token,
+                  @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("error") String error);
+
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = com.medapp.model.NotificationOutbox.Status.DEAD, " +
+           "o.attempts = o.attempts + 1, o.lastError = :error, o.claimToken = null, o.lockedUntil = null " +
+           "WHERE o.id = :id AND o.claimToken = :token")
+    int markDead(@Param("id") Long id, @Param("token") String token, @Param("error") String error);
+
+    /**
+     * Put a dead-lettered row back in the queue with a fresh attempt budget
+     */
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = com.medapp.model.NotificationOutbox.Status.PENDING, " +
+           "o.attempts = 0, o.nextAttemptAt = :now, o.lastError = null " +
+           "WHERE o.id = :id AND o.status = com.medapp.model.NotificationOutbox.Status.DEAD")
+    int requeueDead(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    List<NotificationOutbox> findByStatusOrderByIdDesc(NotificationOutbox.Status status, Pageable pageable);
+
+    @Query("SELECT o.channel, o.status, COUNT(o) FROM NotificationOutbox o GROUP BY o.channel, o.status")
+    List<Object[]> countByChannelAndStatus();
+
+    @Query("SELECT MIN(o.nextAttemptAt) FROM NotificationOutbox o " +
+           "WHERE o.status = com.medapp.model.NotificationOutbox.Status.PENDING")
+    LocalDateTime findOldestPendingDueAt();
+
+    /**
+     * End of the digest window already open for this recipient and type, if any: the
+     * time its held, never-attempted rows come due
+     */
+    @Query("SELECT MAX(o.nextAttemptAt) FROM NotificationOutbox o " +
+           "WHERE o.recipient = :recipient AND o.notificationType = :type " +
+           "AND o.status = com.medapp.model.NotificationOutbox.Status.PENDING " +
+           "AND o.digestItem IS NOT NULL AND o.attempts = 0 AND o.nextAttemptAt > :now")
+    LocalDateTime findDigestWindowEnd(@Param("recipient") String recipient, @Param("type") String type,
+                                      @Param("now") LocalDateTime now);
+
+    /**
+     * Number of due rows of one channel and when the oldest of them became due
+     */
+    @Query("SELECT COUNT(o), MIN(o.nextAttemptAt) FROM NotificationOutbox o " +
+           "WHERE o.status = com.medapp.model.NotificationOutbox.Status.PENDING " +
+           "AND o.channel = :channel AND o.nextAttemptAt <= :now")
+    List<Object[]> summarizeDue(@Param("channel") NotificationOutbox.Channel channel, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM NotificationOutbox o WHERE o.status = com.medapp.model.NotificationOutbox.Status.SENT " +
+           "AND o.sentAt < :cutoff")
+    int deleteSentBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -2,11 +2,13 @@ package com.medapp.repository;
 
 import com.medapp.model.Prescription;
 import com.medapp.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface PrescriptionRepository extends JpaRepository<Prescription, Long> {
@@ -25,6 +27,15 @@ public interface PrescriptionRepository extends JpaRepository<Prescription, Long
     
     // Find prescriptions by status
     List<Prescription> findByStatus(Prescription.Status status);
+
+    // Next chunk of prescriptions created before a cutoff that have no tracking rows, as [id, status, createdAt, updatedAt]
+    @Query("SELECT p.id, p.status, p.createdAt, p.updatedAt FROM Prescription p " +
+           "WHERE p.id > :afterId AND p.createdAt < :createdBefore " +
+           "AND NOT EXISTS (SELECT t.id FROM PrescriptionTracking t WHERE t.prescription.id = p.id) " +
+           "ORDER BY p.id ASC")
+    List<Object[]> findUntrackedAfter(@Param("afterId") Long afterId,
+                                      @Param("createdBefore") LocalDateTime createdBefore,
+                                      Pageable pageable);
     
     /**
      * Delete all prescriptions by patient
@@ -0,0 +1,60 @@
+package com.medapp.repository;
+
+import com.medapp.model.PrescriptionTracking;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inserts one tracking row per prescription in a single JDBC batch and returns
+ * the generated ids in the same order. IDENTITY ids stop Hibernate from
+ * batching these inserts, and the ids are needed as SSE event ids.
+ */
+@Repository
+public class PrescriptionTrackingBatchWriter {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO prescription_tracking (prescription_id, status, notes, created_at) VALUES (?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public List<Long> insertAll(List<Long> prescriptionIds, PrescriptionTracking.Status status, String notes,
+                                LocalDateTime createdAt) {
+        if (prescriptionIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_SQL, new String[] {"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setLong(1, prescriptionIds.get(i));
+                        ps.setString(2, status.name());
+                        ps.setString(3, notes);
+                        ps.setTimestamp(4, Timestamp.valueOf(createdAt));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return prescriptionIds.size();
+                    }
+                }, keys);
+        List<Long> ids = new ArrayList<>(prescriptionIds.size());
+        for (Map<String, Object> row : keys.getKeyList()) {
+            ids.add(((Number) row.values().iterator().next()).longValue());
+        }
+        return ids;
+    }
+}
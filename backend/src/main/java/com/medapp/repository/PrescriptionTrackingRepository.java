@@ -2,7 +2,10 @@ package com.medapp.repository;
 
 import com.medapp.model.Prescription;
 import com.medapp.model.PrescriptionTracking;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,6 +13,17 @@ import java.util.List;
 @Repository
 public interface PrescriptionTrackingRepository extends JpaRepository<PrescriptionTracking, Long> {
     List<PrescriptionTracking> findByPrescriptionOrderByCreatedAtAsc(Prescription prescription);
+
+    @Query("SELECT t FROM PrescriptionTracking t WHERE t.prescription.id = :prescriptionId ORDER BY t.createdAt ASC, t.id ASC")
+    List<PrescriptionTracking> findByPrescriptionIdOrdered(@Param("prescriptionId") Long prescriptionId);
+
+    // Events of one prescription with afterId < id <= upToId, oldest first (Last-Event-ID replay)
+    @Query("SELECT t FROM PrescriptionTracking t WHERE t.prescription.id = :prescriptionId " +
+           "AND t.id > :afterId AND t.id <= :upToId ORDER BY t.id ASC")
+    List<PrescriptionTracking> findRange(@Param("prescriptionId") Long prescriptionId,
+                                         @Param("afterId") Long afterId,
+                                         @Param("upToId") Long upToId,
+                                         Pageable pageable);
 }
 
 
@@ -3,7 +3,9 @@ package com.medapp.repository;
 import com.medapp.model.RefillReminder;
 import com.medapp.model.Patient;
 import com.medapp.model.Prescription;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -21,6 +23,31 @@ public interface RefillReminderRepository extends JpaRepository<RefillReminder,
     List<RefillReminder> findByReminderDateAndIsEnabledAndSmsSent(
         LocalDate reminderDate, boolean isEnabled, boolean smsSent);
     
+    /**
+     * Next page of enabled, unsent reminders dated within [from, to], in id order after afterId (keyset paging)
+     */
+    @Query("SELECT r FROM RefillReminder r JOIN FETCH r.patient JOIN FETCH r.prescription " +
+           "WHERE r.reminderDate BETWEEN :from AND :to AND r.isEnabled = true AND r.smsSent = false AND r.id > :afterId " +
+           "ORDER BY r.id")
+    List<RefillReminder> findDueAfterId(@Param("from") LocalDate from, @Param("to") LocalDate to,
+                                        @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Claim one reminder for sending; 0 means another node (or an earlier run) already sent it.
+     * The row stays locked until the caller's transaction commits.
+     */
+    @Modifying
+    @Query("UPDATE RefillReminder r SET r.smsSent = true, r.smsSentAt = :now, r.smsMessage = :message " +
+           "WHERE r.id = :id AND r.smsSent = false")
+    int markSentIfUnsent(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("message") String message);
+
+    /**
+     * Record the outcome of the reminder SMS on its reminders
+     */
+    @Modifying
+    @Query("UPDATE RefillReminder r SET r.smsMessage = :message WHERE r.id IN :ids")
+    int updateSmsMessageByIdIn(@Param("ids") List<Long> ids, @Param("message") String message);
+
     long countByIsEnabled(boolean isEnabled);
     
     long countByReminderDateAndIsEnabledAndSmsSent(
@@ -29,6 +56,8 @@ public interface RefillReminderRepository extends JpaRepository<RefillReminder,
     @Query("SELECT COUNT(r) FROM RefillReminder r WHERE r.smsSentAt BETWEEN :startDate AND :endDate")
     long countBySmsSentAtBetween(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
 
+    long countByCreatedAtBetween(LocalDateTime startDate, LocalDateTime endDate);
+
     Optional<RefillReminder> findTopByPrescriptionAndPatientOrderByCreatedAtDesc(
             Prescription prescription,
             Patient patient
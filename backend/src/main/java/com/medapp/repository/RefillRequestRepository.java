@@ -4,11 +4,15 @@ import com.medapp.model.RefillRequest;
 import com.medapp.model.Patient;
 import com.medapp.model.Prescription;
 import com.medapp.model.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,6 +20,8 @@ public interface RefillRequestRepository extends JpaRepository<RefillRequest, Lo
     
     List<RefillRequest> findByPatientOrderByRequestedAtDesc(Patient patient);
     
+    List<RefillRequest> findByPatientIdOrderByRequestedAtDesc(Long patientId);
+    
     List<RefillRequest> findByStatusOrderByRequestedAtDesc(RefillRequest.Status status);
     
     @Query("SELECT r FROM RefillRequest r WHERE r.status = 'PENDING' ORDER BY r.requestedAt ASC")
@@ -73,4 +79,27 @@ public interface RefillRequestRepository extends JpaRepository<RefillRequest, Lo
                                                               @Param("statuses") List<RefillRequest.Status> statuses);
     
     List<RefillRequest> findByPrescriptionOrderByRequestedAtDesc(Prescription prescription);
+
+    /**
+     * (prescriptionId, patientId) pairs among the given prescriptions that have a request in this status
+     */
+    @Query("SELECT DISTINCT r.prescription.id, r.patient.id FROM RefillRequest r " +
+           "WHERE r.prescription.id IN :prescriptionIds AND r.status = :status")
+    List<Object[]> findPrescriptionPatientPairsWithStatus(@Param("prescriptionIds") Collection<Long> prescriptionIds,
+                                                          @Param("status") RefillRequest.Status status);
+
+    /**
+     * Requests with prescription and patient loaded, row-locked until the transaction ends (bulk dispatch)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM RefillRequest r JOIN FETCH r.prescription JOIN FETCH r.patient WHERE r.id IN :ids")
+    List<RefillRequest> findAllForUpdateByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Set-based status change; stamps actioned_at the way the entity's @PreUpdate would
+     */
+    @Modifying
+    @Query("UPDATE RefillRequest r SET r.status = :status, r.actionedAt = COALESCE(r.actionedAt, :now) WHERE r.id IN :ids")
+    int updateStatusByIdIn(@Param("ids") Collection<Long> ids, @Param("status") RefillRequest.Status status,
+                           @Param("now") LocalDateTime now);
 }
\ No newline at end of file
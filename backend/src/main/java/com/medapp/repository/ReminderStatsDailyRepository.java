@@ -0,0 +1,26 @@
+package com.medapp.repository;
+
+import com.medapp.model.ReminderStatsDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface ReminderStatsDailyRepository extends JpaRepository<ReminderStatsDaily, LocalDate> {
+
+    /**
+     * Apply deltas to one day's counters in place; 0 if that day has no row yet
+     */
+    @Modifying
+    @Query("UPDATE ReminderStatsDaily s SET s.totalReminders = s.totalReminders + :total, " +
+           "s.enabledReminders = s.enabledReminders + :enabled, s.dueCount = s.dueCount + :due, " +
+           "s.sentCount = s.sentCount + :sent, s.createdCount = s.createdCount + :created " +
+           "WHERE s.statDate = :date")
+    int increment(@Param("date") LocalDate date, @Param("total") long total, @Param("enabled") long enabled,
+                  @Param("due") long due, @Param("sent") long sent, @Param("created") long created);
+
+    List<ReminderStatsDaily> findByStatDateBetweenOrderByStatDate(LocalDate from, LocalDate to);
+}
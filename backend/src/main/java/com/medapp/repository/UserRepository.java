@@ -1,7 +1,11 @@
 package com.medapp.repository;
 
 import com.medapp.model.User;
+import com.medapp.dto.DirectoryEntry;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.Optional;
 import java.util.List;
@@ -16,4 +20,16 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     // Find all pharmacists by role
     List<User> findByRoleOrderByCreatedAtDesc(User.Role role);
+
+    // Chat directory page: active users in the given roles by name prefix, served from the (role, active, name) index
+    @Query("SELECT new com.medapp.dto.DirectoryEntry(u.id, u.name, u.email, u.role) " +
+           "FROM User u WHERE u.role IN :roles AND u.active = true AND u.name LIKE :namePrefix ESCAPE '!' " +
+           "ORDER BY u.name ASC, u.id ASC")
+    List<DirectoryEntry> findChatDirectoryPage(@Param("roles") List<User.Role> roles,
+                                                                    @Param("namePrefix") String namePrefix,
+                                                                    Pageable pageable);
+
+    // Whether the user asked for every notification separately rather than digests
+    @Query("SELECT u.digestOptOut FROM User u WHERE u.id = :id")
+    Optional<Boolean> findDigestOptOutById(@Param("id") Long id);
 } 
\ No newline at end of file
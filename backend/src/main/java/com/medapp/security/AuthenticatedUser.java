@@ -0,0 +1,96 @@
+package com.medapp.security;
+
+import com.medapp.model.User;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Security principal built once per token in JwtAuthenticationFilter.
+ * Carries the identity fields controllers need (id, role, verification and
+ * active flags) so they no longer reload the User entity by email.
+ */
+public class AuthenticatedUser implements UserDetails, CredentialsContainer {
+    private final Long id;
+    private final String email;
+    private final String name;
+    private final User.Role role;
+    private final boolean verified;
+    private final boolean active;
+    private final List<GrantedAuthority> authorities;
+    private String password;
+
+    public AuthenticatedUser(Long id, String email, String name, String password,
+                             User.Role role, boolean verified, boolean active) {
+        this.id = id;
+        this.email = email;
+        this.name = name;
+        this.password = password;
+        this.role = role;
+        this.verified = verified;
+        this.active = active;
+        this.authorities = List.of(new SimpleGrantedAuthority("ROLE_" + role.name()));
+    }
+
+    public static AuthenticatedUser from(User user) {
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getName(), user.getPassword(),
+                user.getRole(), user.isVerified(), user.isActive());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public User.Role getRole() {
+        return role;
+    }
+
+    public boolean hasRole(User.Role role) {
+        return this.role == role;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return active;
+    }
+
+    @Override
+    public void eraseCredentials() {
+        this.password = null;
+    }
+}
@@ -19,18 +19,13 @@ public class CustomUserDetailsService implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        logger.info("Loading user details for email: {}", email);
+        logger.debug("Loading user details for email: {}", email);
         try {
             User user = userRepository.findByEmail(email)
                     .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + email));
-            logger.info("User found: {} with role: {} and active: {}", user.getName(), user.getRole(), user.isActive());
+            logger.debug("User found: {} with role: {} and active: {}", user.getName(), user.getRole(), user.isActive());
             
-            return org.springframework.security.core.userdetails.User
-                    .withUsername(user.getEmail())
-                    .password(user.getPassword())
-                    .roles(user.getRole().name())
-                    .disabled(!user.isActive())
-                    .build();
+            return AuthenticatedUser.from(user);
         } catch (Exception e) {
             logger.error("Error loading user details for email {}: {}", email, e.getMessage(), e);
             throw e;
@@ -1,11 +1,13 @@
 package com.medapp.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.CredentialsContainer;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -17,10 +19,14 @@ import java.io.IOException;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    private static final String STREAM_PATH = "/api/chat/stream";
+
     @Autowired
     private JwtUtil jwtUtil;
     @Autowired
     private UserDetailsService userDetailsService;
+    @Autowired
+    private JwtTokenCache tokenCache;
 
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
@@ -31,25 +37,30 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
-        String authHeader = request.getHeader("Authorization");
-        String token = null;
-        String username = null;
+        String token = resolveToken(request);
 
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            token = authHeader.substring(7);
-            // Validate token before attempting to parse subject to avoid exceptions bubbling up
-            if (!jwtUtil.validateToken(token)) {
-                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                response.setContentType("application/json");
-                response.getWriter().write("{\"message\":\"Invalid or expired token. Please login again.\"}");
-                return;
+        if (token != null) {
+            // Verified tokens are cached with their resolved user, so repeat calls skip both the HMAC check and the users lookup
+            JwtTokenCache.Entry cached = tokenCache.get(token);
+            if (cached == null) {
+                // Validate token before attempting to parse subject to avoid exceptions bubbling up
+                Claims claims = jwtUtil.parseClaims(token);
+                if (claims == null) {
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    response.setContentType("application/json");
+                    response.getWriter().write("{\"message\":\"Invalid or expired token. Please login again.\"}");
+                    return;
+                }
+                UserDetails userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
+                // The cached principal never needs the password hash
+                if (userDetails instanceof CredentialsContainer container) {
+                    container.eraseCredentials();
+                }
+                cached = tokenCache.put(token, claims, userDetails);
             }
-            username = jwtUtil.getSubject(token);
-        }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            if (jwtUtil.validateToken(token)) {
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                UserDetails userDetails = cached.getUserDetails();
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -58,4 +69,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
+
+    private String resolveToken(HttpServletRequest request) {
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            return authHeader.substring(7);
+        }
+        // EventSource cannot send headers, so event streams may carry the token as a query parameter
+        if (STREAM_PATH.equals(request.getRequestURI())) {
+            String token = request.getParameter("token");
+            return token != null && !token.isBlank() ? token : null;
+        }
+        return null;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,161 @@
+package com.medapp.security;
+
+import io.jsonwebtoken.Claims;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of verified JWTs, keyed by the SHA-256 of the raw token.
+ * Each entry holds the parsed claims and the resolved UserDetails and expires
+ * at the token's own expiry (capped by max-ttl-seconds), so a cached token is
+ * never accepted past the point where the parser would have rejected it.
+ */
+@Component
+public class JwtTokenCache {
+    private static final Logger logger = LoggerFactory.getLogger(JwtTokenCache.class);
+
+    @Value("${app.security.token-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.security.token-cache.max-ttl-seconds:900}")
+    private long maxTtlSeconds;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public static class Entry {
+        private final Claims claims;
+        private final UserDetails userDetails;
+        private final long expiresAtMillis;
+
+        Entry(Claims claims, UserDetails userDetails, long expiresAtMillis) {
+            this.claims = claims;
+            this.userDetails = userDetails;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public Claims getClaims() {
+            return claims;
+        }
+
+        public UserDetails getUserDetails() {
+            return userDetails;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAtMillis;
+        }
+    }
+
+    /**
+     * Look up a previously verified token, or null on a miss or expired entry
+     */
+    public Entry get(String token) {
+        String key = hash(token);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, entry);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    public Entry put(String token, Claims claims, UserDetails userDetails) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + maxTtlSeconds * 1000;
+        if (claims.getExpiration() != null) {
+            expiresAt = Math.min(expiresAt, claims.getExpiration().getTime());
+        }
+        Entry entry = new Entry(claims, userDetails, expiresAt);
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        entries.put(hash(token), entry);
+        return entry;
+    }
+
+    /**
+     * Drop every cached token belonging to the given user (status change, deletion, password change)
+     */
+    public void invalidateUser(String email) {
+        if (email == null) {
+            return;
+        }
+        int before = entries.size();
+        entries.values().removeIf(e -> email.equalsIgnoreCase(e.getUserDetails().getUsername()));
+        int removed = before - entries.size();
+        invalidations.increment();
+        if (removed > 0) {
+            logger.info("Invalidated {} cached token(s) for user {}", removed, email);
+        }
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+        invalidations.increment();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long h = hits.sum();
+        long m = misses.sum();
+        stats.put("size", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(e -> {
+            if (e.isExpired(now)) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        });
+        // Still full of live tokens: drop an arbitrary tenth rather than scanning for the oldest
+        int toDrop = entries.size() - (maxEntries - maxEntries / 10);
+        Iterator<String> it = entries.keySet().iterator();
+        while (toDrop > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+            toDrop--;
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
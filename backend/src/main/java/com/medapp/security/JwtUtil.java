@@ -12,6 +12,8 @@ public class JwtUtil {
     private final String jwtSecret = "mySecretKeyForJwtGenerationThatIsLongEnough12345";
     private final long jwtExpirationMs = 86400000; // 1 day
     private final Key key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    // JwtParser is immutable and thread-safe, so build it once instead of per call
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(key).build();
 
     public String generateToken(String subject) {
         return Jwts.builder()
@@ -23,18 +25,21 @@ public class JwtUtil {
     }
 
     public String getSubject(String token) {
-        return Jwts.parserBuilder().setSigningKey(key).build()
-                .parseClaimsJws(token).getBody().getSubject();
+        return parser.parseClaimsJws(token).getBody().getSubject();
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Verify the signature and expiry once and return the claims, or null if the token is invalid
+     */
+    public Claims parseClaims(String token) {
         try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
-            return true;
-        } catch (ExpiredJwtException e) {
-            return false;
+            return parser.parseClaimsJws(token).getBody();
         } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            return null;
         }
     }
-} 
\ No newline at end of file
+
+    public boolean validateToken(String token) {
+        return parseClaims(token) != null;
+    }
+}
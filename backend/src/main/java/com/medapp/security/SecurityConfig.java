@@ -1,5 +1,6 @@
 package com.medapp.security;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -44,6 +45,7 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll() // SSE completion re-dispatch; the original request was already authorized
                 .requestMatchers("/api/auth/register", "/api/auth/login", "/api/auth/forgot-password", "/api/auth/reset-password", "/api/auth/debug-user/**", "/api/auth/create-test-user", "/api/auth/create-admin", "/api/auth/verify-pharmacist/**", "/api/auth/fix-user-password", "/api/auth/test-register", "/api/auth/test-forgot-password").permitAll()
                 .requestMatchers("/uploads/**", "/backend/uploads/**").permitAll() // Allow public access to uploaded files
                 .requestMatchers("/api/prescriptions/file/**", "/api/prescriptions/test-file-access").permitAll() // Allow public access to file serving endpoints
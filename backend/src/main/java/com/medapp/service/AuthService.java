@@ -14,6 +14,7 @@ import com.medapp.model.User;
 import com.medapp.repository.PatientRepository;
 import com.medapp.repository.PharmacistRepository;
 import com.medapp.repository.UserRepository;
+import com.medapp.security.JwtTokenCache;
 import com.medapp.security.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -47,6 +48,10 @@ public class AuthService {
     private AuthenticationManager authenticationManager;
     @Autowired
     private EmailService emailService;
+    @Autowired
+    private JwtTokenCache tokenCache;
+    @Autowired
+    private ChatDirectoryService chatDirectoryService;
 
     @Transactional
     public AuthResponse register(RegisterRequest request) {
@@ -90,6 +95,7 @@ public class AuthService {
                 logger.error("Invalid role: {}", request.getRole());
                 throw new RuntimeException("Invalid role");
             }
+            chatDirectoryService.invalidate(role);
             
             // Send registration confirmation email
             try {
@@ -184,6 +190,7 @@ public class AuthService {
         user.setResetToken(null);
         user.setResetTokenExpiry(null);
         userRepository.save(user);
+        tokenCache.invalidateUser(user.getEmail());
         
         logger.info("Password reset successful for user: {}", user.getEmail());
     }
@@ -0,0 +1,190 @@
+package com.medapp.service;
+
+import com.medapp.dto.DirectoryEntry;
+import com.medapp.model.User;
+import com.medapp.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Directory of active users for the chat sidebar, cached per set of roles a
+ * viewer may talk to.
+ *
+ * A directory is loaded once through the (role, active, name) index as
+ * lightweight entries sorted by name, then paged and prefix-searched in memory.
+ * One with more than max-entries users is not cached; it is remembered as too
+ * large and paged straight from the database until its roles are invalidated.
+ * Callers invalidate a role whenever a user of that role is created, approved,
+ * (de)activated, renamed or deleted; the invalidation takes effect when their
+ * transaction commits.
+ */
+@Service
+public class ChatDirectoryService {
+    private static final Logger logger = LoggerFactory.getLogger(ChatDirectoryService.class);
+
+    private static final Comparator<DirectoryEntry> BY_NAME = Comparator
+            .comparing((DirectoryEntry e) -> e.name, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(e -> e.id);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${app.chat.directory.max-entries:5000}")
+    private int maxEntries;
+
+    private final Map<Set<User.Role>, List<DirectoryEntry>> directories = new ConcurrentHashMap<>();
+    private final Set<Set<User.Role>> tooLarge = ConcurrentHashMap.newKeySet();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder databasePages = new LongAdder();
+
+    /**
+     * One page of active users in the given roles, sorted by name, optionally
+     * restricted to names starting with prefix (case-insensitive)
+     */
+    public List<DirectoryEntry> findPage(List<User.Role> roles, String prefix, int page, int size) {
+        return find(roles, prefix, PageRequest.of(page, size));
+    }
+
+    /**
+     * Every active user in the given roles, sorted by name, optionally restricted
+     * to names starting with prefix (case-insensitive)
+     */
+    public List<DirectoryEntry> findAll(List<User.Role> roles, String prefix) {
+        return find(roles, prefix, Pageable.unpaged());
+    }
+
+    private List<DirectoryEntry> find(List<User.Role> roles, String prefix, Pageable pageable) {
+        if (roles.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String normalizedPrefix = prefix == null ? "" : prefix.trim();
+
+        List<DirectoryEntry> directory = directoryFor(EnumSet.copyOf(roles));
+        if (directory == null) {
+            // Too large to hold in memory; let the index do the work
+            databasePages.increment();
+            return userRepository.findChatDirectoryPage(roles, likePrefix(normalizedPrefix), pageable);
+        }
+
+        int from = normalizedPrefix.isEmpty() ? 0 : firstWithPrefix(directory, normalizedPrefix);
+        String lowerPrefix = normalizedPrefix.toLowerCase(Locale.ROOT);
+
+        int size = pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE;
+        List<DirectoryEntry> result = new ArrayList<>();
+        long skip = pageable.isPaged() ? pageable.getOffset() : 0;
+        for (int i = from; i < directory.size() && result.size() < size; i++) {
+            DirectoryEntry entry = directory.get(i);
+            if (!lowerPrefix.isEmpty() && !entry.name.toLowerCase(Locale.ROOT).startsWith(lowerPrefix)) {
+                break;
+            }
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Drop cached directories containing role once the caller's transaction commits,
+     * so a load running in the meantime cannot re-cache the old rows
+     */
+    public void invalidate(User.Role role) {
+        if (role == null) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> {
+            generation.incrementAndGet();
+            directories.keySet().removeIf(roles -> roles.contains(role));
+            tooLarge.removeIf(roles -> roles.contains(role));
+            logger.debug("Chat directory invalidated for role {}", role);
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        directories.forEach((roles, directory) -> sizes.put(roles.toString(), directory.size()));
+        stats.put("cachedDirectories", sizes);
+        stats.put("tooLargeToCache", tooLarge.stream().map(Set::toString).toList());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("databasePages", databasePages.sum());
+        return stats;
+    }
+
+    /**
+     * Cached directory for a set of roles, loading it on first use; null when it is too large to cache
+     */
+    private List<DirectoryEntry> directoryFor(Set<User.Role> roles) {
+        List<DirectoryEntry> directory = directories.get(roles);
+        if (directory != null) {
+            hits.increment();
+            return directory;
+        }
+        if (tooLarge.contains(roles)) {
+            return null;
+        }
+        misses.increment();
+        long loadedAt = generation.get();
+        List<DirectoryEntry> loaded = userRepository.findChatDirectoryPage(new ArrayList<>(roles), "%",
+                PageRequest.of(0, maxEntries + 1));
+        if (loaded.size() > maxEntries) {
+            if (generation.get() == loadedAt) {
+                tooLarge.add(roles);
+            }
+            return null;
+        }
+        loaded = new ArrayList<>(loaded);
+        // Re-sort with the in-memory comparator so prefix lookups agree with the database collation
+        loaded.sort(BY_NAME);
+        directory = Collections.unmodifiableList(loaded);
+        // Only publish if nothing was invalidated while the query ran
+        if (generation.get() == loadedAt) {
+            directories.put(roles, directory);
+        }
+        return directory;
+    }
+
+    private static int firstWithPrefix(List<DirectoryEntry> sorted, String prefix) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(sorted.get(mid).name, prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String likePrefix(String prefix) {
+        String escaped = prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+        return escaped + "%";
+    }
+}
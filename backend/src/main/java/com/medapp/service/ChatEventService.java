@@ -0,0 +1,125 @@
+package com.medapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medapp.model.Message;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Pushes chat events (new message, edit, delete, read receipt) to every open
+ * stream of the users involved, so clients no longer re-fetch whole threads.
+ */
+@Service
+public class ChatEventService {
+
+    public static final String EVENT_MESSAGE = "message";
+    public static final String EVENT_MESSAGE_EDITED = "message-edited";
+    public static final String EVENT_MESSAGE_DELETED = "message-deleted";
+    public static final String EVENT_READ = "read";
+
+    @Autowired
+    @Qualifier("sseExecutor")
+    private Executor sseExecutor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.sse.chat.queue-capacity:256}")
+    private int queueCapacity;
+
+    private SseHub<Long> hub;
+
+    @PostConstruct
+    void init() {
+        hub = new SseHub<>("chat", queueCapacity, sseExecutor, objectMapper);
+    }
+
+    /**
+     * Open a stream for a user; one user may hold several (tabs, devices)
+     */
+    public SseEmitter subscribe(Long userId) {
+        return hub.subscribe(userId, 0L);
+    }
+
+    public void messageSent(Message message) {
+        MessageEvent event = new MessageEvent(message);
+        publishAfterCommit(EVENT_MESSAGE, event, event.senderId, event.receiverId);
+    }
+
+    public void messageEdited(Message message) {
+        MessageEvent event = new MessageEvent(message);
+        publishAfterCommit(EVENT_MESSAGE_EDITED, event, event.senderId, event.receiverId);
+    }
+
+    public void messageDeleted(Long messageId, Long senderId, Long receiverId) {
+        publishAfterCommit(EVENT_MESSAGE_DELETED,
+                Map.of("id", messageId, "senderId", senderId, "receiverId", receiverId),
+                senderId, receiverId);
+    }
+
+    /**
+     * Read receipt: the reader has read messages from sender, up to a message id when given
+     */
+    public void messagesRead(Long senderId, Long readerId, Long upToMessageId, int count) {
+        Map<String, Object> payload = upToMessageId == null
+                ? Map.of("senderId", senderId, "readerId", readerId, "count", count)
+                : Map.of("senderId", senderId, "readerId", readerId, "upToId", upToMessageId, "count", count);
+        publishAfterCommit(EVENT_READ, payload, senderId, readerId);
+    }
+
+    /**
+     * Events are only pushed once the change is committed, so a client never sees
+     * a message that a rollback then takes away
+     */
+    private void publishAfterCommit(String eventName, Object payload, Long... userIds) {
+        Set<Long> targets = new LinkedHashSet<>();
+        for (Long userId : userIds) {
+            if (userId != null) {
+                targets.add(userId);
+            }
+        }
+        TransactionHooks.afterCommit(() -> targets.forEach(userId -> hub.publish(userId, eventName, null, payload)));
+    }
+
+    @Scheduled(fixedRateString = "${app.sse.heartbeat-ms:25000}")
+    public void heartbeat() {
+        hub.heartbeat();
+    }
+
+    public Map<String, Object> getStats() {
+        return hub.getStats();
+    }
+
+    /**
+     * Message payload built inside the transaction, so nothing lazy is touched after commit
+     */
+    public static class MessageEvent {
+        public final Long id;
+        public final Long senderId;
+        public final Long receiverId;
+        public final String content;
+        public final String sentAt;
+        public final boolean isRead;
+        public final boolean isEdited;
+
+        public MessageEvent(Message m) {
+            this.id = m.getId();
+            this.senderId = m.getSender().getId();
+            this.receiverId = m.getReceiver().getId();
+            this.content = m.getContent();
+            this.sentAt = m.getSentAt() != null ? m.getSentAt().toString() : null;
+            this.isRead = m.isRead();
+            this.isEdited = m.isEdited();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.medapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fails calls to an unhealthy provider fast instead of letting every caller
+ * wait out its timeout.
+ *
+ * CLOSED: calls go through; failureThreshold consecutive failures open it.
+ * OPEN: calls are rejected until openMillis have passed, then one trial call
+ * is let through (HALF_OPEN). The trial's success closes the breaker, its
+ * failure opens it again for another openMillis.
+ *
+ * Callers ask tryAcquire() before the call and report the outcome with
+ * onSuccess/onFailure, passing the call's duration for the latency figures.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    private LocalDateTime lastStateChange;
+
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Whether a call may be made now. Every true must be followed by onSuccess or onFailure.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openMillis) {
+                    rejected.increment();
+                    return false;
+                }
+                transition(State.HALF_OPEN);
+                trialInFlight = true;
+                return true;
+            default:
+                // HALF_OPEN: only the one trial call
+                if (trialInFlight) {
+                    rejected.increment();
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    public void onSuccess(long elapsedNanos) {
+        successes.increment();
+        recordLatency(elapsedNanos);
+        synchronized (this) {
+            consecutiveFailures = 0;
+            if (state == State.HALF_OPEN) {
+                trialInFlight = false;
+                transition(State.CLOSED);
+            }
+        }
+    }
+
+    public void onFailure(long elapsedNanos) {
+        failures.increment();
+        recordLatency(elapsedNanos);
+        synchronized (this) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                trialInFlight = false;
+                openedAt = System.currentTimeMillis();
+                opened.increment();
+                transition(State.OPEN);
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        // Report an expired OPEN as HALF_OPEN; the next call will be the trial
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private void transition(State next) {
+        if (state != next) {
+            logger.warn("Circuit breaker {} {} -> {} after {} consecutive failures", name, state, next, consecutiveFailures);
+            state = next;
+            lastStateChange = LocalDateTime.now();
+        }
+    }
+
+    private void recordLatency(long elapsedNanos) {
+        latencyNanos.add(elapsedNanos);
+        maxLatencyNanos.accumulateAndGet(elapsedNanos, Math::max);
+    }
+
+    public Map<String, Object> getStats() {
+        long calls = successes.sum() + failures.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", getState().name());
+        synchronized (this) {
+            stats.put("consecutiveFailures", consecutiveFailures);
+            stats.put("lastStateChange", lastStateChange);
+        }
+        stats.put("successes", successes.sum());
+        stats.put("failures", failures.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("timesOpened", opened.sum());
+        stats.put("averageLatencyMs", calls == 0 ? 0.0 : latencyNanos.sum() / 1_000_000.0 / calls);
+        stats.put("maxLatencyMs", maxLatencyNanos.get() / 1_000_000.0);
+        return stats;
+    }
+}
@@ -0,0 +1,146 @@
+package com.medapp.service;
+
+import com.medapp.model.ConversationSummary;
+import com.medapp.model.Message;
+import com.medapp.model.User;
+import com.medapp.repository.ConversationSummaryRepository;
+import com.medapp.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the conversation_summary read model in step with message writes.
+ * Every method joins the caller's transaction, so a summary never drifts from
+ * a message change that was rolled back.
+ */
+@Service
+@Transactional
+public class ConversationSummaryService {
+    private static final Logger logger = LoggerFactory.getLogger(ConversationSummaryService.class);
+
+    @Autowired
+    private ConversationSummaryRepository summaryRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    public void onMessageSent(Message message) {
+        Long senderId = message.getSender().getId();
+        Long receiverId = message.getReceiver().getId();
+        Long userAId = Math.min(senderId, receiverId);
+        Long userBId = Math.max(senderId, receiverId);
+        boolean receiverIsA = receiverId.equals(userAId);
+        summaryRepository.recordMessage(userAId, userBId, message.getId(), senderId,
+                ConversationSummary.snippetOf(message.getContent()), message.getSentAt(),
+                receiverIsA ? 1 : 0, receiverIsA ? 0 : 1);
+    }
+
+    public void onMessageEdited(Message message) {
+        Long senderId = message.getSender().getId();
+        Long receiverId = message.getReceiver().getId();
+        summaryRepository.updateSnippet(Math.min(senderId, receiverId), Math.max(senderId, receiverId),
+                message.getId(), ConversationSummary.snippetOf(message.getContent()));
+    }
+
+    /**
+     * Call after the message row has been removed
+     */
+    public void onMessageDeleted(Message message) {
+        Long senderId = message.getSender().getId();
+        Long receiverId = message.getReceiver().getId();
+        Long userAId = Math.min(senderId, receiverId);
+        Long userBId = Math.max(senderId, receiverId);
+
+        if (!message.isRead()) {
+            boolean receiverIsA = receiverId.equals(userAId);
+            summaryRepository.decrementUnread(userAId, userBId, receiverIsA ? 1 : 0, receiverIsA ? 0 : 1);
+        }
+
+        ConversationSummary summary = summaryRepository.findByUserAIdAndUserBId(userAId, userBId).orElse(null);
+        if (summary == null || !message.getId().equals(summary.getLastMessageId())) {
+            return;
+        }
+        List<Message> latest = messageRepository.findLatestPageBetweenUsers(userAId, userBId, PageRequest.of(0, 1));
+        if (latest.isEmpty()) {
+            summaryRepository.deletePair(userAId, userBId);
+        } else {
+            Message previous = latest.get(0);
+            summaryRepository.replaceLastMessage(userAId, userBId, previous.getId(), previous.getSender().getId(),
+                    ConversationSummary.snippetOf(previous.getContent()), previous.getSentAt());
+        }
+    }
+
+    /**
+     * The reader has read count messages from sender
+     */
+    public void onMessagesRead(Long senderId, Long readerId, int count) {
+        if (count <= 0) {
+            return;
+        }
+        Long userAId = Math.min(senderId, readerId);
+        Long userBId = Math.max(senderId, readerId);
+        boolean readerIsA = readerId.equals(userAId);
+        summaryRepository.decrementUnread(userAId, userBId, readerIsA ? count : 0, readerIsA ? 0 : count);
+    }
+
+    public void removeUser(Long userId) {
+        int removed = summaryRepository.deleteAllForUser(userId);
+        logger.info("Removed {} conversation summaries for user ID {}", removed, userId);
+    }
+
+    /**
+     * All conversations of a user, most recent first, in one query
+     */
+    @Transactional(readOnly = true)
+    public List<ConversationView> getConversations(Long userId) {
+        List<ConversationView> views = new ArrayList<>();
+        for (Object[] row : summaryRepository.findWithPartnerByUserId(userId)) {
+            ConversationSummary summary = (ConversationSummary) row[0];
+            views.add(new ConversationView((User) row[1], summary, summary.getUnreadFor(userId)));
+        }
+        return views;
+    }
+
+    @Transactional(readOnly = true)
+    public ConversationSummary getSummary(Long userId, Long otherUserId) {
+        return summaryRepository.findByUserAIdAndUserBId(Math.min(userId, otherUserId), Math.max(userId, otherUserId))
+                .orElse(null);
+    }
+
+    /**
+     * Populate the table from existing messages the first time the application
+     * starts with it empty
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (summaryRepository.count() > 0 || messageRepository.count() == 0) {
+            return;
+        }
+        int created = summaryRepository.rebuildFromMessages();
+        logger.info("Built {} conversation summaries from existing messages", created);
+    }
+
+    /**
+     * One conversation as seen by one participant
+     */
+    public static class ConversationView {
+        public final User otherUser;
+        public final ConversationSummary summary;
+        public final long unreadCount;
+
+        public ConversationView(User otherUser, ConversationSummary summary, long unreadCount) {
+            this.otherUser = otherUser;
+            this.summary = summary;
+            this.unreadCount = unreadCount;
+        }
+    }
+}
@@ -1,18 +1,36 @@
 package com.medapp.service;
 
+import com.medapp.exception.NotificationDeliveryException;
+import com.medapp.model.FilledMedicine;
 import com.medapp.model.User;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSenderFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class EmailService {
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
 
-    private final JavaMailSender mailSender;
+    private final SmtpConnectionPool smtpPool;
+    private final NotificationTemplates templates;
 
     @Value("${spring.mail.username:}")
     private String fromAddress;
@@ -20,8 +38,9 @@ public class EmailService {
     @Value("${app.frontend.url:http://localhost:3000}")
     private String frontendUrl;
 
-    public EmailService(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    public EmailService(SmtpConnectionPool smtpPool, NotificationTemplates templates) {
+        this.smtpPool = smtpPool;
+        this.templates = templates;
     }
 
     public boolean isConfigured() {
@@ -34,13 +53,11 @@ public class EmailService {
             return false;
         }
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromAddress);
-            message.setTo(to);
-            message.setSubject(subject);
-            message.setText(text);
-            mailSender.send(message);
-            logger.info("Email sent to {} with subject '{}'", to, subject);
+            // The caller is waiting on this, so it may use the pool's reserved connections
+            NotificationDeliveryException failure = deliverAll(List.of(new Outgoing(to, subject, text)), true).get(0);
+            if (failure != null) {
+                throw failure;
+            }
             return true;
         } catch (Exception e) {
             logger.error("Failed to send email to {} with subject '{}': {}", to, subject, e.getMessage(), e);
@@ -48,99 +65,328 @@ public class EmailService {
         }
     }
 
-    // Notification emails for refill workflow
-    public boolean sendRefillReminderEmail(String to, String patientName, String prescriptionId,
-                                           String refillDueDate, String medicineList) {
-        String subject = "ReMedGo – Refill Reminder";
-        String body = "Hello " + patientName + ",\n\n" +
-                "This is a reminder that your medicines for prescription #" + prescriptionId +
-                " will run out soon.\n" +
-                "Refill Due Date: " + refillDueDate + "\n\n" +
-                "Medicines (with dosage):\n" + medicineList + "\n\n" +
-                "You can request a refill from your ReMedGo dashboard.\n\n" +
-                "- ReMedGo";
-        return sendSimpleMessage(to, subject, body);
-    }
-
-    public boolean sendMedicineFilledEmail(String to, String patientName, String prescriptionId,
-                                           String filledDate, String medicineList, String refillReminderDateOrNote) {
-        String subject = "ReMedGo – Medicines Filled";
-        String body = "Hello " + patientName + ",\n\n" +
-                "Your medicines for prescription #" + prescriptionId + " have been filled on " + filledDate + ".\n\n" +
-                "Medicines (with quantities):\n" + medicineList + "\n\n" +
-                (refillReminderDateOrNote != null && !refillReminderDateOrNote.isBlank()
-                        ? ("Refill reminder date: " + refillReminderDateOrNote + "\n\n")
-                        : "") +
-                "- ReMedGo";
-        return sendSimpleMessage(to, subject, body);
-    }
-
-    public boolean sendMedicineDispatchedEmail(String to, String patientName, String prescriptionId,
-                                               String dispatchDate, String medicineList, String deliveryAddress) {
-        String subject = "ReMedGo – Medicines Dispatched";
-        String body = "Hello " + patientName + ",\n\n" +
-                "Your prescription #" + prescriptionId + " has been dispatched on " + dispatchDate + ".\n\n" +
-                "Medicines:\n" + medicineList + "\n\n" +
-                "Delivery Address:\n" + deliveryAddress + "\n\n" +
-                "You will receive it soon.\n\n" +
-                "Email: " + to + "\n" +
-                "- ReMedGo";
-        return sendSimpleMessage(to, subject, body);
+    /**
+     * Send one message or throw; used by the notification outbox, which decides
+     * whether to retry from the exception
+     */
+    public void deliver(String to, String subject, String text) {
+        NotificationDeliveryException failure = deliverAll(List.of(new Outgoing(to, subject, text))).get(0);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Send several messages over one pooled SMTP connection. Returns one entry per
+     * message, null when it was accepted; a message failing does not stop the rest.
+     */
+    public List<NotificationDeliveryException> deliverAll(List<Outgoing> emails) {
+        return deliverAll(emails, false);
+    }
+
+    private List<NotificationDeliveryException> deliverAll(List<Outgoing> emails, boolean interactive) {
+        List<NotificationDeliveryException> results = new ArrayList<>(emails.size());
+        if (!isConfigured()) {
+            emails.forEach(e -> results.add(new NotificationDeliveryException("Email service not configured", false)));
+            return results;
+        }
+        // Messages that cannot even be built fail alone; the rest go out together
+        List<MimeMessage> messages = new ArrayList<>(emails.size());
+        List<Integer> positions = new ArrayList<>(emails.size());
+        for (Outgoing email : emails) {
+            try {
+                messages.add(toMimeMessage(email));
+                positions.add(results.size());
+                results.add(null);
+            } catch (MessagingException e) {
+                results.add(new NotificationDeliveryException("Invalid email message: " + e.getMessage(), false, e));
+            }
+        }
+        if (messages.isEmpty()) {
+            return results;
+        }
+        List<MessagingException> sendResults;
+        try {
+            sendResults = interactive ? smtpPool.sendAllInteractive(messages) : smtpPool.sendAll(messages);
+        } catch (MessagingException e) {
+            NotificationDeliveryException failure = new NotificationDeliveryException(e.getMessage(), true, e);
+            positions.forEach(i -> results.set(i, failure));
+            return results;
+        }
+        for (int i = 0; i < sendResults.size(); i++) {
+            MessagingException e = sendResults.get(i);
+            int position = positions.get(i);
+            if (e == null) {
+                logger.info("Email sent to {} with subject '{}'", emails.get(position).to, emails.get(position).subject);
+            } else {
+                results.set(position, new NotificationDeliveryException(e.getMessage(), isRetryable(e), e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Whether a failed send is worth retrying. Connection-level failures may be
+     * transient. A SendFailedException is decided by the SMTP reply codes it (or
+     * its per-address chain) carries: any 5xx is permanent, a 4xx (421, 450, 451,
+     * 452...) means try again later. Without a code it is permanent, unless the
+     * session was lost (an I/O cause, or an SMTP failure with no reply such as
+     * [EOF] when the server closed it), which is transient.
+     */
+    static boolean isRetryable(MessagingException e) {
+        if (!(e instanceof SendFailedException)) {
+            return true;
+        }
+        boolean transientReply = false;
+        boolean anyCode = false;
+        for (Exception next = e; next != null;
+             next = next instanceof MessagingException m ? m.getNextException() : null) {
+            int code = smtpReturnCode(next);
+            anyCode |= code > 0;
+            if (code >= 500) {
+                return false;
+            }
+            if (code >= 400) {
+                transientReply = true;
+            }
+        }
+        return transientReply || (!anyCode && (e instanceof SMTPSendFailedException || causedByIo(e)));
+    }
+
+    private static boolean causedByIo(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int smtpReturnCode(Exception e) {
+        if (e instanceof SMTPSendFailedException f) {
+            return f.getReturnCode();
+        }
+        if (e instanceof SMTPAddressFailedException f) {
+            return f.getReturnCode();
+        }
+        if (e instanceof SMTPSenderFailedException f) {
+            return f.getReturnCode();
+        }
+        return -1;
+    }
+
+    private MimeMessage toMimeMessage(Outgoing email) throws MessagingException {
+        MimeMessage message = new MimeMessage(smtpPool.getSession());
+        message.setFrom(new InternetAddress(fromAddress));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(email.to));
+        message.setSubject(email.subject, "UTF-8");
+        if (email.html == null) {
+            message.setText(email.body, "UTF-8");
+        } else {
+            // Plain text first: clients show the last alternative they can render
+            MimeMultipart alternative = new MimeMultipart("alternative");
+            MimeBodyPart text = new MimeBodyPart();
+            text.setText(email.body, "UTF-8");
+            MimeBodyPart html = new MimeBodyPart();
+            html.setContent(email.html, "text/html; charset=UTF-8");
+            alternative.addBodyPart(text);
+            alternative.addBodyPart(html);
+            message.setContent(alternative);
+        }
+        message.setSentDate(new Date());
+        return message;
+    }
+
+    // Notification emails for refill workflow; all of them are queued through the notification outbox
+    public Email refillReminderEmail(String patientName, Long prescriptionId,
+                                     LocalDate refillDueDate, List<FilledMedicine> medicines) {
+        TemplateParams params = new TemplateParams()
+                .set(TemplateKey.PATIENT_NAME, patientName)
+                .set(TemplateKey.PRESCRIPTION_ID, prescriptionId)
+                .set(TemplateKey.REFILL_DATE, refillDueDate)
+                .set(TemplateKey.MEDICINES, NotificationTemplates.medicineItems(medicines));
+        return render("refill-reminder", params);
+    }
+
+    public Email medicineFilledEmail(String patientName, Long prescriptionId, LocalDate filledDate,
+                                     List<FilledMedicine> medicines, String refillReminderDateOrNote) {
+        TemplateParams params = new TemplateParams()
+                .set(TemplateKey.PATIENT_NAME, patientName)
+                .set(TemplateKey.PRESCRIPTION_ID, prescriptionId)
+                .set(TemplateKey.DATE, filledDate)
+                .set(TemplateKey.MEDICINES, NotificationTemplates.medicineItems(medicines))
+                .set(TemplateKey.REFILL_NOTE, refillReminderDateOrNote);
+        return render("medicine-filled", params)
+                .withDigestItem(patientName, templates.render("medicine-filled-item", params).text.stripTrailing());
+    }
+
+    public Email medicineDispatchedEmail(String to, String patientName, Long prescriptionId, LocalDate dispatchDate,
+                                         List<FilledMedicine> medicines, String deliveryAddress) {
+        TemplateParams params = new TemplateParams()
+                .set(TemplateKey.EMAIL, to)
+                .set(TemplateKey.PATIENT_NAME, patientName)
+                .set(TemplateKey.PRESCRIPTION_ID, prescriptionId)
+                .set(TemplateKey.DATE, dispatchDate)
+                .set(TemplateKey.MEDICINES, NotificationTemplates.medicineItems(medicines))
+                .set(TemplateKey.DELIVERY_ADDRESS, deliveryAddress);
+        return render("medicine-dispatched", params)
+                .withDigestItem(patientName, templates.render("medicine-dispatched-item", params).text.stripTrailing());
+    }
+
+    /**
+     * One email for several prescriptions dispatched to the same patient (bulk dispatch).
+     * Already one per patient, so only the single-prescription form can join a digest.
+     */
+    public Email medicinesDispatchedEmail(String to, String patientName, LocalDate dispatchDate,
+                                          List<DispatchedPrescription> prescriptions) {
+        if (prescriptions.size() == 1) {
+            DispatchedPrescription only = prescriptions.get(0);
+            return medicineDispatchedEmail(to, patientName, only.prescriptionId, dispatchDate,
+                    only.medicines, only.deliveryAddress);
+        }
+        List<TemplateParams> items = new ArrayList<>(prescriptions.size());
+        for (DispatchedPrescription p : prescriptions) {
+            items.add(new TemplateParams()
+                    .set(TemplateKey.PRESCRIPTION_ID, p.prescriptionId)
+                    .set(TemplateKey.MEDICINES, NotificationTemplates.medicineItems(p.medicines))
+                    .set(TemplateKey.DELIVERY_ADDRESS, p.deliveryAddress));
+        }
+        TemplateParams params = new TemplateParams()
+                .set(TemplateKey.EMAIL, to)
+                .set(TemplateKey.PATIENT_NAME, patientName)
+                .set(TemplateKey.DATE, dispatchDate)
+                .set(TemplateKey.PRESCRIPTIONS, items);
+        return render("medicines-dispatched", params);
     }
 
     // Existing account emails
     public void sendRegistrationConfirmationEmail(User user) {
-        String subject;
-        String body;
+        String template;
         if (user.getRole() == User.Role.PATIENT) {
-            subject = "Welcome to ReMedGo!";
-            body = "Hi " + user.getName() + ",\n\n" +
-                    "Your account has been successfully created and is now active. " +
-                    "You can log in to manage your prescriptions.\n\n" +
-                    "Best regards,\nThe ReMedGo Team";
+            template = "welcome-patient";
         } else if (user.getRole() == User.Role.PHARMACIST) {
-            subject = "ReMedGo Registration Received";
-            body = "Hi " + user.getName() + ",\n\n" +
-                    "Thank you for registering with ReMedGo. " +
-                    "Your account is currently under review by an administrator and will be activated shortly. " +
-                    "You will receive an email notification once your account is approved.\n\n" +
-                    "Best regards,\nThe ReMedGo Team";
+            template = "registration-pharmacist";
         } else {
-            subject = "Welcome to ReMedGo!";
-            body = "Hi " + user.getName() + ",\n\nWelcome to ReMedGo.\n\n- The ReMedGo Team";
+            template = "welcome";
         }
-        sendSimpleMessage(user.getEmail(), subject, body);
+        sendTemplate(user, template, userParams(user));
     }
 
     public void sendPasswordResetEmail(User user, String resetToken) {
-        String subject = "Password Reset Request - ReMedGo";
-        String body = "Hi " + user.getName() + ",\n\n" +
-                "You have requested to reset your password. " +
-                "Click the link below to reset your password:\n\n" +
-                frontendUrl + "/reset-password?token=" + resetToken + "\n\n" +
-                "This link will expire in 1 hour. " +
-                "If you did not request this password reset, please ignore this email.\n\n" +
-                "Best regards,\nThe ReMedGo Team";
-        sendSimpleMessage(user.getEmail(), subject, body);
+        sendTemplate(user, "password-reset",
+                userParams(user).set(TemplateKey.RESET_LINK, frontendUrl + "/reset-password?token=" + resetToken));
     }
 
     public void sendAccountVerifiedEmail(User user) {
-        String subject = "Account Verified - ReMedGo";
-        String body = "Hi " + user.getName() + ",\n\n" +
-                "Great news! Your account has been verified and approved by an administrator. " +
-                "You can now log in to access all pharmacist features.\n\n" +
-                "Best regards,\nThe ReMedGo Team";
-        sendSimpleMessage(user.getEmail(), subject, body);
+        sendTemplate(user, "account-verified", userParams(user));
     }
 
     public void sendPharmacistRejectionEmail(User user, String reason) {
-        String subject = "Account Application Status - ReMedGo";
-        String body = "Hi " + user.getName() + ",\n\n" +
-                "We regret to inform you that your pharmacist account application has not been approved.\n\n" +
-                "Reason: " + reason + "\n\n" +
-                "If you believe this decision was made in error or if you would like to reapply, " +
-                "please contact our support team.\n\n" +
-                "Best regards,\nThe ReMedGo Team";
-        sendSimpleMessage(user.getEmail(), subject, body);
+        sendTemplate(user, "pharmacist-rejected", userParams(user).set(TemplateKey.REASON, reason));
+    }
+
+    private static TemplateParams userParams(User user) {
+        return new TemplateParams().set(TemplateKey.USER_NAME, user.getName());
+    }
+
+    private void sendTemplate(User user, String template, TemplateParams params) {
+        Email email = render(template, params);
+        sendSimpleMessage(user.getEmail(), email.subject, email.body);
+    }
+
+    /**
+     * One email standing in for several queued notifications of the same type to one
+     * patient; items are the digest items those notifications were queued with
+     */
+    public Email digestEmail(String notificationType, String patientName, List<String> items) {
+        List<TemplateParams> itemParams = new ArrayList<>(items.size());
+        for (String item : items) {
+            itemParams.add(new TemplateParams().set(TemplateKey.ITEM, item));
+        }
+        TemplateParams params = new TemplateParams()
+                .set(TemplateKey.PATIENT_NAME, patientName)
+                .set(TemplateKey.COUNT, (long) items.size())
+                .set(TemplateKey.ITEMS, itemParams);
+        return render(digestTemplate(notificationType), params);
+    }
+
+    public boolean hasDigest(String notificationType) {
+        return templates.hasTemplate(digestTemplate(notificationType));
+    }
+
+    // MEDICINE_FILLED -> medicine-filled-digest
+    private static String digestTemplate(String notificationType) {
+        return notificationType.toLowerCase(java.util.Locale.ROOT).replace('_', '-') + "-digest";
+    }
+
+    private Email render(String template, TemplateParams params) {
+        NotificationTemplates.Rendered rendered = templates.render(template, params);
+        return new Email(rendered.subject, rendered.text, rendered.html);
+    }
+
+    public static class DispatchedPrescription {
+        public final Long prescriptionId;
+        public final List<FilledMedicine> medicines;
+        public final String deliveryAddress;
+
+        public DispatchedPrescription(Long prescriptionId, List<FilledMedicine> medicines, String deliveryAddress) {
+            this.prescriptionId = prescriptionId;
+            this.medicines = medicines;
+            this.deliveryAddress = deliveryAddress;
+        }
+    }
+
+    public Map<String, Object> getConnectionStats() {
+        return smtpPool.getStats();
+    }
+
+    public static class Outgoing {
+        public final String to;
+        public final String subject;
+        public final String body;
+        public final String html;
+
+        public Outgoing(String to, String subject, String body) {
+            this(to, subject, body, null);
+        }
+
+        public Outgoing(String to, String subject, String body, String html) {
+            this.to = to;
+            this.subject = subject;
+            this.body = body;
+            this.html = html;
+        }
+    }
+
+    /**
+     * Subject and body of a rendered email, with an optional HTML alternative. Emails
+     * that can be merged into a digest also carry their digest item and the name to greet.
+     */
+    public static class Email {
+        public final String subject;
+        public final String body;
+        public final String html;
+        public final String digestName;
+        public final String digestItem;
+
+        public Email(String subject, String body) {
+            this(subject, body, null);
+        }
+
+        public Email(String subject, String body, String html) {
+            this(subject, body, html, null, null);
+        }
+
+        private Email(String subject, String body, String html, String digestName, String digestItem) {
+            this.subject = subject;
+            this.body = body;
+            this.html = html;
+            this.digestName = digestName;
+            this.digestItem = digestItem;
+        }
+
+        Email withDigestItem(String name, String item) {
+            return new Email(subject, body, html, name, item);
+        }
     }
 }
@@ -0,0 +1,165 @@
+package com.medapp.service;
+
+import com.medapp.dto.ApiResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the response to a request sent with an Idempotency-Key header, so a
+ * retried or double-clicked request gets the first response back instead of
+ * running again.
+ *
+ * Keys are scoped per user. The first request with a key runs; identical
+ * requests that arrive meanwhile wait for its result rather than running in
+ * parallel. A response is kept for ttl-minutes unless it is a server error, or
+ * the request threw, in which case the key is released so a retry runs again.
+ * Reusing a key for a different request is rejected.
+ */
+@Service
+public class IdempotencyStore {
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Value("${app.idempotency.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${app.idempotency.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.idempotency.wait-seconds:30}")
+    private long waitSeconds;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder uncached = new LongAdder();
+
+    /**
+     * Run action once per (user, key); fingerprint names the request (e.g. "fill:42")
+     * so a key reused for something else is refused. Without a key the action just runs.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<ApiResponse<T>> execute(Long userId, String key, String fingerprint,
+                                                      Supplier<ResponseEntity<ApiResponse<T>>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(HEADER + " is too long"));
+        }
+        if (entries.size() >= maxEntries) {
+            // Full of live keys; stay correct for this request, just without protection
+            uncached.increment();
+            return action.get();
+        }
+
+        String storeKey = userId + ":" + key;
+        Entry fresh = new Entry(fingerprint);
+        Entry existing = entries.putIfAbsent(storeKey, fresh);
+        if (existing == null) {
+            return (ResponseEntity<ApiResponse<T>>) runFirst(storeKey, fresh, action);
+        }
+        if (existing.expiresAt < System.currentTimeMillis()) {
+            // Expired but not purged yet; treat the key as new
+            entries.remove(storeKey, existing);
+            return execute(userId, key, fingerprint, action);
+        }
+
+        if (!existing.fingerprint.equals(fingerprint)) {
+            conflicts.increment();
+            return ResponseEntity.unprocessableEntity()
+                    .body(ApiResponse.error(HEADER + " was already used for a different request"));
+        }
+        try {
+            ResponseEntity<ApiResponse<T>> first =
+                    (ResponseEntity<ApiResponse<T>>) existing.response.get(waitSeconds, TimeUnit.SECONDS);
+            replayed.increment();
+            return ResponseEntity.status(first.getStatusCode())
+                    .headers(first.getHeaders())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(first.getBody());
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error("A request with this " + HEADER + " is still being processed"));
+        } catch (ExecutionException e) {
+            // The first attempt failed and released the key; let this one run in its place
+            return execute(userId, key, fingerprint, action);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ApiResponse.error("Interrupted"));
+        }
+    }
+
+    private ResponseEntity<?> runFirst(String storeKey, Entry entry, Supplier<? extends ResponseEntity<?>> action) {
+        executed.increment();
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException | Error e) {
+            entries.remove(storeKey, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+        if (response.getStatusCode().is5xxServerError()) {
+            entries.remove(storeKey, entry);
+            entry.response.completeExceptionally(new IllegalStateException("Server error, not cached"));
+        } else {
+            entry.expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ttlMinutes);
+            entry.response.complete(response);
+        }
+        return response;
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.purge-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.response.isDone() && entry.expiresAt < now);
+        int removed = before - entries.size();
+        if (removed > 0) {
+            logger.debug("Purged {} expired idempotency keys", removed);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("executed", executed.sum());
+        stats.put("replayed", replayed.sum());
+        stats.put("conflicts", conflicts.sum());
+        stats.put("uncached", uncached.sum());
+        return stats;
+    }
+
+    private static class Entry {
+        final String fingerprint;
+        final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+        volatile long expiresAt = Long.MAX_VALUE;
+
+        Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.medapp.service;
 
+import com.medapp.exception.InsufficientStockException;
 import com.medapp.model.Inventory;
 import com.medapp.model.Medicine;
 import com.medapp.model.User;
@@ -7,12 +8,20 @@ import com.medapp.repository.InventoryRepository;
 import com.medapp.repository.MedicineRepository;
 import com.medapp.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -28,20 +37,20 @@ public class InventoryService {
     @Autowired
     private UserRepository userRepository;
     
-    public List<Inventory> getInventoryByPharmacist(User pharmacist) {
-        logger.info("Fetching inventory for pharmacist: {}", pharmacist.getEmail());
-        return inventoryRepository.findByPharmacist(pharmacist);
+    public List<Inventory> getInventoryByPharmacist(Long pharmacistId) {
+        logger.info("Fetching inventory for pharmacist ID: {}", pharmacistId);
+        return inventoryRepository.findByPharmacistId(pharmacistId);
     }
     
-    public List<Inventory> getLowStockItemsByPharmacist(User pharmacist) {
-        logger.info("Fetching low stock items for pharmacist: {}", pharmacist.getEmail());
-        return inventoryRepository.findLowStockItemsByPharmacist(pharmacist);
+    public List<Inventory> getLowStockItemsByPharmacist(Long pharmacistId) {
+        logger.info("Fetching low stock items for pharmacist ID: {}", pharmacistId);
+        return inventoryRepository.findLowStockItemsByPharmacistId(pharmacistId);
     }
     
-    public List<Inventory> getExpiringItemsByPharmacist(User pharmacist) {
-        logger.info("Fetching expiring items for pharmacist: {}", pharmacist.getEmail());
+    public List<Inventory> getExpiringItemsByPharmacist(Long pharmacistId) {
+        logger.info("Fetching expiring items for pharmacist ID: {}", pharmacistId);
         LocalDate thirtyDaysFromNow = LocalDate.now().plusDays(30);
-        return inventoryRepository.findExpiringItemsByPharmacist(pharmacist, thirtyDaysFromNow);
+        return inventoryRepository.findExpiringItemsByPharmacistId(pharmacistId, thirtyDaysFromNow);
     }
     
     public Inventory addMedicineToInventory(Long medicineId, Long pharmacistId, Inventory inventoryDetails) {
@@ -50,8 +59,7 @@ public class InventoryService {
         Medicine medicine = medicineRepository.findById(medicineId)
                 .orElseThrow(() -> new RuntimeException("Medicine not found with ID: " + medicineId));
         
-        User pharmacist = userRepository.findById(pharmacistId)
-                .orElseThrow(() -> new RuntimeException("Pharmacist not found with ID: " + pharmacistId));
+        User pharmacist = userRepository.getReferenceById(pharmacistId);
         
         // Check if this medicine is already in the pharmacist's inventory
         if (inventoryRepository.existsByMedicineIdAndPharmacistId(medicineId, pharmacistId)) {
@@ -76,15 +84,72 @@ public class InventoryService {
         Inventory inventory = inventoryRepository.findById(inventoryId)
                 .orElseThrow(() -> new RuntimeException("Inventory not found with ID: " + inventoryId));
         
+        // The client may send the version it edited; a fill or another edit since then wins
+        if (inventoryDetails.getVersion() != null && !inventoryDetails.getVersion().equals(inventory.getVersion())) {
+            throw new RuntimeException("Inventory was changed by someone else, please reload and try again");
+        }
+        
         inventory.setStockQuantity(inventoryDetails.getStockQuantity());
         inventory.setLowStockThreshold(inventoryDetails.getLowStockThreshold());
         inventory.setExpiryDate(inventoryDetails.getExpiryDate());
         
-        Inventory updatedInventory = inventoryRepository.save(inventory);
+        Inventory updatedInventory;
+        try {
+            updatedInventory = inventoryRepository.save(inventory);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new RuntimeException("Inventory was changed by someone else, please reload and try again");
+        }
         logger.info("Inventory updated successfully");
         return updatedInventory;
     }
     
+    /**
+     * Take stock for a fill, quantities keyed by medicine id. Each medicine gets one
+     * conditional decrement, issued in inventory id order so concurrent fills lock
+     * rows in the same order. Runs in the caller's transaction: a shortfall on any
+     * medicine throws and rolls back the deductions already made.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<Long, StockChange> deductStock(Long pharmacistId, Map<Long, Integer> quantityByMedicine) {
+        Map<Long, StockChange> changes = new HashMap<>();
+        if (quantityByMedicine.isEmpty()) {
+            return changes;
+        }
+        Map<Long, Inventory> byMedicine = new HashMap<>();
+        for (Inventory inv : inventoryRepository.findByPharmacistIdAndMedicineIdIn(pharmacistId, quantityByMedicine.keySet())) {
+            byMedicine.put(inv.getMedicine().getId(), inv);
+        }
+        for (Long medicineId : quantityByMedicine.keySet()) {
+            if (!byMedicine.containsKey(medicineId)) {
+                Medicine medicine = medicineRepository.findById(medicineId)
+                        .orElseThrow(() -> new RuntimeException("Medicine not found: " + medicineId));
+                throw new RuntimeException("Inventory not found for medicine: " + medicine.getName());
+            }
+        }
+
+        List<Inventory> rows = new ArrayList<>(byMedicine.values());
+        rows.sort(Comparator.comparing(Inventory::getId));
+        LocalDateTime now = LocalDateTime.now();
+        for (Inventory inv : rows) {
+            int quantity = quantityByMedicine.get(inv.getMedicine().getId());
+            if (inventoryRepository.decrementStock(inv.getId(), quantity, now) == 0) {
+                throw new InsufficientStockException(inv.getMedicine().getId(), inv.getMedicine().getName());
+            }
+        }
+
+        // Rows stay locked until commit, so these are exactly the levels this fill left behind
+        Map<Long, Integer> levels = new HashMap<>();
+        for (Object[] row : inventoryRepository.findStockLevels(byMedicine.values().stream().map(Inventory::getId).toList())) {
+            levels.put((Long) row[0], (Integer) row[1]);
+        }
+        for (Inventory inv : rows) {
+            int after = levels.get(inv.getId());
+            int quantity = quantityByMedicine.get(inv.getMedicine().getId());
+            changes.put(inv.getMedicine().getId(), new StockChange(inv, after + quantity, after));
+        }
+        return changes;
+    }
+    
     public Optional<Inventory> getInventoryById(Long id) {
         logger.info("Fetching inventory with ID: {}", id);
         return inventoryRepository.findById(id);
@@ -100,4 +165,20 @@ public class InventoryService {
         inventoryRepository.deleteById(id);
         logger.info("Inventory deleted successfully");
     }
-} 
\ No newline at end of file
+
+    /**
+     * Stock of one medicine before and after a deduction. The inventory row is the
+     * copy loaded before the update, with its medicine; read the levels from here.
+     */
+    public static class StockChange {
+        public final Inventory inventory;
+        public final int before;
+        public final int after;
+
+        public StockChange(Inventory inventory, int before, int after) {
+            this.inventory = inventory;
+            this.before = before;
+            this.after = after;
+        }
+    }
+}
@@ -1,59 +1,78 @@
 package com.medapp.service;
 
+import com.medapp.dto.DirectoryEntry;
+import com.medapp.model.ConversationSummary;
 import com.medapp.model.Message;
 import com.medapp.model.User;
 import com.medapp.repository.MessageRepository;
 import com.medapp.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 
 @Service
 @Transactional
 public class MessageService {
     private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
     @Autowired
     private MessageRepository messageRepository;
     
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ChatEventService chatEventService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private ChatDirectoryService chatDirectoryService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
     /**
      * Send a message from one user to another
      */
-    public Message sendMessage(String senderEmail, Long receiverId, String content) {
-        logger.info("Sending message from {} to user ID {}", senderEmail, receiverId);
+    public Message sendMessage(Long senderId, User.Role senderRole, Long receiverId, String content) {
+        logger.info("Sending message from user ID {} to user ID {}", senderId, receiverId);
         
-        // Find sender
-        User sender = userRepository.findByEmail(senderEmail)
-                .orElseThrow(() -> new RuntimeException("Sender not found"));
+        // Validate that sender and receiver are different
+        if (senderId.equals(receiverId)) {
+            throw new RuntimeException("Cannot send message to yourself");
+        }
         
         // Find receiver
         User receiver = userRepository.findById(receiverId)
                 .orElseThrow(() -> new RuntimeException("Receiver not found"));
         
-        // Validate that sender and receiver are different
-        if (sender.getId().equals(receiver.getId())) {
-            throw new RuntimeException("Cannot send message to yourself");
-        }
-        
         // Validate that it's a valid patient-pharmacist conversation
-        validateConversationPermission(sender, receiver);
+        validateConversationPermission(senderRole, receiver.getRole());
         
         // Create message
         Message message = new Message();
-        message.setSender(sender);
+        message.setSender(userRepository.getReferenceById(senderId));
         message.setReceiver(receiver);
         message.setContent(content.trim());
         
         Message savedMessage = messageRepository.save(message);
         logger.info("Message sent successfully with ID: {}", savedMessage.getId());
+        conversationSummaryService.onMessageSent(savedMessage);
+        unreadCounterService.incrementAfterCommit(receiverId);
+        chatEventService.messageSent(savedMessage);
         
         return savedMessage;
     }
@@ -61,102 +80,170 @@ public class MessageService {
     /**
      * Get conversation between two users
      */
-    public List<Message> getConversation(String userEmail, Long otherUserId) {
-        logger.info("Getting conversation between {} and user ID {}", userEmail, otherUserId);
+    public List<Message> getConversation(Long userId, User.Role userRole, Long otherUserId) {
+        logger.info("Getting conversation between user ID {} and user ID {}", userId, otherUserId);
         
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        User user = userRepository.getReferenceById(userId);
         
         User otherUser = userRepository.findById(otherUserId)
                 .orElseThrow(() -> new RuntimeException("Other user not found"));
         
         // Validate conversation permission
-        validateConversationPermission(user, otherUser);
-        
-        List<Message> messages = messageRepository.findMessagesBetweenUsers(user, otherUser);
+        validateConversationPermission(userRole, otherUser.getRole());
         
         // Mark messages as read for the requesting user
-        markMessagesAsRead(otherUser, user);
+        markMessagesAsRead(otherUserId, userId, null);
+        
+        List<Message> messages = messageRepository.findMessagesBetweenUsers(user, otherUser);
         
         logger.info("Retrieved {} messages in conversation", messages.size());
         return messages;
     }
 
     /**
-     * Get all conversation partners for a user
+     * Get one page of a conversation, keyed on a message id cursor.
+     * With no cursor the newest page is returned; "before" walks back into history,
+     * "after" fetches messages newer than the one the client already has.
+     * Messages are always returned oldest first.
      */
-    public List<User> getConversationPartners(String userEmail) {
-        logger.info("Getting conversation partners for user: {}", userEmail);
+    public ConversationPage getConversationPage(Long userId, User.Role userRole, Long otherUserId,
+                                                Long beforeId, Long afterId, Integer limit) {
+        if (beforeId != null && afterId != null) {
+            throw new RuntimeException("Only one of before or after may be given");
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
         
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        User otherUser = userRepository.findById(otherUserId)
+                .orElseThrow(() -> new RuntimeException("Other user not found"));
         
-        List<User> partners = messageRepository.findConversationPartners(user);
+        // Validate conversation permission
+        validateConversationPermission(userRole, otherUser.getRole());
         
-        logger.info("Found {} conversation partners", partners.size());
-        return partners;
+        // The newest page shows the end of the thread, so all of it is read
+        if (beforeId == null && afterId == null) {
+            markMessagesAsRead(otherUserId, userId, null);
+        }
+        
+        // Fetch one extra row to know whether another page exists
+        PageRequest window = PageRequest.of(0, pageSize + 1);
+        List<Message> rows;
+        if (beforeId != null) {
+            Message cursor = findCursor(beforeId, userId, otherUserId);
+            rows = messageRepository.findPageBeforeBetweenUsers(userId, otherUserId, cursor.getSentAt(), cursor.getId(), window);
+        } else if (afterId != null) {
+            Message cursor = findCursor(afterId, userId, otherUserId);
+            rows = messageRepository.findPageAfterBetweenUsers(userId, otherUserId, cursor.getSentAt(), cursor.getId(), window);
+        } else {
+            rows = messageRepository.findLatestPageBetweenUsers(userId, otherUserId, window);
+        }
+        
+        boolean hasMore = rows.size() > pageSize;
+        List<Message> messages = new ArrayList<>(hasMore ? rows.subList(0, pageSize) : rows);
+        if (afterId == null) {
+            Collections.reverse(messages);
+        } else {
+            // Catching up forward: only what this page delivered has been seen
+            Long upToId = messages.isEmpty() ? afterId : messages.get(messages.size() - 1).getId();
+            if (markMessagesAsRead(otherUserId, userId, upToId) > 0) {
+                messages.stream()
+                        .filter(m -> m.getSender().getId().equals(otherUserId))
+                        .forEach(m -> m.setRead(true));
+            }
+        }
+        
+        logger.info("Retrieved page of {} messages between user ID {} and user ID {}", messages.size(), userId, otherUserId);
+        return new ConversationPage(messages, hasMore);
+    }
+
+    private Message findCursor(Long messageId, Long userId, Long otherUserId) {
+        Message cursor = messageRepository.findById(messageId)
+                .orElseThrow(() -> new RuntimeException("Cursor message not found"));
+        Long senderId = cursor.getSender().getId();
+        Long receiverId = cursor.getReceiver().getId();
+        boolean inConversation = (senderId.equals(userId) && receiverId.equals(otherUserId)) ||
+                                 (senderId.equals(otherUserId) && receiverId.equals(userId));
+        if (!inConversation) {
+            throw new RuntimeException("Cursor message does not belong to this conversation");
+        }
+        return cursor;
     }
 
     /**
-     * Get unread message count for a user
+     * One page of conversation history, oldest message first
      */
-    public long getUnreadMessageCount(String userEmail) {
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        
-        return messageRepository.countUnreadMessages(user);
+    public static class ConversationPage {
+        public final List<Message> messages;
+        public final boolean hasMore;
+
+        public ConversationPage(List<Message> messages, boolean hasMore) {
+            this.messages = messages;
+            this.hasMore = hasMore;
+        }
     }
 
     /**
-     * Mark messages as read between two users
+     * Get all conversations for a user with the latest message and unread count, most recent first
      */
-    public void markMessagesAsRead(User sender, User receiver) {
-        List<Message> unreadMessages = messageRepository.findByReceiverAndIsReadOrderBySentAtDesc(receiver, false)
-                .stream()
-                .filter(message -> message.getSender().getId().equals(sender.getId()))
-                .toList();
-        
-        for (Message message : unreadMessages) {
-            message.setRead(true);
-        }
+    public List<ConversationSummaryService.ConversationView> getConversations(Long userId) {
+        logger.info("Getting conversations for user ID: {}", userId);
         
-        if (!unreadMessages.isEmpty()) {
-            messageRepository.saveAll(unreadMessages);
-            logger.info("Marked {} messages as read", unreadMessages.size());
+        List<ConversationSummaryService.ConversationView> conversations = conversationSummaryService.getConversations(userId);
+        
+        logger.info("Found {} conversations", conversations.size());
+        return conversations;
+    }
+
+    /**
+     * Get unread message count for a user (served from the in-memory counters)
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public long getUnreadMessageCount(Long userId) {
+        return unreadCounterService.get(userId);
+    }
+
+    /**
+     * Mark messages from sender to receiver as read, optionally only up to a
+     * watermark message id. Returns the number of messages updated.
+     */
+    public int markMessagesAsRead(Long senderId, Long receiverId, Long upToMessageId) {
+        int updated = messageRepository.markReadBetweenUsers(senderId, receiverId, upToMessageId);
+        if (updated > 0) {
+            logger.info("Marked {} messages from user ID {} as read by user ID {}", updated, senderId, receiverId);
+            conversationSummaryService.onMessagesRead(senderId, receiverId, updated);
+            unreadCounterService.decrementAfterCommit(receiverId, updated);
+            chatEventService.messagesRead(senderId, receiverId, upToMessageId, updated);
         }
+        return updated;
     }
 
     /**
-     * Get available users to chat with (based on role)
+     * Get available users to chat with (based on role), optionally filtered by name
+     * prefix; all of them when size is null, otherwise one page at a time
      */
-    public List<User> getAvailableChatUsers(String userEmail) {
-        logger.info("Getting available chat users for: {}", userEmail);
+    public List<DirectoryEntry> getAvailableChatUsers(User.Role role, String namePrefix, Integer page, Integer size) {
+        logger.info("Getting available chat users for role: {} (prefix={}, page={})", role, namePrefix, page);
         
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        List<User.Role> targetRoles;
         
-        List<User> availableUsers;
-        
-        if (user.getRole() == User.Role.PATIENT) {
+        if (role == User.Role.PATIENT) {
             // Patients can chat with pharmacists
-            availableUsers = userRepository.findAll().stream()
-                    .filter(u -> u.getRole() == User.Role.PHARMACIST && u.isActive())
-                    .toList();
-        } else if (user.getRole() == User.Role.PHARMACIST) {
+            targetRoles = List.of(User.Role.PHARMACIST);
+        } else if (role == User.Role.PHARMACIST) {
             // Pharmacists can chat with patients and admins
-            availableUsers = userRepository.findAll().stream()
-                    .filter(u -> (u.getRole() == User.Role.PATIENT || u.getRole() == User.Role.ADMIN) && u.isActive())
-                    .toList();
-        } else if (user.getRole() == User.Role.ADMIN) {
+            targetRoles = List.of(User.Role.PATIENT, User.Role.ADMIN);
+        } else if (role == User.Role.ADMIN) {
             // Admins can chat with pharmacists
-            availableUsers = userRepository.findAll().stream()
-                    .filter(u -> u.getRole() == User.Role.PHARMACIST && u.isActive())
-                    .toList();
+            targetRoles = List.of(User.Role.PHARMACIST);
         } else {
             // Default: no available users
-            availableUsers = new ArrayList<>();
+            targetRoles = List.of();
         }
         
+        List<DirectoryEntry> availableUsers = size == null
+                ? chatDirectoryService.findAll(targetRoles, namePrefix)
+                : chatDirectoryService.findPage(targetRoles, namePrefix,
+                        page == null ? 0 : Math.max(page, 0), Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        
         logger.info("Found {} available chat users", availableUsers.size());
         return availableUsers;
     }
@@ -164,16 +251,16 @@ public class MessageService {
     /**
      * Validate that users are allowed to have a conversation
      */
-    private void validateConversationPermission(User user1, User user2) {
+    private void validateConversationPermission(User.Role role1, User.Role role2) {
         // Allow patient-pharmacist conversations
-        if ((user1.getRole() == User.Role.PATIENT && user2.getRole() == User.Role.PHARMACIST) ||
-            (user1.getRole() == User.Role.PHARMACIST && user2.getRole() == User.Role.PATIENT)) {
+        if ((role1 == User.Role.PATIENT && role2 == User.Role.PHARMACIST) ||
+            (role1 == User.Role.PHARMACIST && role2 == User.Role.PATIENT)) {
             return;
         }
         
         // Allow admin-pharmacist conversations
-        if ((user1.getRole() == User.Role.ADMIN && user2.getRole() == User.Role.PHARMACIST) ||
-            (user1.getRole() == User.Role.PHARMACIST && user2.getRole() == User.Role.ADMIN)) {
+        if ((role1 == User.Role.ADMIN && role2 == User.Role.PHARMACIST) ||
+            (role1 == User.Role.PHARMACIST && role2 == User.Role.ADMIN)) {
             return;
         }
         
@@ -183,50 +270,27 @@ public class MessageService {
     /**
      * Get conversation summary with latest message and unread count
      */
-    public ConversationSummary getConversationSummary(String userEmail, Long otherUserId) {
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        
+    public ConversationSummaryService.ConversationView getConversationSummary(Long userId, Long otherUserId) {
         User otherUser = userRepository.findById(otherUserId)
                 .orElseThrow(() -> new RuntimeException("Other user not found"));
         
-        List<Message> latestMessages = messageRepository.findLatestMessageBetweenUsers(user, otherUser);
-        Message latestMessage = latestMessages.isEmpty() ? null : latestMessages.get(0);
-        
-        long unreadCount = messageRepository.countUnreadMessagesBetweenUsers(otherUser, user);
+        ConversationSummary summary = conversationSummaryService.getSummary(userId, otherUserId);
+        long unreadCount = summary != null ? summary.getUnreadFor(userId) : 0;
         
-        return new ConversationSummary(otherUser, latestMessage, unreadCount);
-    }
-
-    /**
-     * Conversation summary DTO
-     */
-    public static class ConversationSummary {
-        public final User otherUser;
-        public final Message latestMessage;
-        public final long unreadCount;
-
-        public ConversationSummary(User otherUser, Message latestMessage, long unreadCount) {
-            this.otherUser = otherUser;
-            this.latestMessage = latestMessage;
-            this.unreadCount = unreadCount;
-        }
+        return new ConversationSummaryService.ConversationView(otherUser, summary, unreadCount);
     }
 
     /**
      * Edit a message (only the sender can edit their own messages)
      */
-    public Message editMessage(String userEmail, Long messageId, String newContent) {
-        logger.info("Editing message {} by user: {}", messageId, userEmail);
-        
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    public Message editMessage(Long userId, Long messageId, String newContent) {
+        logger.info("Editing message {} by user ID: {}", messageId, userId);
         
         Message message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new RuntimeException("Message not found"));
         
         // Only the sender can edit their own messages
-        if (!message.getSender().getId().equals(user.getId())) {
+        if (!message.getSender().getId().equals(userId)) {
             throw new RuntimeException("You can only edit your own messages");
         }
         
@@ -239,6 +303,8 @@ public class MessageService {
         message.setContent(newContent);
         message.setEdited(true);
         Message updatedMessage = messageRepository.save(message);
+        conversationSummaryService.onMessageEdited(updatedMessage);
+        chatEventService.messageEdited(updatedMessage);
         
         logger.info("Message edited successfully: {}", messageId);
         return updatedMessage;
@@ -247,17 +313,14 @@ public class MessageService {
     /**
      * Delete a message (only the sender can delete their own messages)
      */
-    public void deleteMessage(String userEmail, Long messageId) {
-        logger.info("Deleting message {} by user: {}", messageId, userEmail);
-        
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    public void deleteMessage(Long userId, Long messageId) {
+        logger.info("Deleting message {} by user ID: {}", messageId, userId);
         
         Message message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new RuntimeException("Message not found"));
         
         // Only the sender can delete their own messages
-        if (!message.getSender().getId().equals(user.getId())) {
+        if (!message.getSender().getId().equals(userId)) {
             throw new RuntimeException("You can only delete your own messages");
         }
         
@@ -268,6 +331,11 @@ public class MessageService {
         }
         
         messageRepository.delete(message);
+        conversationSummaryService.onMessageDeleted(message);
+        if (!message.isRead()) {
+            unreadCounterService.decrementAfterCommit(message.getReceiver().getId(), 1);
+        }
+        chatEventService.messageDeleted(messageId, message.getSender().getId(), message.getReceiver().getId());
         logger.info("Message deleted successfully: {}", messageId);
     }
 }
\ No newline at end of file
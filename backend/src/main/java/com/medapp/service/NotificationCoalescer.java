@@ -0,0 +1,101 @@
+package com.medapp.service;
+
+import com.medapp.model.NotificationOutbox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalescing stage between the outbox and EmailService. Emails queued with a
+ * digest item were held for the digest window (see NotificationOutboxService),
+ * so a patient's filled and dispatched notifications come due together; here
+ * the claimed rows for one recipient and type are merged into a single digest
+ * email. Everything else passes through as one email per row.
+ */
+@Service
+public class NotificationCoalescer {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationCoalescer.class);
+
+    @Autowired
+    private EmailService emailService;
+
+    private final LongAdder digests = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+
+    public List<Message> coalesce(List<NotificationOutbox> rows) {
+        Map<String, List<NotificationOutbox>> groups = new LinkedHashMap<>();
+        rows.stream()
+                .sorted(Comparator.comparing(NotificationOutbox::getId))
+                .forEach(row -> groups.computeIfAbsent(groupKey(row), key -> new ArrayList<>()).add(row));
+
+        List<Message> messages = new ArrayList<>(groups.size());
+        for (List<NotificationOutbox> group : groups.values()) {
+            Message digest = group.size() > 1 ? digest(group) : null;
+            if (digest != null) {
+                messages.add(digest);
+            } else {
+                group.forEach(row -> messages.add(single(row)));
+            }
+        }
+        return messages;
+    }
+
+    private static String groupKey(NotificationOutbox row) {
+        return row.getDigestItem() == null
+                ? "#" + row.getId()
+                : row.getRecipient() + "|" + row.getNotificationType();
+    }
+
+    private Message digest(List<NotificationOutbox> group) {
+        NotificationOutbox first = group.get(0);
+        if (!emailService.hasDigest(first.getNotificationType())) {
+            return null;
+        }
+        try {
+            EmailService.Email email = emailService.digestEmail(first.getNotificationType(), first.getRecipientName(),
+                    group.stream().map(NotificationOutbox::getDigestItem).toList());
+            digests.increment();
+            merged.add(group.size());
+            return new Message(group, new EmailService.Outgoing(first.getRecipient(), email.subject, email.body, email.html));
+        } catch (RuntimeException e) {
+            // Each row still has its own complete email
+            logger.warn("Could not build {} digest for {}, sending {} emails separately: {}",
+                    first.getNotificationType(), first.getRecipient(), group.size(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static Message single(NotificationOutbox row) {
+        return new Message(List.of(row),
+                new EmailService.Outgoing(row.getRecipient(), row.getSubject(), row.getBody(), row.getHtmlBody()));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("digestsSent", digests.sum());
+        stats.put("notificationsMerged", merged.sum());
+        stats.put("emailsSaved", merged.sum() - digests.sum());
+        return stats;
+    }
+
+    /**
+     * One email to send and the outbox rows it delivers
+     */
+    public static class Message {
+        public final List<NotificationOutbox> rows;
+        public final EmailService.Outgoing email;
+
+        public Message(List<NotificationOutbox> rows, EmailService.Outgoing email) {
+            this.rows = rows;
+            this.email = email;
+        }
+    }
+}
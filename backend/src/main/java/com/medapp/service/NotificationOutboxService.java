@@ -0,0 +1,152 @@
+package com.medapp.service;
+
+import com.medapp.model.NotificationOutbox;
+import com.medapp.repository.NotificationOutboxRepository;
+import com.medapp.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queues patient notifications in notification_outbox. Enqueueing joins the
+ * caller's transaction, so a notification goes out if and only if the change
+ * it describes commits, and the request never waits on SMTP or the SMS API.
+ */
+@Service
+@Transactional
+public class NotificationOutboxService {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationOutboxService.class);
+
+    public static final String TYPE_MEDICINE_FILLED = "MEDICINE_FILLED";
+    public static final String TYPE_MEDICINE_DISPATCHED = "MEDICINE_DISPATCHED";
+    public static final String TYPE_REFILL_REMINDER = "REFILL_REMINDER";
+
+    @Autowired
+    private NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    private NotificationOutboxWorker worker;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    // Filled/dispatched emails to one patient within this many minutes go out as one digest; 0 disables
+    @Value("${app.notifications.digest.window-minutes:15}")
+    private long digestWindowMinutes;
+
+    @Value("${app.notifications.outbox.retention-days:14}")
+    private int retentionDays;
+
+    public NotificationOutbox enqueueEmail(String type, Long userId, String to, String subject, String body) {
+        return enqueueEmail(type, userId, to, new EmailService.Email(subject, body));
+    }
+
+    public NotificationOutbox enqueueEmail(String type, Long userId, String to, EmailService.Email email) {
+        NotificationOutbox row = new NotificationOutbox();
+        row.setChannel(NotificationOutbox.Channel.EMAIL);
+        row.setNotificationType(type);
+        row.setRecipientUserId(userId);
+        row.setRecipient(to);
+        row.setSubject(email.subject);
+        row.setBody(email.body);
+        row.setHtmlBody(email.html);
+        if (email.digestItem != null && holdForDigest(userId)) {
+            row.setDigestItem(email.digestItem);
+            row.setRecipientName(email.digestName);
+            row.setNextAttemptAt(digestWindowEnd(type, to));
+        }
+        return enqueue(row);
+    }
+
+    private boolean holdForDigest(Long userId) {
+        return digestWindowMinutes > 0 && userId != null
+            && !userRepository.findDigestOptOutById(userId).orElse(true);
+    }
+
+    /**
+     * Join the window already open for this recipient and type, so its notifications
+     * come due together and go out as one digest; otherwise open a new one
+     */
+    private LocalDateTime digestWindowEnd(String type, String to) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime open = outboxRepository.findDigestWindowEnd(to, type, now);
+        return open != null ? open : now.plusMinutes(digestWindowMinutes);
+    }
+
+    public NotificationOutbox enqueueSms(String type, Long userId, String phoneNumber, String message) {
+        return enqueueSms(type, userId, null, phoneNumber, message);
+    }
+
+    /**
+     * Queue an SMS about referenceId (for refill reminders, the RefillReminder id)
+     */
+    public NotificationOutbox enqueueSms(String type, Long userId, Long referenceId, String phoneNumber, String message) {
+        NotificationOutbox row = new NotificationOutbox();
+        row.setChannel(NotificationOutbox.Channel.SMS);
+        row.setNotificationType(type);
+        row.setRecipientUserId(userId);
+        row.setReferenceId(referenceId);
+        row.setRecipient(phoneNumber);
+        row.setBody(message);
+        return enqueue(row);
+    }
+
+    private NotificationOutbox enqueue(NotificationOutbox row) {
+        NotificationOutbox saved = outboxRepository.save(row);
+        TransactionHooks.afterCommit(worker::wakeUp);
+        return saved;
+    }
+
+    /**
+     * Give a dead-lettered notification another full set of attempts
+     */
+    public boolean retryDead(Long id) {
+        boolean requeued = outboxRepository.requeueDead(id, LocalDateTime.now()) > 0;
+        if (requeued) {
+            TransactionHooks.afterCommit(worker::wakeUp);
+        }
+        return requeued;
+    }
+
+    @Transactional(readOnly = true)
+    public List<NotificationOutbox> getDeadLetters(int limit) {
+        return outboxRepository.findByStatusOrderByIdDesc(NotificationOutbox.Status.DEAD, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Delivered rows are only kept for a while
+     */
+    @Scheduled(cron = "${app.notifications.outbox.purge-cron:0 30 3 * * ?}")
+    public void purgeSent() {
+        int removed = outboxRepository.deleteSentBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (removed > 0) {
+            logger.info("Purged {} delivered notifications older than {} days", removed, retentionDays);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Long> queue = new LinkedHashMap<>();
+        for (Object[] row : outboxRepository.countByChannelAndStatus()) {
+            queue.put(row[0] + "." + row[1], (Long) row[2]);
+        }
+        stats.put("queue", queue);
+        LocalDateTime oldestDue = outboxRepository.findOldestPendingDueAt();
+        long lagSeconds = oldestDue == null ? 0 : Math.max(0, Duration.between(oldestDue, LocalDateTime.now()).getSeconds());
+        stats.put("oldestPendingLagSeconds", lagSeconds);
+        stats.put("worker", worker.getStats());
+        return stats;
+    }
+}
@@ -0,0 +1,325 @@
+package com.medapp.service;
+
+import com.medapp.exception.NotificationDeliveryException;
+import com.medapp.model.NotificationOutbox;
+import com.medapp.repository.NotificationOutboxRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Drains notification_outbox on the notificationExecutor.
+ *
+ * Each channel has its own permit count, and rows are only claimed while a
+ * permit is free, so a slow mail server cannot hold more than its share of
+ * workers or starve SMS. An email permit delivers up to email.batch-size rows
+ * over one pooled SMTP connection; an SMS permit hands up to sms.batch-size rows
+ * to SmsBatchDispatcher, which waits for a full batch or the batch window before
+ * they are claimed and sends them as multi-recipient requests. Emails pass
+ * through NotificationCoalescer, which merges held rows into digests. Failures are retried with exponential backoff and
+ * jitter; after max-attempts, or on a failure that cannot succeed, the row is
+ * dead-lettered. A drain runs on a timer and right after a notification is
+ * queued, and again whenever a delivery frees a permit.
+ */
+@Service
+public class NotificationOutboxWorker {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationOutboxWorker.class);
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    @Autowired
+    private NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private SmsBatchDispatcher smsBatchDispatcher;
+
+    @Autowired
+    private NotificationCoalescer notificationCoalescer;
+
+    @Autowired
+    @Qualifier("notificationExecutor")
+    private Executor notificationExecutor;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.notifications.email.concurrency:4}")
+    private int emailConcurrency;
+
+    @Value("${app.notifications.sms.concurrency:4}")
+    private int smsConcurrency;
+
+    @Value("${app.notifications.outbox.batch-size:50}")
+    private int batchSize;
+
+    // Emails one worker sends back to back over a single SMTP connection
+    @Value("${app.notifications.email.batch-size:10}")
+    private int emailBatchSize;
+
+    @Value("${app.notifications.outbox.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${app.notifications.outbox.backoff-initial-ms:30000}")
+    private long backoffInitialMs;
+
+    @Value("${app.notifications.outbox.backoff-max-ms:3600000}")
+    private long backoffMaxMs;
+
+    @Value("${app.notifications.outbox.claim-timeout-ms:300000}")
+    private long claimTimeoutMs;
+
+    private TransactionTemplate transaction;
+    private final Map<NotificationOutbox.Channel, Semaphore> permits = new EnumMap<>(NotificationOutbox.Channel.class);
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+    private final AtomicBoolean wakeUpScheduled = new AtomicBoolean();
+    private final AtomicBoolean smsFlushScheduled = new AtomicBoolean();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder deliveryMillis = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        transaction = new TransactionTemplate(transactionManager);
+        permits.put(NotificationOutbox.Channel.EMAIL, new Semaphore(emailConcurrency));
+        permits.put(NotificationOutbox.Channel.SMS, new Semaphore(smsConcurrency));
+    }
+
+    /**
+     * Ask for a drain soon, off the calling thread. Calls made before the drain starts
+     * (e.g. a reminder chunk committing hundreds of rows) share one scheduled task.
+     */
+    public void wakeUp() {
+        if (wakeUpScheduled.compareAndSet(false, true)) {
+            taskScheduler.schedule(() -> {
+                wakeUpScheduled.set(false);
+                drain();
+            }, Instant.now());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.notifications.outbox.poll-ms:2000}")
+    public void poll() {
+        drain();
+    }
+
+    /**
+     * One drain at a time; a request that arrives while one runs makes it go round again
+     */
+    void drain() {
+        drainRequested.set(true);
+        while (drainRequested.get() && drainLock.tryLock()) {
+            try {
+                drainRequested.set(false);
+                drainOnce();
+            } catch (Exception e) {
+                logger.error("Notification outbox drain failed: {}", e.getMessage(), e);
+            } finally {
+                drainLock.unlock();
+            }
+        }
+    }
+
+    private void drainOnce() {
+        LocalDateTime now = LocalDateTime.now();
+        Integer released = transaction.execute(status -> outboxRepository.releaseExpiredClaims(now));
+        if (released != null && released > 0) {
+            logger.warn("Released {} notification claims whose worker did not finish", released);
+        }
+
+        for (NotificationOutbox.Channel channel : NotificationOutbox.Channel.values()) {
+            Semaphore semaphore = permits.get(channel);
+            int perTask = channel == NotificationOutbox.Channel.EMAIL ? emailBatchSize : smsBatchDispatcher.getBatchSize();
+            int free = Math.min(semaphore.availablePermits(), Math.max(1, batchSize / perTask));
+            if (free == 0 || (channel == NotificationOutbox.Channel.SMS && !smsBatchReady(now))) {
+                continue;
+            }
+            List<NotificationOutbox> rows = claim(channel, free * perTask);
+            // At most free groups, one permit (and for email one SMTP connection) each
+            if (channel == NotificationOutbox.Channel.EMAIL) {
+                // Coalesce first so a digest's rows are never split across groups
+                List<NotificationCoalescer.Message> messages = notificationCoalescer.coalesce(rows);
+                for (int from = 0; from < messages.size(); from += perTask) {
+                    List<NotificationCoalescer.Message> group = messages.subList(from, Math.min(from + perTask, messages.size()));
+                    submit(semaphore, () -> deliverEmails(group));
+                }
+            } else {
+                for (int from = 0; from < rows.size(); from += perTask) {
+                    List<NotificationOutbox> group = rows.subList(from, Math.min(from + perTask, rows.size()));
+                    submit(semaphore, () -> deliverSms(group));
+                }
+            }
+        }
+    }
+
+    private void submit(Semaphore semaphore, Runnable delivery) {
+        // Only drains take permits and they run one at a time, so this never blocks
+        semaphore.acquireUninterruptibly();
+        notificationExecutor.execute(() -> {
+            try {
+                delivery.run();
+            } finally {
+                semaphore.release();
+                wakeUp();
+            }
+        });
+    }
+
+    /**
+     * Whether due SMS rows should be claimed now; if they are waiting out the batch
+     * window, a drain is scheduled for when it closes
+     */
+    private boolean smsBatchReady(LocalDateTime now) {
+        LocalDateTime flushAt = smsBatchDispatcher.nextFlushAt(now);
+        if (flushAt == null) {
+            return false;
+        }
+        if (!flushAt.isAfter(now)) {
+            return true;
+        }
+        if (smsFlushScheduled.compareAndSet(false, true)) {
+            taskScheduler.schedule(() -> {
+                smsFlushScheduled.set(false);
+                drain();
+            }, flushAt.atZone(ZoneId.systemDefault()).toInstant());
+        }
+        return false;
+    }
+
+    private List<NotificationOutbox> claim(NotificationOutbox.Channel channel, int limit) {
+        String token = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        return transaction.execute(status -> {
+            int claimed = outboxRepository.claimDue(channel.name(), token, now,
+                    now.plusNanos(claimTimeoutMs * 1_000_000L), limit);
+            return claimed == 0 ? List.<NotificationOutbox>of() : outboxRepository.findByClaimToken(token);
+        });
+    }
+
+    /**
+     * One email per message; a digest's result applies to every row it stands for
+     */
+    private void deliverEmails(List<NotificationCoalescer.Message> messages) {
+        long start = System.nanoTime();
+        int rowCount = messages.stream().mapToInt(message -> message.rows.size()).sum();
+        try {
+            List<NotificationDeliveryException> results = emailService.deliverAll(
+                    messages.stream().map(message -> message.email).toList());
+            for (int i = 0; i < messages.size(); i++) {
+                for (NotificationOutbox row : messages.get(i).rows) {
+                    recordResult(row, results.get(i));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Delivering {} EMAIL notification(s) failed: {}", rowCount, e.getMessage(), e);
+        } finally {
+            deliveryMillis.add((System.nanoTime() - start) / 1_000_000L);
+            deliveries.add(rowCount);
+        }
+    }
+
+    private void deliverSms(List<NotificationOutbox> rows) {
+        long start = System.nanoTime();
+        try {
+            List<NotificationDeliveryException> results = smsBatchDispatcher.dispatch(rows);
+            for (int i = 0; i < rows.size(); i++) {
+                recordResult(rows.get(i), results.get(i));
+            }
+        } catch (Exception e) {
+            logger.error("Delivering {} SMS notification(s) failed: {}", rows.size(), e.getMessage(), e);
+        } finally {
+            deliveryMillis.add((System.nanoTime() - start) / 1_000_000L);
+            deliveries.add(rows.size());
+        }
+    }
+
+    private void recordResult(NotificationOutbox row, Exception failure) {
+        if (failure == null) {
+            transaction.executeWithoutResult(status ->
+                    outboxRepository.markSent(row.getId(), row.getClaimToken(), LocalDateTime.now()));
+            sent.increment();
+        } else {
+            boolean retryable = !(failure instanceof NotificationDeliveryException)
+                    || ((NotificationDeliveryException) failure).isRetryable();
+            recordFailure(row, failure.getMessage(), retryable);
+        }
+    }
+
+    private void recordFailure(NotificationOutbox row, String message, boolean retryable) {
+        String error = message == null ? "Unknown error"
+                : message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+        int attempt = row.getAttempts() + 1;
+        if (!retryable || attempt >= maxAttempts) {
+            transaction.executeWithoutResult(status -> outboxRepository.markDead(row.getId(), row.getClaimToken(), error));
+            deadLettered.increment();
+            logger.error("Notification {} ({} to {}) dead-lettered after {} attempt(s): {}",
+                    row.getId(), row.getChannel(), row.getRecipient(), attempt, error);
+            return;
+        }
+        LocalDateTime nextAttemptAt = LocalDateTime.now().plusNanos(backoffMillis(attempt) * 1_000_000L);
+        transaction.executeWithoutResult(status ->
+                outboxRepository.markRetry(row.getId(), row.getClaimToken(), nextAttemptAt, error));
+        retried.increment();
+        logger.warn("Notification {} ({} to {}) failed on attempt {}, retrying at {}: {}",
+                row.getId(), row.getChannel(), row.getRecipient(), attempt, nextAttemptAt, error);
+    }
+
+    /**
+     * Exponential backoff from backoff-initial-ms, capped at backoff-max-ms, plus up to 20% jitter
+     */
+    private long backoffMillis(int attempt) {
+        long delay = backoffInitialMs << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, backoffMaxMs);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long sentCount = sent.sum();
+        long attempts = deliveries.sum();
+        Map<String, Integer> inFlight = new LinkedHashMap<>();
+        inFlight.put("EMAIL", emailConcurrency - permits.get(NotificationOutbox.Channel.EMAIL).availablePermits());
+        inFlight.put("SMS", smsConcurrency - permits.get(NotificationOutbox.Channel.SMS).availablePermits());
+        stats.put("inFlight", inFlight);
+        stats.put("sent", sentCount);
+        stats.put("retried", retried.sum());
+        stats.put("deadLettered", deadLettered.sum());
+        stats.put("averageDeliveryMs", attempts == 0 ? 0.0 : (double) deliveryMillis.sum() / attempts);
+        stats.put("smtpPool", emailService.getConnectionStats());
+        stats.put("smsBatches", smsBatchDispatcher.getStats());
+        stats.put("digests", notificationCoalescer.getStats());
+        return stats;
+    }
+}
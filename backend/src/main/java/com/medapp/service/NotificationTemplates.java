@@ -0,0 +1,337 @@
+package com.medapp.service;
+
+import com.medapp.model.FilledMedicine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Email and SMS bodies, loaded from classpath:notifications/ and compiled once at
+ * startup into arrays of literal, variable and section segments.
+ *
+ * A template is {name}.txt (first line "Subject: ..." for emails), with optional
+ * {name}.html for an HTML alternative part; {name}_{lang}.txt or
+ * {name}_{lang}_{COUNTRY}.txt are locale variants, falling back to the plain file.
+ * Inside a template, {{key}} inserts a TemplateKey value and {{#key}}...{{/key}}
+ * renders its body once per item of a list key, or once if any other key is set
+ * and not empty. Values are HTML-escaped in .html templates. Rendering appends to
+ * a per-thread StringBuilder, so a render allocates little beyond its result.
+ */
+@Service
+public class NotificationTemplates {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationTemplates.class);
+
+    private static final Pattern FILE_NAME = Pattern.compile("([a-z0-9-]+?)(?:_([a-z]{2})(?:_([A-Z]{2}))?)?\\.(txt|html)");
+    private static final Pattern TAG = Pattern.compile("\\{\\{([#/]?)([A-Za-z0-9]+)}}");
+    private static final String SUBJECT_PREFIX = "Subject: ";
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    private final Locale defaultLocale;
+    // template name -> locale tag ("" for the default) -> variant
+    private final Map<String, Map<String, Variant>> templates = new HashMap<>();
+    private final Map<String, Map<Locale, Variant>> resolved = new ConcurrentHashMap<>();
+
+    public NotificationTemplates(@Value("${app.notifications.templates:classpath:notifications/}") String location,
+                                 @Value("${app.notifications.default-locale:en}") String defaultLocale) throws IOException {
+        this.defaultLocale = Locale.forLanguageTag(defaultLocale);
+        load(location.endsWith("/") ? location : location + "/");
+        logger.info("Loaded {} notification templates from {}", templates.size(), location);
+    }
+
+    public Rendered render(String name, TemplateParams params) {
+        return render(name, defaultLocale, params);
+    }
+
+    public Rendered render(String name, Locale locale, TemplateParams params) {
+        Variant variant = variant(name, locale);
+        StringBuilder buffer = BUFFER.get();
+        String subject = variant.subject == null ? null : renderToString(variant.subject, params, buffer);
+        String text = renderToString(variant.text, params, buffer);
+        String html = variant.html == null ? null : renderToString(variant.html, params, buffer);
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return new Rendered(subject, text, html);
+    }
+
+    /**
+     * Items for a {{#medicines}} section: name and total quantity of each filled medicine
+     */
+    public static List<TemplateParams> medicineItems(List<FilledMedicine> medicines) {
+        List<TemplateParams> items = new ArrayList<>(medicines.size());
+        for (FilledMedicine medicine : medicines) {
+            items.add(new TemplateParams()
+                    .set(TemplateKey.MEDICINE_NAME, medicine.getMedicineName())
+                    .set(TemplateKey.QUANTITY, (long) medicine.getTotalNeeded()));
+        }
+        return items;
+    }
+
+    public boolean hasTemplate(String name) {
+        return templates.containsKey(name);
+    }
+
+    private static String renderToString(Segment[] segments, TemplateParams params, StringBuilder buffer) {
+        buffer.setLength(0);
+        appendAll(segments, params, buffer);
+        return buffer.toString();
+    }
+
+    private static void appendAll(Segment[] segments, TemplateParams params, StringBuilder out) {
+        for (Segment segment : segments) {
+            segment.appendTo(out, params);
+        }
+    }
+
+    private Variant variant(String name, Locale locale) {
+        Map<Locale, Variant> byLocale = resolved.get(name);
+        if (byLocale == null) {
+            if (!templates.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown notification template: " + name);
+            }
+            byLocale = resolved.computeIfAbsent(name, n -> new ConcurrentHashMap<>());
+        }
+        Variant variant = byLocale.get(locale);
+        if (variant == null) {
+            variant = byLocale.computeIfAbsent(locale, l -> resolve(name, l));
+        }
+        return variant;
+    }
+
+    private Variant resolve(String name, Locale locale) {
+        Map<String, Variant> variants = templates.get(name);
+        Variant exact = variants.get(locale.getLanguage() + "_" + locale.getCountry());
+        if (exact != null) {
+            return exact;
+        }
+        Variant language = variants.get(locale.getLanguage());
+        return language != null ? language : variants.get("");
+    }
+
+    // Loading and parsing
+
+    private void load(String location) throws IOException {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        Map<String, Segment[]> htmlParts = new HashMap<>();
+        for (Resource resource : resolver.getResources(location + "*.*")) {
+            String fileName = resource.getFilename();
+            Matcher m = fileName == null ? null : FILE_NAME.matcher(fileName);
+            if (m == null || !m.matches()) {
+                continue;
+            }
+            String name = m.group(1);
+            String tag = m.group(2) == null ? "" : m.group(3) == null ? m.group(2) : m.group(2) + "_" + m.group(3);
+            String source = read(resource);
+            if ("html".equals(m.group(4))) {
+                htmlParts.put(name + "|" + tag, parse(fileName, source, true));
+                continue;
+            }
+            Segment[] subject = null;
+            if (source.startsWith(SUBJECT_PREFIX)) {
+                int lineEnd = source.indexOf('\n');
+                subject = parse(fileName, source.substring(SUBJECT_PREFIX.length(), lineEnd < 0 ? source.length() : lineEnd), false);
+                source = lineEnd < 0 ? "" : source.substring(lineEnd + 1);
+                if (source.startsWith("\n")) {
+                    source = source.substring(1);
+                }
+            }
+            templates.computeIfAbsent(name, n -> new HashMap<>())
+                    .put(tag, new Variant(subject, parse(fileName, source, false)));
+        }
+        htmlParts.forEach((key, html) -> {
+            String[] nameAndTag = key.split("\\|", -1);
+            Variant variant = templates.getOrDefault(nameAndTag[0], Map.of()).get(nameAndTag[1]);
+            if (variant == null) {
+                throw new IllegalStateException("HTML template " + nameAndTag[0] + " has no matching .txt template");
+            }
+            variant.html = html;
+        });
+        for (Map.Entry<String, Map<String, Variant>> entry : templates.entrySet()) {
+            if (!entry.getValue().containsKey("")) {
+                throw new IllegalStateException("Notification template " + entry.getKey() + " has no default-locale variant");
+            }
+        }
+    }
+
+    private static String read(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            String source = new String(in.readAllBytes(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+            // Editors add a final newline; it is not part of the message
+            return source.endsWith("\n") ? source.substring(0, source.length() - 1) : source;
+        }
+    }
+
+    static Segment[] parse(String fileName, String source, boolean html) {
+        Deque<List<Segment>> bodies = new ArrayDeque<>();
+        Deque<TemplateKey<?>> open = new ArrayDeque<>();
+        List<Segment> current = new ArrayList<>();
+        Matcher m = TAG.matcher(source);
+        int position = 0;
+        while (m.find()) {
+            if (m.start() > position) {
+                current.add(new Literal(source.substring(position, m.start())));
+            }
+            position = m.end();
+            TemplateKey<?> key = TemplateKey.byName(m.group(2));
+            if (key == null) {
+                throw new IllegalStateException(fileName + ": unknown template key {{" + m.group(2) + "}}");
+            }
+            switch (m.group(1)) {
+                case "#" -> {
+                    bodies.push(current);
+                    open.push(key);
+                    current = new ArrayList<>();
+                }
+                case "/" -> {
+                    if (open.isEmpty() || open.peek() != key) {
+                        throw new IllegalStateException(fileName + ": unexpected {{/" + key + "}}");
+                    }
+                    Section section = new Section(open.pop(), current.toArray(new Segment[0]));
+                    current = bodies.pop();
+                    current.add(section);
+                }
+                default -> {
+                    if (key.kind() == TemplateKey.Kind.LIST) {
+                        throw new IllegalStateException(fileName + ": list {{" + key + "}} can only be used as a section");
+                    }
+                    current.add(new Variable(key, html));
+                }
+            }
+        }
+        if (!open.isEmpty()) {
+            throw new IllegalStateException(fileName + ": unclosed {{#" + open.peek() + "}}");
+        }
+        if (position < source.length()) {
+            current.add(new Literal(source.substring(position)));
+        }
+        return current.toArray(new Segment[0]);
+    }
+
+    // Segments
+
+    private interface Segment {
+        void appendTo(StringBuilder out, TemplateParams params);
+    }
+
+    private record Literal(String text) implements Segment {
+        @Override
+        public void appendTo(StringBuilder out, TemplateParams params) {
+            out.append(text);
+        }
+    }
+
+    private record Variable(TemplateKey<?> key, boolean html) implements Segment {
+        @Override
+        public void appendTo(StringBuilder out, TemplateParams params) {
+            Object value = params.get(key.slot());
+            if (value == null) {
+                return;
+            }
+            switch (key.kind()) {
+                case NUMBER -> out.append(((Number) value).longValue());
+                case DATE -> appendDate(out, (LocalDate) value);
+                default -> {
+                    if (html) {
+                        appendEscaped(out, (String) value);
+                    } else {
+                        out.append((String) value);
+                    }
+                }
+            }
+        }
+    }
+
+    private record Section(TemplateKey<?> key, Segment[] body) implements Segment {
+        @Override
+        public void appendTo(StringBuilder out, TemplateParams params) {
+            Object value = params.get(key.slot());
+            if (value == null) {
+                return;
+            }
+            if (key.kind() == TemplateKey.Kind.LIST) {
+                List<?> items = (List<?>) value;
+                for (int i = 0; i < items.size(); i++) {
+                    appendAll(body, (TemplateParams) items.get(i), out);
+                }
+            } else if (!(value instanceof String s) || !s.isBlank()) {
+                appendAll(body, params, out);
+            }
+        }
+    }
+
+    // ISO yyyy-MM-dd without LocalDate.toString()'s intermediate String
+    private static void appendDate(StringBuilder out, LocalDate date) {
+        out.append(date.getYear()).append('-');
+        appendTwoDigits(out, date.getMonthValue());
+        out.append('-');
+        appendTwoDigits(out, date.getDayOfMonth());
+    }
+
+    private static void appendTwoDigits(StringBuilder out, int value) {
+        if (value < 10) {
+            out.append('0');
+        }
+        out.append(value);
+    }
+
+    private static void appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                case '\n' -> out.append("<br>");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    private static class Variant {
+        final Segment[] subject;
+        final Segment[] text;
+        Segment[] html;
+
+        Variant(Segment[] subject, Segment[] text) {
+            this.subject = subject;
+            this.text = text;
+        }
+    }
+
+    /**
+     * A rendered message; subject is null for SMS templates and html when there is no .html variant
+     */
+    public static class Rendered {
+        public final String subject;
+        public final String text;
+        public final String html;
+
+        public Rendered(String subject, String text, String html) {
+            this.subject = subject;
+            this.text = text;
+            this.html = html;
+        }
+    }
+}
@@ -5,24 +5,43 @@ import com.medapp.model.Prescription;
 import com.medapp.model.Patient;
 import com.medapp.model.RefillReminder;
 import com.medapp.model.MedicineFillHistory;
+import com.medapp.model.FilledMedicine;
+import com.medapp.model.ReminderStatsDaily;
 import com.medapp.repository.RefillRequestRepository;
 import com.medapp.repository.PrescriptionRepository;
 import com.medapp.repository.RefillReminderRepository;
 import com.medapp.repository.MedicineFillHistoryRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class RefillReminderService {
     private static final Logger logger = LoggerFactory.getLogger(RefillReminderService.class);
 
+    private static final String REMINDER_CRON = "0 0 9 * * ?";
+    private static final String REMINDER_LOCK = "refill-reminders";
+
     @Autowired
     private PrescriptionRepository prescriptionRepository;
     
@@ -38,83 +57,232 @@ public class RefillReminderService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private SmsService smsService;
+
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SchedulerLockService schedulerLockService;
+
+    @Autowired
+    private ReminderStatsService reminderStatsService;
+
+    @Value("${app.reminders.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${app.reminders.catch-up-days:7}")
+    private int catchUpDays;
+
+    @Value("${app.reminders.lease-seconds:600}")
+    private long leaseSeconds;
+
+    @Value("${app.frontend.url:http://localhost:3000}")
+    private String frontendUrl;
+
+    // Each chunk commits on its own
+    private TransactionTemplate transaction;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder leaseSkips = new LongAdder();
+    private final LongAdder totalQueued = new LongAdder();
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    @PostConstruct
+    void init() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
     /**
      * Scheduled task that runs daily at 9:00 AM to check for refill reminders
      * Cron expression: "0 0 9 * * ?" means every day at 9:00 AM
      */
-    @Scheduled(cron = "0 0 9 * * ?")
+    @Scheduled(cron = REMINDER_CRON)
     public void checkRefillReminders() {
-        logger.info("Starting daily refill reminder check...");
-        
+        runReminderJob("daily");
+    }
+
+    /**
+     * Catch-up sweep for reminders missed while no node was up at 9:00 (or left over
+     * by a failed run): anything due within the last catch-up-days and still unsent.
+     */
+    @Scheduled(cron = "${app.reminders.catch-up-cron:0 30 * * * ?}")
+    public void catchUpRefillReminders() {
+        runReminderJob("catch-up");
+    }
+
+    /**
+     * Due reminders are paged by id in chunks. For each chunk, pending refill requests
+     * and the latest fill history are loaded with one query each, and the reminder
+     * emails are queued in the notification outbox in the same transaction that claims
+     * the reminders, so a crash mid-run never re-sends a committed chunk. Delivery
+     * happens on the outbox's bounded notificationExecutor.
+     *
+     * With several instances, only the holder of the scheduler_lock lease runs the job;
+     * the lease is renewed after every chunk. Each reminder is also claimed with a
+     * conditional UPDATE, so even overlapping runs never queue the same reminder twice.
+     */
+    private void runReminderJob(String trigger) {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("Refill reminder check already running, skipping {} trigger", trigger);
+            return;
+        }
+        Duration lease = Duration.ofSeconds(leaseSeconds);
+        if (!schedulerLockService.tryAcquire(REMINDER_LOCK, lease)) {
+            running.set(false);
+            leaseSkips.increment();
+            logger.info("Refill reminder {} run skipped; another node holds the lease", trigger);
+            return;
+        }
+        LocalDateTime startedAt = LocalDateTime.now();
+        // Today's reminders only go out from 9:00 onwards
+        LocalDate to = startedAt.getHour() < 9 ? startedAt.toLocalDate().minusDays(1) : startedAt.toLocalDate();
+        LocalDate from = startedAt.toLocalDate().minusDays(catchUpDays);
+        logger.info("Starting refill reminder {} run for reminders due {} to {}...", trigger, from, to);
+        long start = System.nanoTime();
+        ReminderRun run = new ReminderRun();
         try {
-            // Find all reminders that are due today and not yet sent
-            LocalDate today = LocalDate.now();
-            List<RefillReminder> dueReminders = refillReminderRepository.findByReminderDateAndIsEnabledAndSmsSent(
-                today, true, false);
-            
-            int remindersChecked = dueReminders.size();
-            int remindersSent = 0;
-            
-            for (RefillReminder reminder : dueReminders) {
-                try {
-                    // Check if there's already a pending refill request
-                    boolean hasPendingRefill = refillRequestRepository.existsByPrescriptionAndPatientAndStatus(
-                            reminder.getPrescription(), reminder.getPatient(), RefillRequest.Status.PENDING);
-                    
-                    if (!hasPendingRefill) {
-                        // Build medicine list from latest fill history (each on new line)
-                        java.util.List<MedicineFillHistory> historiesForReminder =
-                            medicineFillHistoryRepository.findByPrescriptionOrderByFillDateDesc(reminder.getPrescription());
-                        String medicineList = "";
-                        if (!historiesForReminder.isEmpty()) {
-                            var latestHistory = historiesForReminder.get(0);
-                            medicineList = latestHistory.getFilledMedicines().stream()
-                                .map(fm -> String.format("- %s (x%d)", fm.getMedicineName(), fm.getTotalNeeded()))
-                                .reduce("", (a, b) -> a.isEmpty() ? b : a + "\n" + b);
-                        }
-
-                        // Refill due date is reminder date + 3 days
-                        String refillDate = reminder.getReminderDate().plusDays(3).toString();
-
-                        // Send Email reminder
-                        boolean emailSent = emailService.sendRefillReminderEmail(
-                            reminder.getPatient().getEmail(),
-                            reminder.getPatient().getName(),
-                            reminder.getPrescription().getId().toString(),
-                            refillDate,
-                            medicineList
-                        );
-
-                        if (emailSent) {
-                            // Update reminder as sent
-                            reminder.setSmsSent(true);
-                            reminder.setSmsSentAt(LocalDateTime.now());
-                            reminder.setSmsMessage("Refill reminder sent via Email");
-                            refillReminderRepository.save(reminder);
-                        remindersSent++;
-
-                            logger.info("Email reminder sent to patient {} for prescription #{}",
-                                reminder.getPatient().getName(), reminder.getPrescription().getId());
-                        } else {
-                            logger.error("Failed to send email reminder to patient {} for prescription #{}",
-                                reminder.getPatient().getName(), reminder.getPrescription().getId());
-                        }
-                    } else {
-                        logger.info("Skipping reminder for prescription #{} - pending refill request exists",
-                            reminder.getPrescription().getId());
-                    }
-                } catch (Exception e) {
-                    logger.error("Error processing reminder for prescription #{}: {}", 
-                        reminder.getPrescription().getId(), e.getMessage(), e);
+            Long afterId = 0L;
+            while (afterId != null) {
+                Long after = afterId;
+                afterId = transaction.execute(status -> processChunk(from, to, after, run));
+                if (afterId != null && !schedulerLockService.tryAcquire(REMINDER_LOCK, lease)) {
+                    logger.warn("Lost the refill reminder lease after {} chunk(s); stopping", run.chunks);
+                    break;
                 }
             }
-            
-            logger.info("Refill reminder check completed. Checked: {}, Emails sent: {}", 
-                       remindersChecked, remindersSent);
-            
         } catch (Exception e) {
             logger.error("Error during refill reminder check: {}", e.getMessage(), e);
+        } finally {
+            schedulerLockService.release(REMINDER_LOCK);
+            running.set(false);
+            recordRun(trigger, startedAt, System.nanoTime() - start, run);
         }
+        logger.info("Refill reminder {} run completed in {} chunk(s). Checked: {}, Emails queued: {}, SMS queued: {}, Skipped: {}, Failed: {}",
+            trigger, run.chunks, run.checked, run.queued, run.smsQueued, run.skipped, run.failed);
+    }
+
+    /**
+     * Queue one chunk of due reminders; returns the last id seen, or null when there are no more
+     */
+    private Long processChunk(LocalDate from, LocalDate to, Long afterId, ReminderRun run) {
+        List<RefillReminder> chunk = refillReminderRepository.findDueAfterId(from, to, afterId, PageRequest.of(0, chunkSize));
+        if (chunk.isEmpty()) {
+            return null;
+        }
+        run.chunks++;
+        List<Long> prescriptionIds = chunk.stream().map(r -> r.getPrescription().getId()).distinct().toList();
+
+        Set<String> pendingRefills = new HashSet<>();
+        for (Object[] pair : refillRequestRepository.findPrescriptionPatientPairsWithStatus(
+                prescriptionIds, RefillRequest.Status.PENDING)) {
+            pendingRefills.add(pair[0] + ":" + pair[1]);
+        }
+        Map<Long, MedicineFillHistory> latestHistory = new HashMap<>();
+        for (MedicineFillHistory history : medicineFillHistoryRepository.findLatestWithMedicinesByPrescriptionIdIn(prescriptionIds)) {
+            latestHistory.putIfAbsent(history.getPrescription().getId(), history);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        // Reminder SMS go through the outbox, which sends them in multi-recipient batches
+        boolean smsEnabled = smsService.isConfigured();
+        Map<LocalDate, Integer> sentByDate = new HashMap<>();
+        for (RefillReminder reminder : chunk) {
+            run.checked++;
+            Prescription prescription = reminder.getPrescription();
+            Patient patient = reminder.getPatient();
+            if (pendingRefills.contains(prescription.getId() + ":" + patient.getId())) {
+                run.skipped++;
+                logger.debug("Skipping reminder for prescription #{} - pending refill request exists", prescription.getId());
+                continue;
+            }
+            EmailService.Email email;
+            String sms = null;
+            try {
+                MedicineFillHistory history = latestHistory.get(prescription.getId());
+                List<FilledMedicine> medicines = history != null ? history.getFilledMedicines() : List.of();
+                // Refill due date is reminder date + 3 days
+                LocalDate refillDueDate = reminder.getReminderDate().plusDays(3);
+                email = emailService.refillReminderEmail(patient.getName(), prescription.getId(), refillDueDate, medicines);
+                if (smsEnabled && reminder.getPatientPhone() != null && !reminder.getPatientPhone().isBlank()) {
+                    sms = smsService.refillReminderText(patient.getName(), prescription.getId(), refillDueDate,
+                        medicines, frontendUrl + "/patient");
+                }
+            } catch (Exception e) {
+                run.failed++;
+                logger.error("Error processing reminder for prescription #{}: {}", prescription.getId(), e.getMessage(), e);
+                continue;
+            }
+            // The claim and the queued email commit together, or neither does
+            String claimMessage = sms != null ? "Refill reminder queued via Email and SMS" : "Refill reminder queued via Email";
+            if (refillReminderRepository.markSentIfUnsent(reminder.getId(), now, claimMessage) == 0) {
+                run.claimedElsewhere++;
+                continue;
+            }
+            notificationOutboxService.enqueueEmail(NotificationOutboxService.TYPE_REFILL_REMINDER,
+                patient.getId(), patient.getEmail(), email);
+            if (sms != null) {
+                notificationOutboxService.enqueueSms(NotificationOutboxService.TYPE_REFILL_REMINDER,
+                    patient.getId(), reminder.getId(), reminder.getPatientPhone(), sms);
+                run.smsQueued++;
+            }
+            sentByDate.merge(reminder.getReminderDate(), 1, Integer::sum);
+            run.queued++;
+        }
+        reminderStatsService.recordSent(sentByDate);
+        return chunk.size() < chunkSize ? null : chunk.get(chunk.size() - 1).getId();
+    }
+
+    private void recordRun(String trigger, LocalDateTime startedAt, long elapsedNanos, ReminderRun run) {
+        runs.increment();
+        totalQueued.add(run.queued);
+        Map<String, Object> last = new LinkedHashMap<>();
+        last.put("trigger", trigger);
+        last.put("startedAt", startedAt.toString());
+        // How late the run started relative to its 09:00 slot (catch-up and manual runs report their own time of day)
+        last.put("startLagMs", Math.max(0, Duration.between(startedAt.toLocalDate().atTime(9, 0), startedAt).toMillis()));
+        long elapsedMs = elapsedNanos / 1_000_000L;
+        last.put("durationMs", elapsedMs);
+        last.put("chunks", run.chunks);
+        last.put("checked", run.checked);
+        last.put("queued", run.queued);
+        last.put("smsQueued", run.smsQueued);
+        last.put("skipped", run.skipped);
+        last.put("claimedElsewhere", run.claimedElsewhere);
+        last.put("failed", run.failed);
+        last.put("remindersPerSecond", elapsedMs == 0 ? 0.0 : run.checked * 1000.0 / elapsedMs);
+        lastRun = last;
+    }
+
+    /**
+     * Counters for the reminder job; delivery lag of the queued emails is in the notification outbox stats
+     */
+    public Map<String, Object> getJobStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("chunkSize", chunkSize);
+        stats.put("node", schedulerLockService.getNodeId());
+        stats.put("runs", runs.sum());
+        stats.put("leaseSkips", leaseSkips.sum());
+        stats.put("totalQueued", totalQueued.sum());
+        stats.put("lastRun", lastRun);
+        return stats;
+    }
+
+    // Mutated only by the thread running the job
+    private static class ReminderRun {
+        int chunks;
+        int checked;
+        int queued;
+        int smsQueued;
+        int skipped;
+        int claimedElsewhere;
+        int failed;
     }
 
     /**
@@ -139,6 +307,7 @@ public class RefillReminderService {
             reminder.setPatientPhone(patient.getPhone());
             
             refillReminderRepository.save(reminder);
+            reminderStatsService.recordCreated(reminderDate, true);
             
             logger.info("Created refill reminder for prescription #{} - reminder date: {}, days until refill: {}",
                 prescription.getId(), reminderDate, daysUntilRefill);
@@ -150,97 +319,118 @@ public class RefillReminderService {
     }
 
     /**
-     * Send medicine filled notification Email
+     * Queue the medicine filled Email; it is delivered after the caller's transaction commits
      */
-    public void sendMedicineFilledNotification(Prescription prescription, Patient patient,
-                                               java.util.List<com.medapp.model.FilledMedicine> filledMedicines,
-                                               String refillDate) {
-        try {
-            String medicineList = filledMedicines.stream()
-                .map(fm -> String.format("- %s (x%d)", fm.getMedicineName(), fm.getTotalNeeded()))
-                .reduce("", (a, b) -> a.isEmpty() ? b : a + "\n" + b);
-
-            boolean emailSent = emailService.sendMedicineFilledEmail(
-                patient.getEmail(),
-                patient.getName(),
-                prescription.getId().toString(),
-                java.time.LocalDate.now().toString(),
-                medicineList,
-                refillDate
-            );
-
-            if (emailSent) {
-                logger.info("Medicine filled email sent to patient {} for prescription #{}",
-                    patient.getName(), prescription.getId());
-            } else {
-                logger.error("Failed to send medicine filled email to patient {} for prescription #{}",
-                    patient.getName(), prescription.getId());
-            }
-        } catch (Exception e) {
-            logger.error("Error sending medicine filled notification for prescription #{}: {}",
-                prescription.getId(), e.getMessage(), e);
-        }
+    public void queueMedicineFilledNotification(Prescription prescription, Patient patient,
+                                                java.util.List<com.medapp.model.FilledMedicine> filledMedicines,
+                                                String refillDate) {
+        EmailService.Email email = emailService.medicineFilledEmail(
+            patient.getName(),
+            prescription.getId(),
+            LocalDate.now(),
+            filledMedicines,
+            refillDate
+        );
+        notificationOutboxService.enqueueEmail(NotificationOutboxService.TYPE_MEDICINE_FILLED,
+            patient.getId(), patient.getEmail(), email);
+        logger.info("Medicine filled email queued for patient {} for prescription #{}",
+            patient.getName(), prescription.getId());
     }
 
     /**
-     * Send medicine dispatched notification Email
+     * Queue the medicine dispatched Email; it is delivered after the caller's transaction commits
      */
-    public void sendMedicineDispatchedNotification(Prescription prescription, Patient patient) {
+    public void queueMedicineDispatchedNotification(Prescription prescription, Patient patient) {
+        List<FilledMedicine> medicines = List.of();
+        String deliveryAddress = "Address not available";
         try {
             java.util.List<com.medapp.model.MedicineFillHistory> histories =
                 medicineFillHistoryRepository.findByPrescriptionOrderByFillDateDesc(prescription);
-            String medicineList = "";
             if (!histories.isEmpty()) {
-                var latest = histories.get(0);
-                medicineList = latest.getFilledMedicines().stream()
-                    .map(fm -> String.format("- %s (x%d)", fm.getMedicineName(), fm.getTotalNeeded()))
-                    .reduce("", (a, b) -> a.isEmpty() ? b : a + "\n" + b);
+                medicines = histories.get(0).getFilledMedicines();
             }
 
             // Get delivery address from the latest refill request
-            String deliveryAddress = "Address not available";
             try {
                 List<RefillRequest> refillRequests = refillRequestRepository.findByPrescriptionOrderByRequestedAtDesc(prescription);
                 if (!refillRequests.isEmpty()) {
-                    RefillRequest latestRequest = refillRequests.get(0);
-                    if (latestRequest.getDeliveryAddressLine1() != null && !latestRequest.getDeliveryAddressLine1().isEmpty()) {
-                        StringBuilder address = new StringBuilder();
-                        address.append(latestRequest.getDeliveryAddressLine1());
-                        if (latestRequest.getDeliveryAddressLine2() != null && !latestRequest.getDeliveryAddressLine2().isEmpty()) {
-                            address.append("\n").append(latestRequest.getDeliveryAddressLine2());
-                        }
-                        address.append("\n").append(latestRequest.getDeliveryCity()).append(", ").append(latestRequest.getDeliveryState());
-                        address.append("\nPincode: ").append(latestRequest.getDeliveryPincode());
-                        if (latestRequest.getDeliveryPhone() != null && !latestRequest.getDeliveryPhone().isEmpty()) {
-                            address.append("\nPhone: ").append(latestRequest.getDeliveryPhone());
-                        }
-                        deliveryAddress = address.toString();
-                    }
+                    deliveryAddress = formatAddress(refillRequests.get(0));
                 }
             } catch (Exception e) {
                 logger.warn("Could not retrieve delivery address for prescription #{}: {}", prescription.getId(), e.getMessage());
             }
+        } catch (Exception e) {
+            logger.error("Error building medicine dispatched notification for prescription #{}: {}",
+                prescription.getId(), e.getMessage(), e);
+        }
 
-            boolean emailSent = emailService.sendMedicineDispatchedEmail(
-                patient.getEmail(),
-                patient.getName(),
-                prescription.getId().toString(),
-                java.time.LocalDate.now().toString(),
-                medicineList,
-                deliveryAddress
-            );
+        EmailService.Email email = emailService.medicineDispatchedEmail(
+            patient.getEmail(),
+            patient.getName(),
+            prescription.getId(),
+            LocalDate.now(),
+            medicines,
+            deliveryAddress
+        );
+        notificationOutboxService.enqueueEmail(NotificationOutboxService.TYPE_MEDICINE_DISPATCHED,
+            patient.getId(), patient.getEmail(), email);
+        logger.info("Medicine dispatched email queued for patient {} for prescription #{}",
+            patient.getName(), prescription.getId());
+    }
+
+    /**
+     * Queue one dispatched Email per patient for a bulk dispatch. Fill histories for all
+     * prescriptions are loaded in one query; each request supplies its own delivery address.
+     */
+    public void queueDispatchedNotifications(List<RefillRequest> dispatched) {
+        if (dispatched.isEmpty()) {
+            return;
+        }
+        List<Long> prescriptionIds = dispatched.stream().map(rr -> rr.getPrescription().getId()).distinct().toList();
+        // Newest first, so the first history seen per prescription is the latest fill
+        Map<Long, MedicineFillHistory> latestHistory = new HashMap<>();
+        for (MedicineFillHistory history : medicineFillHistoryRepository.findWithMedicinesByPrescriptionIdIn(prescriptionIds)) {
+            latestHistory.putIfAbsent(history.getPrescription().getId(), history);
+        }
 
-            if (emailSent) {
-                logger.info("Medicine dispatched email sent to patient {} for prescription #{}",
-                    patient.getName(), prescription.getId());
-            } else {
-                logger.error("Failed to send medicine dispatched email to patient {} for prescription #{}",
-                    patient.getName(), prescription.getId());
+        Map<Long, List<RefillRequest>> byPatient = new LinkedHashMap<>();
+        for (RefillRequest rr : dispatched) {
+            byPatient.computeIfAbsent(rr.getPatient().getId(), id -> new ArrayList<>()).add(rr);
+        }
+        LocalDate dispatchDate = LocalDate.now();
+        byPatient.forEach((patientId, requests) -> {
+            Patient patient = requests.get(0).getPatient();
+            List<EmailService.DispatchedPrescription> items = new ArrayList<>(requests.size());
+            for (RefillRequest rr : requests) {
+                MedicineFillHistory history = latestHistory.get(rr.getPrescription().getId());
+                items.add(new EmailService.DispatchedPrescription(
+                    rr.getPrescription().getId(),
+                    history != null ? history.getFilledMedicines() : List.<FilledMedicine>of(),
+                    formatAddress(rr)));
             }
-        } catch (Exception e) {
-            logger.error("Error sending medicine dispatched notification for prescription #{}: {}",
-                prescription.getId(), e.getMessage(), e);
+            EmailService.Email email = emailService.medicinesDispatchedEmail(
+                patient.getEmail(), patient.getName(), dispatchDate, items);
+            notificationOutboxService.enqueueEmail(NotificationOutboxService.TYPE_MEDICINE_DISPATCHED,
+                patient.getId(), patient.getEmail(), email);
+        });
+        logger.info("Queued {} dispatched emails for {} refill requests", byPatient.size(), dispatched.size());
+    }
+
+    private static String formatAddress(RefillRequest request) {
+        if (request.getDeliveryAddressLine1() == null || request.getDeliveryAddressLine1().isEmpty()) {
+            return "Address not available";
         }
+        StringBuilder address = new StringBuilder();
+        address.append(request.getDeliveryAddressLine1());
+        if (request.getDeliveryAddressLine2() != null && !request.getDeliveryAddressLine2().isEmpty()) {
+            address.append("\n").append(request.getDeliveryAddressLine2());
+        }
+        address.append("\n").append(request.getDeliveryCity()).append(", ").append(request.getDeliveryState());
+        address.append("\nPincode: ").append(request.getDeliveryPincode());
+        if (request.getDeliveryPhone() != null && !request.getDeliveryPhone().isEmpty()) {
+            address.append("\nPhone: ").append(request.getDeliveryPhone());
+        }
+        return address.toString();
     }
 
     /**
@@ -251,10 +441,20 @@ public class RefillReminderService {
     public void updateReminderSettings(Long patientId, boolean enabled) {
         try {
             List<RefillReminder> reminders = refillReminderRepository.findByPatientId(patientId);
+            int enabledDelta = 0;
+            Map<LocalDate, Integer> dueByDate = new HashMap<>();
             for (RefillReminder reminder : reminders) {
+                if (reminder.isEnabled() != enabled) {
+                    int delta = enabled ? 1 : -1;
+                    enabledDelta += delta;
+                    if (!reminder.isSmsSent()) {
+                        dueByDate.merge(reminder.getReminderDate(), delta, Integer::sum);
+                    }
+                }
                 reminder.setEnabled(enabled);
             }
             refillReminderRepository.saveAll(reminders);
+            reminderStatsService.recordEnabledChanged(enabledDelta, dueByDate);
             
             logger.info("Updated reminder settings for patient {}: enabled = {}", patientId, enabled);
         } catch (Exception e) {
@@ -263,25 +463,16 @@ public class RefillReminderService {
     }
 
     /**
-     * Get reminder statistics
+     * Get reminder statistics from today's reminder_stats_daily row
      */
     public RefillReminderStats getRefillReminderStats() {
         try {
-            LocalDate today = LocalDate.now();
-            
-            int totalReminders = (int) refillReminderRepository.count();
-            int enabledReminders = (int) refillReminderRepository.countByIsEnabled(true);
-            int dueToday = (int) refillReminderRepository.countByReminderDateAndIsEnabledAndSmsSent(today, true, false);
-            int sentToday = (int) refillReminderRepository.countBySmsSentAtBetween(
-                LocalDateTime.now().withHour(0).withMinute(0).withSecond(0),
-                LocalDateTime.now().withHour(23).withMinute(59).withSecond(59)
-            );
-            
+            ReminderStatsDaily today = reminderStatsService.getToday();
             return new RefillReminderStats(
-                totalReminders,
-                enabledReminders,
-                dueToday,
-                sentToday
+                (int) today.getTotalReminders(),
+                (int) today.getEnabledReminders(),
+                (int) today.getDueCount(),
+                (int) today.getSentCount()
             );
         } catch (Exception e) {
             logger.error("Error getting reminder stats: {}", e.getMessage(), e);
@@ -289,12 +480,19 @@ public class RefillReminderService {
         }
     }
 
+    /**
+     * Daily reminder statistics for trend charts
+     */
+    public List<ReminderStatsDaily> getDailyReminderStats(LocalDate from, LocalDate to) {
+        return reminderStatsService.getRange(from, to);
+    }
+
     /**
      * Manual method to trigger refill reminder check (useful for testing)
      */
     public void triggerRefillReminderCheck() {
         logger.info("Manually triggering refill reminder check...");
-        checkRefillReminders();
+        runReminderJob("manual");
     }
 
     /**
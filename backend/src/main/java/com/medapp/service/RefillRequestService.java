@@ -10,7 +10,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Transactional
@@ -26,44 +31,39 @@ public class RefillRequestService {
     @Autowired
     private PatientRepository patientRepository;
     
-    @Autowired
-    private InventoryRepository inventoryRepository;
-    @Autowired
-    private MedicineRepository medicineRepository;
     @Autowired
     private UserRepository userRepository;
     @Autowired
     private RefillRequestMedicineRepository refillRequestMedicineRepository;
     @Autowired
     private TrackingService trackingService;
+    @Autowired
+    private InventoryService inventoryService;
+    @Autowired
+    private MedicineFillHistoryRepository medicineFillHistoryRepository;
+    @Autowired
+    private RefillReminderService refillReminderService;
 
     /**
      * Patient requests a refill for an approved prescription
      */
-    public RefillRequest requestRefill(Long prescriptionId, String patientEmail,
+    public RefillRequest requestRefill(Long prescriptionId, Long patientId,
                                        String line1, String line2, String city, String state,
                                        String pincode, String phone) {
-        logger.info("Processing refill request for prescription {} by patient {}", prescriptionId, patientEmail);
-        
-        // Find patient
-        User user = userRepository.findByEmail(patientEmail)
-                .orElseThrow(() -> new RuntimeException("Patient not found"));
-        
-        if (user.getRole() != User.Role.PATIENT) {
-            throw new RuntimeException("Only patients can request refills");
-        }
-        
-        Patient patient = (Patient) user;
+        logger.info("Processing refill request for prescription {} by patient ID {}", prescriptionId, patientId);
         
         // Find prescription
         Prescription prescription = prescriptionRepository.findById(prescriptionId)
                 .orElseThrow(() -> new RuntimeException("Prescription not found"));
         
         // Validate prescription belongs to patient
-        if (!prescription.getPatient().getId().equals(patient.getId())) {
+        if (!prescription.getPatient().getId().equals(patientId)) {
             throw new RuntimeException("Prescription does not belong to this patient");
         }
         
+        // The prescription's patient is already loaded, so there is no need to fetch it again
+        Patient patient = prescription.getPatient();
+        
         // Validate prescription is approved
         if (prescription.getStatus() != Prescription.Status.APPROVED) {
             throw new RuntimeException("Only approved prescriptions can be refilled");
@@ -107,16 +107,8 @@ public class RefillRequestService {
     /**
      * Get all refill requests for a patient
      */
-    public List<RefillRequest> getRefillRequestsForPatient(String patientEmail) {
-        User user = userRepository.findByEmail(patientEmail)
-                .orElseThrow(() -> new RuntimeException("Patient not found"));
-        
-        if (user.getRole() != User.Role.PATIENT) {
-            throw new RuntimeException("Only patients can view their refill requests");
-        }
-        
-        Patient patient = (Patient) user;
-        return refillRequestRepository.findByPatientOrderByRequestedAtDesc(patient);
+    public List<RefillRequest> getRefillRequestsForPatient(Long patientId) {
+        return refillRequestRepository.findByPatientIdOrderByRequestedAtDesc(patientId);
     }
 
     /**
@@ -129,16 +121,8 @@ public class RefillRequestService {
     /**
      * Pharmacist approves a refill request
      */
-    public RefillRequest approveRefillRequest(Long refillRequestId, String pharmacistEmail) {
-        logger.info("Approving refill request {} by pharmacist {}", refillRequestId, pharmacistEmail);
-        
-        // Find pharmacist
-        User user = userRepository.findByEmail(pharmacistEmail)
-                .orElseThrow(() -> new RuntimeException("Pharmacist not found"));
-        
-        if (user.getRole() != User.Role.PHARMACIST) {
-            throw new RuntimeException("Only pharmacists can approve refill requests");
-        }
+    public RefillRequest approveRefillRequest(Long refillRequestId, Long pharmacistId) {
+        logger.info("Approving refill request {} by pharmacist ID {}", refillRequestId, pharmacistId);
         
         // Find refill request
         RefillRequest refillRequest = refillRequestRepository.findById(refillRequestId)
@@ -151,7 +135,7 @@ public class RefillRequestService {
         
         // Update status
         refillRequest.setStatus(RefillRequest.Status.APPROVED);
-        refillRequest.setPharmacist(user);
+        refillRequest.setPharmacist(userRepository.getReferenceById(pharmacistId));
         refillRequest.setActionedAt(LocalDateTime.now());
         
         RefillRequest saved = refillRequestRepository.save(refillRequest);
@@ -166,16 +150,8 @@ public class RefillRequestService {
     /**
      * Pharmacist rejects a refill request
      */
-    public RefillRequest rejectRefillRequest(Long refillRequestId, String pharmacistEmail, String rejectionReason) {
-        logger.info("Rejecting refill request {} by pharmacist {}", refillRequestId, pharmacistEmail);
-        
-        // Find pharmacist
-        User user = userRepository.findByEmail(pharmacistEmail)
-                .orElseThrow(() -> new RuntimeException("Pharmacist not found"));
-        
-        if (user.getRole() != User.Role.PHARMACIST) {
-            throw new RuntimeException("Only pharmacists can reject refill requests");
-        }
+    public RefillRequest rejectRefillRequest(Long refillRequestId, Long pharmacistId, String rejectionReason) {
+        logger.info("Rejecting refill request {} by pharmacist ID {}", refillRequestId, pharmacistId);
         
         // Find refill request
         RefillRequest refillRequest = refillRequestRepository.findById(refillRequestId)
@@ -188,7 +164,7 @@ public class RefillRequestService {
         
         // Update status
         refillRequest.setStatus(RefillRequest.Status.REJECTED);
-        refillRequest.setPharmacist(user);
+        refillRequest.setPharmacist(userRepository.getReferenceById(pharmacistId));
         refillRequest.setReasonForRejection(rejectionReason);
         refillRequest.setActionedAt(LocalDateTime.now());
         
@@ -203,39 +179,32 @@ public class RefillRequestService {
     /**
      * Pharmacist fills a refill request with medicines
      */
-    public List<String> fillRefillRequest(Long refillRequestId, String pharmacistEmail, List<MedicineFillItem> items) {
-        logger.info("Filling refill request {} by pharmacist {}", refillRequestId, pharmacistEmail);
-        User pharmacist = userRepository.findByEmail(pharmacistEmail)
-                .orElseThrow(() -> new RuntimeException("Pharmacist not found"));
-        if (pharmacist.getRole() != User.Role.PHARMACIST) {
-            throw new RuntimeException("Only pharmacists can fill refill requests");
-        }
+    public List<String> fillRefillRequest(Long refillRequestId, Long pharmacistId, List<MedicineFillItem> items) {
+        logger.info("Filling refill request {} by pharmacist ID {}", refillRequestId, pharmacistId);
         RefillRequest refillRequest = refillRequestRepository.findById(refillRequestId)
                 .orElseThrow(() -> new RuntimeException("Refill request not found"));
         if (refillRequest.getStatus() != RefillRequest.Status.APPROVED) {
             throw new RuntimeException("Only approved refill requests can be filled");
         }
-        // Validate and deduct inventory
-        List<String> lowStockAlerts = new java.util.ArrayList<>();
+        // Deduct inventory with conditional updates; any shortfall rolls the whole fill back
+        Map<Long, Integer> quantityByMedicine = new LinkedHashMap<>();
+        for (MedicineFillItem item : items) {
+            quantityByMedicine.merge(item.getMedicineId(), item.getQuantity(), Integer::sum);
+        }
+        Map<Long, InventoryService.StockChange> changes = inventoryService.deductStock(pharmacistId, quantityByMedicine);
         for (MedicineFillItem item : items) {
-            Medicine medicine = medicineRepository.findById(item.getMedicineId())
-                .orElseThrow(() -> new RuntimeException("Medicine not found: " + item.getMedicineId()));
-            Inventory inventory = inventoryRepository.findByMedicineIdAndPharmacistId(item.getMedicineId(), pharmacist.getId())
-                .orElseThrow(() -> new RuntimeException("Inventory not found for medicine: " + medicine.getName()));
-            if (inventory.getStockQuantity() < item.getQuantity()) {
-                throw new RuntimeException("Insufficient stock for medicine: " + medicine.getName());
-            }
-            inventory.setStockQuantity(inventory.getStockQuantity() - item.getQuantity());
-            inventoryRepository.save(inventory);
             // Insert into refill_request_medicines
             RefillRequestMedicine rrm = new RefillRequestMedicine();
             rrm.setRefillRequest(refillRequest);
-            rrm.setMedicine(medicine);
+            rrm.setMedicine(changes.get(item.getMedicineId()).inventory.getMedicine());
             rrm.setQuantity(item.getQuantity());
             refillRequestMedicineRepository.save(rrm);
-            // Check for low stock
-            if (inventory.getStockQuantity() <= inventory.getLowStockThreshold()) {
-                lowStockAlerts.add(medicine.getName());
+        }
+        // Check for low stock
+        List<String> lowStockAlerts = new java.util.ArrayList<>();
+        for (InventoryService.StockChange change : changes.values()) {
+            if (change.after <= change.inventory.getLowStockThreshold()) {
+                lowStockAlerts.add(change.inventory.getMedicine().getName());
             }
         }
         refillRequest.setStatus(RefillRequest.Status.FILLED);
@@ -243,6 +212,62 @@ public class RefillRequestService {
         return lowStockAlerts;
     }
 
+    /**
+     * Dispatch several refill requests at once. Requests are locked and loaded in one
+     * query, statuses change with one UPDATE per table, tracking rows go in as one
+     * batch and each patient gets a single queued email. Each id gets its own result;
+     * ids that cannot be dispatched do not stop the others.
+     */
+    public List<DispatchResult> dispatchRefillRequests(List<Long> refillRequestIds) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(refillRequestIds));
+        Map<Long, RefillRequest> found = new HashMap<>();
+        for (RefillRequest rr : refillRequestRepository.findAllForUpdateByIdIn(ids)) {
+            found.put(rr.getId(), rr);
+        }
+
+        List<DispatchResult> results = new ArrayList<>(ids.size());
+        List<RefillRequest> toDispatch = new ArrayList<>();
+        for (Long id : ids) {
+            RefillRequest rr = found.get(id);
+            if (rr == null) {
+                results.add(new DispatchResult(id, false, "Refill request not found"));
+            } else if (rr.getStatus() == RefillRequest.Status.DISPATCHED) {
+                results.add(new DispatchResult(id, true, "Already dispatched"));
+            } else if (rr.getStatus() != RefillRequest.Status.FILLED && rr.getStatus() != RefillRequest.Status.APPROVED) {
+                results.add(new DispatchResult(id, false, "Only filled or approved requests can be dispatched"));
+            } else {
+                toDispatch.add(rr);
+                results.add(new DispatchResult(id, true, "Dispatched"));
+            }
+        }
+        if (toDispatch.isEmpty()) {
+            return results;
+        }
+
+        List<Long> dispatchIds = toDispatch.stream().map(RefillRequest::getId).toList();
+        List<Long> prescriptionIds = toDispatch.stream().map(rr -> rr.getPrescription().getId()).distinct().toList();
+        refillRequestRepository.updateStatusByIdIn(dispatchIds, RefillRequest.Status.DISPATCHED, LocalDateTime.now());
+        medicineFillHistoryRepository.updateStatusByPrescriptionIdIn(prescriptionIds,
+                MedicineFillHistory.Status.FILLED, MedicineFillHistory.Status.DISPATCHED);
+        trackingService.recordAll(prescriptionIds, PrescriptionTracking.Status.DISPATCHED, null);
+        refillReminderService.queueDispatchedNotifications(toDispatch);
+
+        logger.info("Dispatched {} of {} refill requests", toDispatch.size(), ids.size());
+        return results;
+    }
+
+    public static class DispatchResult {
+        public final Long refillRequestId;
+        public final boolean success;
+        public final String message;
+
+        public DispatchResult(Long refillRequestId, boolean success, String message) {
+            this.refillRequestId = refillRequestId;
+            this.success = success;
+            this.message = message;
+        }
+    }
+
     public static class MedicineFillItem {
         private Long medicineId;
         private int quantity;
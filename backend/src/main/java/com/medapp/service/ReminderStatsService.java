@@ -0,0 +1,168 @@
+package com.medapp.service;
+
+import com.medapp.model.ReminderStatsDaily;
+import com.medapp.repository.RefillReminderRepository;
+import com.medapp.repository.ReminderStatsDailyRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains reminder_stats_daily so reminder statistics are a primary-key read
+ * instead of four COUNTs over refill_reminders.
+ *
+ * Changes are applied as deltas in the caller's transaction, so they commit or
+ * roll back with the reminders they describe. A day's row is created from live
+ * counts the first time it is needed, and today's and yesterday's rows are
+ * recounted nightly to correct any drift.
+ */
+@Service
+@Transactional
+public class ReminderStatsService {
+    private static final Logger logger = LoggerFactory.getLogger(ReminderStatsService.class);
+
+    @Autowired
+    private ReminderStatsDailyRepository statsRepository;
+
+    @Autowired
+    private RefillReminderRepository refillReminderRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Row creation commits on its own so concurrent creators cannot fail the caller's transaction
+    private TransactionTemplate newTransaction;
+
+    @PostConstruct
+    void init() {
+        newTransaction = new TransactionTemplate(transactionManager);
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * A reminder was created today for reminderDate
+     */
+    public void recordCreated(LocalDate reminderDate, boolean enabled) {
+        LocalDate today = LocalDate.now();
+        int enabledDelta = enabled ? 1 : 0;
+        if (reminderDate.equals(today)) {
+            apply(today, 1, enabledDelta, enabledDelta, 0, 1);
+        } else {
+            apply(today, 1, enabledDelta, 0, 0, 1);
+            if (enabled) {
+                apply(reminderDate, 0, 0, 1, 0, 0);
+            }
+        }
+    }
+
+    /**
+     * Reminders were enabled (positive) or disabled (negative); dueByDate holds the
+     * change in enabled, unsent reminders per reminder date
+     */
+    public void recordEnabledChanged(int enabledDelta, Map<LocalDate, Integer> dueByDate) {
+        if (enabledDelta != 0) {
+            apply(LocalDate.now(), 0, enabledDelta, 0, 0, 0);
+        }
+        dueByDate.forEach((date, due) -> apply(date, 0, 0, due, 0, 0));
+    }
+
+    /**
+     * Reminders were sent today; sentByDate holds how many per reminder date
+     */
+    public void recordSent(Map<LocalDate, Integer> sentByDate) {
+        int sent = sentByDate.values().stream().mapToInt(Integer::intValue).sum();
+        if (sent == 0) {
+            return;
+        }
+        apply(LocalDate.now(), 0, 0, 0, sent, 0);
+        sentByDate.forEach((date, count) -> apply(date, 0, 0, -count, 0, 0));
+    }
+
+    private void apply(LocalDate date, long total, long enabled, long due, long sent, long created) {
+        // Check before updating: an UPDATE that misses would gap-lock the row we are about to insert
+        if (!statsRepository.existsById(date)) {
+            createRow(date);
+        }
+        statsRepository.increment(date, total, enabled, due, sent, created);
+    }
+
+    /**
+     * Today's counters; normally a single primary-key read
+     */
+    public ReminderStatsDaily getToday() {
+        LocalDate today = LocalDate.now();
+        return statsRepository.findById(today).orElseGet(() -> {
+            createRow(today);
+            return statsRepository.findById(today).orElseThrow();
+        });
+    }
+
+    /**
+     * Stored daily rows for trend charts; days without a row are simply absent
+     */
+    @Transactional(readOnly = true)
+    public List<ReminderStatsDaily> getRange(LocalDate from, LocalDate to) {
+        return statsRepository.findByStatDateBetweenOrderByStatDate(from, to);
+    }
+
+    @Scheduled(cron = "${app.reminders.stats-reconcile-cron:0 5 0 * * ?}")
+    public void reconcileNightly() {
+        LocalDate today = LocalDate.now();
+        reconcile(today.minusDays(1));
+        reconcile(today);
+    }
+
+    /**
+     * Overwrite one day's counters with live counts
+     */
+    public void reconcile(LocalDate date) {
+        ReminderStatsDaily row = statsRepository.findById(date).orElseGet(() -> new ReminderStatsDaily(date));
+        long before = row.getDueCount() + row.getSentCount() + row.getEnabledReminders();
+        fillFromLive(row);
+        statsRepository.save(row);
+        long after = row.getDueCount() + row.getSentCount() + row.getEnabledReminders();
+        if (before != after) {
+            logger.info("Reconciled reminder stats for {}; counters had drifted", date);
+        }
+    }
+
+    private void createRow(LocalDate date) {
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                if (!statsRepository.existsById(date)) {
+                    ReminderStatsDaily row = new ReminderStatsDaily(date);
+                    fillFromLive(row);
+                    statsRepository.saveAndFlush(row);
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another transaction created it first
+        }
+    }
+
+    private void fillFromLive(ReminderStatsDaily row) {
+        LocalDate date = row.getStatDate();
+        LocalDateTime start = date.atStartOfDay();
+        LocalDateTime end = date.atTime(LocalTime.MAX);
+        row.setTotalReminders(refillReminderRepository.count());
+        row.setEnabledReminders(refillReminderRepository.countByIsEnabled(true));
+        row.setDueCount(refillReminderRepository.countByReminderDateAndIsEnabledAndSmsSent(date, true, false));
+        row.setSentCount(refillReminderRepository.countBySmsSentAtBetween(start, end));
+        row.setCreatedCount(refillReminderRepository.countByCreatedAtBetween(start, end));
+        row.setReconciledAt(LocalDateTime.now());
+    }
+}
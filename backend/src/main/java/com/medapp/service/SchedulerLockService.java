@@ -0,0 +1,91 @@
+package com.medapp.service;
+
+import com.medapp.model.SchedulerLock;
+import com.medapp.repository.SchedulerLockRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * DB-backed leases so a scheduled job runs on one node at a time when several
+ * instances share the database. Every call commits on its own, independent of
+ * any transaction the caller has open.
+ */
+@Service
+public class SchedulerLockService {
+    private static final Logger logger = LoggerFactory.getLogger(SchedulerLockService.class);
+
+    @Autowired
+    private SchedulerLockRepository lockRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaction;
+    private String nodeId;
+
+    @PostConstruct
+    void init() {
+        transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        // Host plus a per-process suffix, so two instances on one host are distinct owners
+        nodeId = host + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Take or extend the named lease for the given duration; false if another node holds it
+     */
+    public boolean tryAcquire(String name, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime until = now.plus(lease);
+        Integer updated = transaction.execute(status -> lockRepository.acquire(name, nodeId, now, until));
+        if (updated != null && updated > 0) {
+            return true;
+        }
+        // First use of this lock name: create the row; a concurrent creator wins and we back off
+        try {
+            Boolean created = transaction.execute(status -> {
+                if (lockRepository.existsById(name)) {
+                    return false;
+                }
+                lockRepository.saveAndFlush(new SchedulerLock(name, nodeId, now, until));
+                return true;
+            });
+            return Boolean.TRUE.equals(created);
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Give the lease up early so another node can run without waiting for it to expire
+     */
+    public void release(String name) {
+        try {
+            transaction.executeWithoutResult(status -> lockRepository.release(name, nodeId, LocalDateTime.now()));
+        } catch (Exception e) {
+            logger.warn("Could not release scheduler lock {}: {}", name, e.getMessage());
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,207 @@
+package com.medapp.service;
+
+import com.medapp.exception.NotificationDeliveryException;
+import com.medapp.exception.SmsRecipientRejectedException;
+import com.medapp.model.NotificationOutbox;
+import com.medapp.repository.NotificationOutboxRepository;
+import com.medapp.repository.RefillReminderRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends outbox SMS rows as multi-recipient MSG91 flow requests instead of one
+ * request per phone number.
+ *
+ * The outbox table is the buffer: the worker only claims SMS rows once
+ * batch-size of them are due or the oldest due row has waited batch-window-ms,
+ * so a reminder run committing chunk after chunk goes out in a few large
+ * requests. Claimed rows are grouped by template (notification type) and each
+ * group is sent as one request of up to batch-size recipients. Outcomes are
+ * returned per row and, for refill reminders, written back to the
+ * RefillReminder the SMS was about.
+ */
+@Service
+public class SmsBatchDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(SmsBatchDispatcher.class);
+
+    // refill_reminders.sms_message is a VARCHAR(255)
+    private static final int MAX_REMINDER_MESSAGE_LENGTH = 255;
+
+    @Autowired
+    private SmsService smsService;
+
+    @Autowired
+    private NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    private RefillReminderRepository refillReminderRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.notifications.sms.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.notifications.sms.batch-window-ms:2000}")
+    private long batchWindowMs;
+
+    private TransactionTemplate transaction;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder recipientsSent = new LongAdder();
+    private final LongAdder recipientsFailed = new LongAdder();
+    private final LongAdder splitBatches = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * When the due SMS rows should be claimed: now if a full batch is waiting or the
+     * oldest has waited out the window, otherwise when it will have; null if none are due
+     */
+    public LocalDateTime nextFlushAt(LocalDateTime now) {
+        List<Object[]> summary = outboxRepository.summarizeDue(NotificationOutbox.Channel.SMS, now);
+        if (summary.isEmpty() || summary.get(0)[1] == null) {
+            return null;
+        }
+        long due = ((Number) summary.get(0)[0]).longValue();
+        LocalDateTime oldestDueAt = (LocalDateTime) summary.get(0)[1];
+        if (due >= batchSize) {
+            return now;
+        }
+        LocalDateTime windowEnd = oldestDueAt.plusNanos(batchWindowMs * 1_000_000L);
+        return windowEnd.isAfter(now) ? windowEnd : now;
+    }
+
+    /**
+     * Send claimed SMS rows. Returns one entry per row, in order: null if MSG91
+     * accepted it, otherwise why not.
+     */
+    public List<NotificationDeliveryException> dispatch(List<NotificationOutbox> rows) {
+        NotificationDeliveryException[] results = new NotificationDeliveryException[rows.size()];
+        String[] outcomes = new String[rows.size()];
+
+        Map<String, List<Integer>> byTemplate = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            NotificationOutbox row = rows.get(i);
+            if (!SmsService.isValidNumber(row.getRecipient())) {
+                results[i] = new NotificationDeliveryException("Invalid mobile number: " + row.getRecipient(), false);
+                continue;
+            }
+            byTemplate.computeIfAbsent(row.getNotificationType(), type -> new ArrayList<>()).add(i);
+        }
+        byTemplate.forEach((type, indexes) -> {
+            for (int from = 0; from < indexes.size(); from += batchSize) {
+                sendGroup(rows, indexes.subList(from, Math.min(from + batchSize, indexes.size())), results, outcomes);
+            }
+        });
+
+        for (int i = 0; i < rows.size(); i++) {
+            if (results[i] == null) {
+                recipientsSent.increment();
+            } else {
+                recipientsFailed.increment();
+                outcomes[i] = "Refill reminder SMS failed: " + results[i].getMessage();
+            }
+        }
+        recordReminderOutcomes(rows, outcomes);
+        return Arrays.asList(results);
+    }
+
+    private void sendGroup(List<NotificationOutbox> rows, List<Integer> indexes,
+                           NotificationDeliveryException[] results, String[] outcomes) {
+        List<SmsService.Recipient> recipients = new ArrayList<>(indexes.size());
+        for (int i : indexes) {
+            recipients.add(new SmsService.Recipient(rows.get(i).getRecipient(), rows.get(i).getBody()));
+        }
+        try {
+            requests.increment();
+            String requestId = smsService.deliverBatch(recipients);
+            for (int i : indexes) {
+                outcomes[i] = "Refill reminder SMS accepted by MSG91 (request " + requestId + ")";
+            }
+        } catch (NotificationDeliveryException e) {
+            // Auth, flow and provider errors would fail every recipient again
+            if (!(e instanceof SmsRecipientRejectedException) || indexes.size() == 1) {
+                for (int i : indexes) {
+                    results[i] = e;
+                }
+                return;
+            }
+            // Rejected as a whole over a recipient; send singly so only that one fails
+            splitBatches.increment();
+            logger.warn("MSG91 rejected an SMS batch of {}, sending individually: {}", indexes.size(), e.getMessage());
+            for (int i : indexes) {
+                try {
+                    requests.increment();
+                    smsService.deliver(rows.get(i).getRecipient(), rows.get(i).getBody());
+                    outcomes[i] = "Refill reminder SMS accepted by MSG91";
+                } catch (NotificationDeliveryException single) {
+                    results[i] = single;
+                }
+            }
+        }
+    }
+
+    /**
+     * One UPDATE per distinct outcome, covering every reminder that shares it
+     */
+    private void recordReminderOutcomes(List<NotificationOutbox> rows, String[] outcomes) {
+        Map<String, List<Long>> remindersByOutcome = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            NotificationOutbox row = rows.get(i);
+            if (row.getReferenceId() == null
+                    || !NotificationOutboxService.TYPE_REFILL_REMINDER.equals(row.getNotificationType())) {
+                continue;
+            }
+            String outcome = outcomes[i].length() > MAX_REMINDER_MESSAGE_LENGTH
+                    ? outcomes[i].substring(0, MAX_REMINDER_MESSAGE_LENGTH) : outcomes[i];
+            remindersByOutcome.computeIfAbsent(outcome, o -> new ArrayList<>()).add(row.getReferenceId());
+        }
+        if (remindersByOutcome.isEmpty()) {
+            return;
+        }
+        try {
+            transaction.executeWithoutResult(status -> remindersByOutcome.forEach(
+                    (outcome, ids) -> refillReminderRepository.updateSmsMessageByIdIn(ids, outcome)));
+        } catch (Exception e) {
+            // The outbox row is the record of delivery; the reminder note is informational
+            logger.warn("Could not record SMS outcomes on {} refill reminder(s): {}",
+                    remindersByOutcome.values().stream().mapToInt(List::size).sum(), e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long requestCount = requests.sum();
+        long sentCount = recipientsSent.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batchSize", batchSize);
+        stats.put("batchWindowMs", batchWindowMs);
+        stats.put("requests", requestCount);
+        stats.put("recipientsSent", sentCount);
+        stats.put("recipientsFailed", recipientsFailed.sum());
+        stats.put("splitBatches", splitBatches.sum());
+        stats.put("recipientsPerRequest", requestCount == 0 ? 0.0 : (double) (sentCount + recipientsFailed.sum()) / requestCount);
+        return stats;
+    }
+}
@@ -1,17 +1,29 @@
 package com.medapp.service;
 
+import com.medapp.exception.NotificationDeliveryException;
+import com.medapp.exception.SmsRecipientRejectedException;
+import com.medapp.model.FilledMedicine;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 @Service
 public class SmsService {
@@ -29,7 +41,17 @@ public class SmsService {
     @Value("${msg91.api.url:https://api.msg91.com/api/v5/flow/}")
     private String msg91ApiUrl;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
+    private final CircuitBreaker circuitBreaker;
+    private final NotificationTemplates templates;
+
+    public SmsService(@Qualifier("smsRestTemplate") RestTemplate restTemplate,
+                      @Qualifier("smsCircuitBreaker") CircuitBreaker circuitBreaker,
+                      NotificationTemplates templates) {
+        this.restTemplate = restTemplate;
+        this.circuitBreaker = circuitBreaker;
+        this.templates = templates;
+    }
 
     /**
      * Send SMS using MSG91 API
@@ -44,72 +66,151 @@ public class SmsService {
         }
 
         try {
-            // Prepare the request body for MSG91 API
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("flow_id", templateId);
-            requestBody.put("sender", senderId);
-            requestBody.put("mobiles", phoneNumber);
-            
-            // Add variables if using template
-            Map<String, String> variables = new HashMap<>();
-            variables.put("message", message);
-            requestBody.put("VAR1", message);
-
-            // Set headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("authkey", msg91ApiKey);
-
-            // Create HTTP entity
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-
-            // Make API call
-            ResponseEntity<Map> response = restTemplate.postForEntity(msg91ApiUrl, entity, Map.class);
-
-            if (response.getStatusCode().is2xxSuccessful()) {
-                Map<String, Object> responseBody = response.getBody();
-                if (responseBody != null && "1".equals(responseBody.get("type"))) {
-                    logger.info("SMS sent successfully to {}: {}", phoneNumber, message);
-                    return true;
-                } else {
-                    logger.error("MSG91 API returned error: {}", responseBody);
-                    return false;
-                }
-            } else {
-                logger.error("Failed to send SMS. HTTP Status: {}", response.getStatusCode());
-                return false;
-            }
-
+            deliver(phoneNumber, message);
+            return true;
         } catch (Exception e) {
             logger.error("Error sending SMS to {}: {}", phoneNumber, e.getMessage(), e);
             return false;
         }
     }
 
+    /**
+     * Send one SMS or throw; used by the notification outbox, which decides
+     * whether to retry from the exception
+     */
+    public void deliver(String phoneNumber, String message) {
+        if (!isConfigured()) {
+            throw new NotificationDeliveryException("MSG91 API key not configured", false);
+        }
+
+        // Prepare the request body for MSG91 API
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("flow_id", templateId);
+        requestBody.put("sender", senderId);
+        requestBody.put("mobiles", phoneNumber);
+        requestBody.put("VAR1", message);
+
+        postFlow(requestBody);
+        logger.info("SMS sent successfully to {}: {}", phoneNumber, message);
+    }
+
+    /**
+     * Send one flow request to many recipients, each with its own message. MSG91
+     * accepts or rejects the request as a whole; returns its request id.
+     */
+    public String deliverBatch(List<Recipient> recipients) {
+        if (!isConfigured()) {
+            throw new NotificationDeliveryException("MSG91 API key not configured", false);
+        }
+
+        List<Map<String, String>> entries = new ArrayList<>(recipients.size());
+        for (Recipient recipient : recipients) {
+            Map<String, String> entry = new HashMap<>();
+            entry.put("mobiles", recipient.phoneNumber);
+            entry.put("VAR1", recipient.message);
+            entries.add(entry);
+        }
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("flow_id", templateId);
+        requestBody.put("sender", senderId);
+        requestBody.put("recipients", entries);
+
+        Object requestId = postFlow(requestBody).get("message");
+        logger.info("SMS batch of {} accepted by MSG91, request {}", recipients.size(), requestId);
+        return requestId == null ? null : requestId.toString();
+    }
+
+    /**
+     * Whether an MSG91 error reply is about the request as a whole (authkey, flow or
+     * sender), which every recipient of it would hit again
+     */
+    private static boolean isRequestLevelError(String responseBody) {
+        String body = responseBody == null ? "" : responseBody.toLowerCase(Locale.ROOT);
+        return body.contains("auth") || body.contains("flow") || body.contains("template") || body.contains("sender");
+    }
+
+    /**
+     * A mobile number MSG91 can deliver to: 10 to 15 digits, optionally after a leading +
+     */
+    public static boolean isValidNumber(String phoneNumber) {
+        if (phoneNumber == null) {
+            return false;
+        }
+        String digits = phoneNumber.startsWith("+") ? phoneNumber.substring(1) : phoneNumber;
+        return digits.length() >= 10 && digits.length() <= 15 && digits.chars().allMatch(Character::isDigit);
+    }
+
+    /**
+     * POST one request to the MSG91 flow API through the circuit breaker. Timeouts,
+     * connection errors and 5xx responses count against the provider; a 4xx or an
+     * error reply about the request itself does not. A 400 that is not about the
+     * authkey, flow or sender is reported as SmsRecipientRejectedException.
+     */
+    Map<String, Object> postFlow(Map<String, Object> requestBody) {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new NotificationDeliveryException("MSG91 circuit breaker is open; not calling the provider", true);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("authkey", msg91ApiKey);
+        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+
+        long start = System.nanoTime();
+        ResponseEntity<Map> response;
+        try {
+            response = restTemplate.postForEntity(msg91ApiUrl, entity, Map.class);
+        } catch (HttpClientErrorException e) {
+            circuitBreaker.onSuccess(System.nanoTime() - start);
+            if (e.getStatusCode().value() == 400 && !isRequestLevelError(e.getResponseBodyAsString())) {
+                throw new SmsRecipientRejectedException("MSG91 rejected a recipient: " + e.getResponseBodyAsString(), e);
+            }
+            throw new NotificationDeliveryException("MSG91 rejected the request. HTTP Status: " + e.getStatusCode(),
+                e.getStatusCode().value() == 429, e);
+        } catch (RestClientException e) {
+            circuitBreaker.onFailure(System.nanoTime() - start);
+            throw new NotificationDeliveryException("MSG91 call failed: " + e.getMessage(), true, e);
+        } catch (CancellationException e) {
+            // The JDK client's read timeout can surface as the cancelled exchange rather than an HttpTimeoutException
+            circuitBreaker.onFailure(System.nanoTime() - start);
+            throw new NotificationDeliveryException("MSG91 call timed out", true, e);
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure(System.nanoTime() - start);
+            throw e;
+        }
+        circuitBreaker.onSuccess(System.nanoTime() - start);
+
+        Map<String, Object> responseBody = response.getBody();
+        if (responseBody == null || !"success".equals(responseBody.get("type")) && !"1".equals(responseBody.get("type"))) {
+            throw new NotificationDeliveryException("MSG91 API returned error: " + responseBody, true);
+        }
+        return responseBody;
+    }
+
     /**
      * Send refill reminder SMS
      * @param phoneNumber Patient's phone number
      * @param patientName Patient's name
      * @param prescriptionId Prescription ID
      * @param refillDate Refill date
-     * @param medicineList List of medicines running low
+     * @param medicines Medicines running low
      * @param refillLink Link to request refill
      * @return true if SMS was sent successfully
      */
-    public boolean sendRefillReminderSms(String phoneNumber, String patientName, String prescriptionId, 
-                                       String refillDate, String medicineList, String refillLink) {
-        String message = String.format(
-            "Hello %s,  " +
-            "Your medicines for Prescription #%s are running low.  " +
-            "Refill Before: %s  " +
-            "Running Low Medicines:  " +
-            "%s  " +
-            "Click here to request refill: %s  " +
-            "- ReMedGo Pharmacy",
-            patientName, prescriptionId, refillDate, medicineList, refillLink
-        );
-        
-        return sendSms(phoneNumber, message);
+    public boolean sendRefillReminderSms(String phoneNumber, String patientName, Long prescriptionId,
+                                       LocalDate refillDate, List<FilledMedicine> medicines, String refillLink) {
+        return sendSms(phoneNumber, refillReminderText(patientName, prescriptionId, refillDate, medicines, refillLink));
+    }
+
+    public String refillReminderText(String patientName, Long prescriptionId, LocalDate refillDate,
+                                     List<FilledMedicine> medicines, String refillLink) {
+        TemplateParams params = new TemplateParams()
+            .set(TemplateKey.PATIENT_NAME, patientName)
+            .set(TemplateKey.PRESCRIPTION_ID, prescriptionId)
+            .set(TemplateKey.REFILL_DATE, refillDate)
+            .set(TemplateKey.MEDICINES, NotificationTemplates.medicineItems(medicines))
+            .set(TemplateKey.REFILL_LINK, refillLink);
+        return templates.render("sms-refill-reminder", params).text;
     }
 
     /**
@@ -117,35 +218,18 @@ public class SmsService {
      * @param phoneNumber Patient's phone number
      * @param patientName Patient's name
      * @param prescriptionId Prescription ID
-     * @param medicineList List of medicines with quantities
+     * @param medicines Medicines with quantities
      * @param refillDate Refill reminder date (or "Reminders disabled")
      * @return true if SMS was sent successfully
      */
-    public boolean sendMedicineFilledSms(String phoneNumber, String patientName, String prescriptionId, 
-                                       String medicineList, String refillDate) {
-        String message;
-        if ("Reminders disabled".equals(refillDate)) {
-            message = String.format(
-                "Hello %s,  " +
-                "Your medicines for Prescription #%s have been filled.  " +
-                "Medicines:  " +
-                "%s  " +
-                "- ReMedGo Pharmacy",
-                patientName, prescriptionId, medicineList
-            );
-        } else {
-            message = String.format(
-                "Hello %s,  " +
-                "Your medicines for Prescription #%s have been filled.  " +
-                "Medicines:  " +
-                "%s  " +
-                "Refill Reminder Date: %s  " +
-                "- ReMedGo Pharmacy",
-                patientName, prescriptionId, medicineList, refillDate
-            );
-        }
-        
-        return sendSms(phoneNumber, message);
+    public boolean sendMedicineFilledSms(String phoneNumber, String patientName, Long prescriptionId,
+                                       List<FilledMedicine> medicines, String refillDate) {
+        TemplateParams params = new TemplateParams()
+            .set(TemplateKey.PATIENT_NAME, patientName)
+            .set(TemplateKey.PRESCRIPTION_ID, prescriptionId)
+            .set(TemplateKey.MEDICINES, NotificationTemplates.medicineItems(medicines))
+            .set(TemplateKey.REFILL_NOTE, "Reminders disabled".equals(refillDate) ? null : refillDate);
+        return sendSms(phoneNumber, templates.render("sms-medicine-filled", params).text);
     }
 
     /**
@@ -155,15 +239,11 @@ public class SmsService {
      * @param prescriptionId Prescription ID
      * @return true if SMS was sent successfully
      */
-    public boolean sendMedicineDispatchedSms(String phoneNumber, String patientName, String prescriptionId) {
-        String message = String.format(
-            "Hi %s, your prescription #%s has been dispatched and is on its way to you. " +
-            "You will receive it soon. " +
-            "Reply STOP to unsubscribe.",
-            patientName, prescriptionId
-        );
-        
-        return sendSms(phoneNumber, message);
+    public boolean sendMedicineDispatchedSms(String phoneNumber, String patientName, Long prescriptionId) {
+        TemplateParams params = new TemplateParams()
+            .set(TemplateKey.PATIENT_NAME, patientName)
+            .set(TemplateKey.PRESCRIPTION_ID, prescriptionId);
+        return sendSms(phoneNumber, templates.render("sms-medicine-dispatched", params).text);
     }
 
     /**
@@ -173,4 +253,21 @@ public class SmsService {
     public boolean isConfigured() {
         return msg91ApiKey != null && !msg91ApiKey.trim().isEmpty();
     }
+
+    public static class Recipient {
+        public final String phoneNumber;
+        public final String message;
+
+        public Recipient(String phoneNumber, String message) {
+            this.phoneNumber = phoneNumber;
+            this.message = message;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("configured", isConfigured());
+        stats.put("circuitBreaker", circuitBreaker.getStats());
+        return stats;
+    }
 }
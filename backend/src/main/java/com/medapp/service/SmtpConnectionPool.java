@@ -0,0 +1,307 @@
+package com.medapp.service;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps up to maxConnections connected, authenticated SMTP transports and
+ * reuses them across messages, so the TCP + STARTTLS + AUTH handshake is paid
+ * once per connection rather than once per email.
+ *
+ * At most maxConnections bulk sends (the outbox workers) run at a time; callers
+ * wait up to acquireTimeoutMs for a free connection. reservedConnections more
+ * are kept for interactive sends (account emails sent on a request thread),
+ * which never queue behind bulk batches and give up after
+ * interactiveAcquireTimeoutMs. Connections idle for longer than
+ * maxIdleMillis, or that have sent maxMessagesPerConnection messages, are
+ * closed and replaced, and one that fails mid-send is discarded and the message
+ * retried once on a fresh connection.
+ */
+public class SmtpConnectionPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SmtpConnectionPool.class);
+
+    // A connection used this recently is assumed alive without a NOOP round trip
+    private static final long VALIDATE_AFTER_IDLE_MS = 1000;
+
+    private final Session session;
+    private final String protocol;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final int maxConnections;
+    private final long maxIdleMillis;
+    private final int maxMessagesPerConnection;
+    private final long acquireTimeoutMs;
+    private final int reservedConnections;
+    private final long interactiveAcquireTimeoutMs;
+
+    // Every connection in use holds a permit; bulk sends also hold a bulk permit, so they never take the reserve
+    private final Semaphore permits;
+    private final Semaphore bulkPermits;
+    // Most recently returned first, so a light load keeps reusing the same warm connections
+    private final ConcurrentLinkedDeque<PooledTransport> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder interactiveBorrows = new LongAdder();
+
+    public SmtpConnectionPool(Session session, String protocol, String host, int port, String username, String password,
+                              int maxConnections, long maxIdleMillis, int maxMessagesPerConnection, long acquireTimeoutMs) {
+        this(session, protocol, host, port, username, password, maxConnections, maxIdleMillis, maxMessagesPerConnection,
+                acquireTimeoutMs, 0, acquireTimeoutMs);
+    }
+
+    public SmtpConnectionPool(Session session, String protocol, String host, int port, String username, String password,
+                              int maxConnections, long maxIdleMillis, int maxMessagesPerConnection, long acquireTimeoutMs,
+                              int reservedConnections, long interactiveAcquireTimeoutMs) {
+        this.session = session;
+        this.protocol = protocol;
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.maxConnections = maxConnections;
+        this.maxIdleMillis = maxIdleMillis;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.reservedConnections = reservedConnections;
+        this.interactiveAcquireTimeoutMs = interactiveAcquireTimeoutMs;
+        this.permits = new Semaphore(maxConnections + reservedConnections, true);
+        this.bulkPermits = new Semaphore(maxConnections, true);
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public void send(Message message) throws MessagingException {
+        MessagingException failure = sendAll(List.of(message)).get(0);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Send messages over one connection, in order. Returns one entry per message:
+     * null if it was accepted, otherwise why not. Only a failure to get a
+     * connection at all is thrown.
+     */
+    public List<MessagingException> sendAll(List<? extends Message> messages) throws MessagingException {
+        return sendAll(messages, false);
+    }
+
+    /**
+     * Like sendAll, but may use the reserved connections; for emails a user is waiting on
+     */
+    public List<MessagingException> sendAllInteractive(List<? extends Message> messages) throws MessagingException {
+        return sendAll(messages, true);
+    }
+
+    private List<MessagingException> sendAll(List<? extends Message> messages, boolean interactive) throws MessagingException {
+        List<MessagingException> results = new ArrayList<>(messages.size());
+        PooledTransport connection = borrow(interactive);
+        try {
+            for (Message message : messages) {
+                connection = sendOne(connection, message, results);
+            }
+        } finally {
+            giveBack(connection, interactive);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the connection to continue with: the same one, a replacement, or null if none could be opened
+     */
+    private PooledTransport sendOne(PooledTransport connection, Message message, List<MessagingException> results) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (connection != null && connection.messages >= maxMessagesPerConnection) {
+                    discard(connection);
+                    connection = null;
+                }
+                if (connection == null) {
+                    connection = open();
+                }
+                message.saveChanges();
+                connection.transport.sendMessage(message, message.getAllRecipients());
+                connection.messages++;
+                sent.increment();
+                results.add(null);
+                return connection;
+            } catch (MessagingException e) {
+                if (isReply(e) && connection != null && connection.transport.isConnected()) {
+                    // The server answered (e.g. rejected a recipient); the connection itself is fine
+                    failed.increment();
+                    results.add(e);
+                    return connection;
+                }
+                // No reply (e.g. SMTPSendFailedException [EOF] from a dropped session): the connection is dead
+                if (connection != null) {
+                    discard(connection);
+                    connection = null;
+                }
+                if (attempt > 0 || closed) {
+                    failed.increment();
+                    results.add(e);
+                    return null;
+                }
+                logger.debug("SMTP send failed on a pooled connection, retrying on a new one: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A rejection the server actually sent, as opposed to a failure with no SMTP reply code
+     */
+    private static boolean isReply(MessagingException e) {
+        if (e instanceof SMTPSendFailedException f) {
+            return f.getReturnCode() > 0;
+        }
+        // Per-recipient rejections are chained behind a plain SendFailedException
+        return e instanceof SendFailedException && e.getNextException() instanceof SMTPAddressFailedException f
+                && f.getReturnCode() > 0;
+    }
+
+    private PooledTransport borrow(boolean interactive) throws MessagingException {
+        if (closed) {
+            throw new MessagingException("SMTP connection pool is closed");
+        }
+        long start = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(interactive ? interactiveAcquireTimeoutMs : acquireTimeoutMs);
+        try {
+            if (!interactive && !bulkPermits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new MessagingException("Timed out waiting for a free SMTP connection");
+            }
+            long remaining = timeoutNanos - (System.nanoTime() - start);
+            if (!permits.tryAcquire(Math.max(remaining, 0), TimeUnit.NANOSECONDS)) {
+                if (!interactive) {
+                    bulkPermits.release();
+                }
+                throw new MessagingException("Timed out waiting for a free SMTP connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted waiting for an SMTP connection", e);
+        }
+        waitNanos.add(System.nanoTime() - start);
+        borrows.increment();
+        if (interactive) {
+            interactiveBorrows.increment();
+        }
+        try {
+            PooledTransport connection;
+            while ((connection = idle.pollFirst()) != null) {
+                long idleMs = System.currentTimeMillis() - connection.lastUsed;
+                if (idleMs > maxIdleMillis || connection.messages >= maxMessagesPerConnection
+                        || (idleMs > VALIDATE_AFTER_IDLE_MS && !connection.transport.isConnected())) {
+                    discard(connection);
+                    continue;
+                }
+                return connection;
+            }
+            return open();
+        } catch (MessagingException | RuntimeException e) {
+            releasePermits(interactive);
+            throw e;
+        }
+    }
+
+    private void releasePermits(boolean interactive) {
+        permits.release();
+        if (!interactive) {
+            bulkPermits.release();
+        }
+    }
+
+    /**
+     * Keep a healthy connection for reuse and free the permit (connection may be null after a failure)
+     */
+    private void giveBack(PooledTransport connection, boolean interactive) {
+        try {
+            if (connection != null) {
+                if (closed) {
+                    discard(connection);
+                } else {
+                    connection.lastUsed = System.currentTimeMillis();
+                    idle.offerFirst(connection);
+                }
+            }
+        } finally {
+            releasePermits(interactive);
+        }
+    }
+
+    private PooledTransport open() throws MessagingException {
+        Transport transport = session.getTransport(protocol);
+        transport.connect(host, port, username, password);
+        opened.increment();
+        return new PooledTransport(transport);
+    }
+
+    private void discard(PooledTransport connection) {
+        discarded.increment();
+        try {
+            connection.transport.close();
+        } catch (MessagingException e) {
+            // Already broken; nothing to clean up
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledTransport connection;
+        while ((connection = idle.pollFirst()) != null) {
+            discard(connection);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long borrowCount = borrows.sum();
+        stats.put("maxConnections", maxConnections);
+        stats.put("reservedForInteractive", reservedConnections);
+        stats.put("inUse", maxConnections + reservedConnections - permits.availablePermits());
+        stats.put("idle", idle.size());
+        stats.put("opened", opened.sum());
+        stats.put("discarded", discarded.sum());
+        stats.put("sent", sent.sum());
+        stats.put("failed", failed.sum());
+        stats.put("interactiveBorrows", interactiveBorrows.sum());
+        stats.put("averageWaitMs", borrowCount == 0 ? 0.0 : waitNanos.sum() / 1_000_000.0 / borrowCount);
+        return stats;
+    }
+
+    private static class PooledTransport {
+        final Transport transport;
+        int messages;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
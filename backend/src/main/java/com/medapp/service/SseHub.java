@@ -0,0 +1,279 @@
+package com.medapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fan-out of server-sent events to every open connection registered under a key
+ * (a user id for chat, a prescription id for tracking).
+ *
+ * Each connection owns a bounded send queue that is drained on a shared executor,
+ * so publishers never block on a slow client. If the executor is saturated the
+ * drain is rejected and the connection is left lagging: its events stay queued
+ * and the next publish or heartbeat tries again. A connection whose queue
+ * overflows is closed and the client is expected to reconnect.
+ */
+public class SseHub<K> {
+    private static final Logger logger = LoggerFactory.getLogger(SseHub.class);
+
+    private final String name;
+    private final int queueCapacity;
+    private final Executor executor;
+    private final ObjectMapper objectMapper;
+
+    private final Map<K, Set<Connection>> connections = new ConcurrentHashMap<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder overflowClosed = new LongAdder();
+    private final LongAdder drainsRejected = new LongAdder();
+    private final LongAdder closedConnections = new LongAdder();
+
+    public SseHub(String name, int queueCapacity, Executor executor, ObjectMapper objectMapper) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.executor = executor;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Open a new connection under the given key. A timeout of 0 keeps it open until
+     * the client goes away.
+     */
+    public SseEmitter subscribe(K key, long timeoutMillis) {
+        return subscribe(key, timeoutMillis, List.of());
+    }
+
+    /**
+     * Open a new connection whose queue starts with the given events (e.g. a replay
+     * of what the client missed). The connection only becomes visible to publish()
+     * once they are queued, so a caller that serializes publish and subscribe for a
+     * key gets no gaps and no reordering.
+     */
+    public SseEmitter subscribe(K key, long timeoutMillis, List<Event> initialEvents) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Connection connection = new Connection(key, emitter);
+        emitter.onCompletion(connection::detach);
+        emitter.onTimeout(connection::detach);
+        emitter.onError(e -> connection.detach());
+        // First write flushes the response headers so the client sees the stream open
+        connection.offer(SseEmitter.event().comment("connected").build());
+        for (Event event : initialEvents) {
+            Set<ResponseBodyEmitter.DataWithMediaType> built = buildEvent(event.name, event.id, event.payload);
+            if (built != null) {
+                connection.offer(built);
+            }
+        }
+        if (!connection.closed.get()) {
+            connections.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(connection);
+        }
+        logger.debug("[{}] connection opened for {} with {} initial events", name, key, initialEvents.size());
+        return emitter;
+    }
+
+    /**
+     * Queue an event for every connection under the key. The payload is serialized
+     * once and shared across connections. Returns the number of connections reached.
+     */
+    public int publish(K key, String eventName, String eventId, Object payload) {
+        Set<Connection> targets = connections.get(key);
+        if (targets == null || targets.isEmpty()) {
+            return 0;
+        }
+        Set<ResponseBodyEmitter.DataWithMediaType> event = buildEvent(eventName, eventId, payload);
+        if (event == null) {
+            return 0;
+        }
+        published.increment();
+        int reached = 0;
+        for (Connection connection : targets) {
+            if (connection.offer(event)) {
+                reached++;
+            }
+        }
+        return reached;
+    }
+
+    private Set<ResponseBodyEmitter.DataWithMediaType> buildEvent(String eventName, String eventId, Object payload) {
+        try {
+            SseEmitter.SseEventBuilder builder = SseEmitter.event().name(eventName)
+                    .data(objectMapper.writeValueAsString(payload));
+            if (eventId != null) {
+                builder.id(eventId);
+            }
+            return builder.build();
+        } catch (JsonProcessingException e) {
+            logger.error("[{}] could not serialize {} event: {}", name, eventName, e.getMessage());
+            return null;
+        }
+    }
+
+    public boolean hasSubscribers(K key) {
+        Set<Connection> targets = connections.get(key);
+        return targets != null && !targets.isEmpty();
+    }
+
+    /**
+     * Send a comment line on every connection. Writes to a dead socket fail, which
+     * is what lets connections abandoned without a clean close get reaped.
+     */
+    public void heartbeat() {
+        Set<ResponseBodyEmitter.DataWithMediaType> ping = SseEmitter.event().comment("ping").build();
+        for (Set<Connection> targets : connections.values()) {
+            for (Connection connection : targets) {
+                connection.offer(ping);
+            }
+        }
+        reap();
+    }
+
+    /**
+     * Drop closed connections and empty keys
+     */
+    public void reap() {
+        connections.forEach((key, targets) -> {
+            targets.removeIf(connection -> connection.closed.get());
+            if (targets.isEmpty()) {
+                connections.remove(key, targets);
+            }
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        int open = 0;
+        long queued = 0;
+        for (Set<Connection> targets : connections.values()) {
+            open += targets.size();
+            for (Connection connection : targets) {
+                queued += connection.queue.size();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("keys", connections.size());
+        stats.put("connections", open);
+        stats.put("queuedEvents", queued);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("published", published.sum());
+        stats.put("delivered", delivered.sum());
+        stats.put("overflowClosed", overflowClosed.sum());
+        stats.put("drainsRejected", drainsRejected.sum());
+        stats.put("closed", closedConnections.sum());
+        return stats;
+    }
+
+    /**
+     * A named event with an optional SSE id, for initial replay
+     */
+    public static class Event {
+        private final String name;
+        private final String id;
+        private final Object payload;
+
+        public Event(String name, String id, Object payload) {
+            this.name = name;
+            this.id = id;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * One open stream with its own bounded queue and a single drain task at a time
+     */
+    private class Connection {
+        private final K key;
+        private final SseEmitter emitter;
+        private final Queue<Set<ResponseBodyEmitter.DataWithMediaType>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        Connection(K key, SseEmitter emitter) {
+            this.key = key;
+            this.emitter = emitter;
+        }
+
+        boolean offer(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+            if (closed.get()) {
+                return false;
+            }
+            if (!queue.offer(event)) {
+                // Client cannot keep up; cut it loose rather than buffer without bound
+                logger.warn("[{}] send queue full for {}, closing connection", name, key);
+                overflowClosed.increment();
+                close();
+                return false;
+            }
+            scheduleDrain();
+            return true;
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // Lagging: events stay queued until a later offer or heartbeat gets a drain scheduled
+                    draining.set(false);
+                    drainsRejected.increment();
+                    logger.debug("[{}] drain rejected for {}, {} event(s) waiting: {}", name, key, queue.size(), e.getMessage());
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Set<ResponseBodyEmitter.DataWithMediaType> event;
+                while (!closed.get() && (event = queue.poll()) != null) {
+                    emitter.send(event);
+                    delivered.increment();
+                }
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("[{}] connection for {} is gone: {}", name, key, e.getMessage());
+                close();
+            } finally {
+                draining.set(false);
+            }
+            // An event may have been queued after the last poll but before the flag was cleared
+            if (!closed.get() && !queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+
+        void close() {
+            if (detach()) {
+                try {
+                    emitter.complete();
+                } catch (Exception ignored) {}
+            }
+        }
+
+        boolean detach() {
+            if (!closed.compareAndSet(false, true)) {
+                return false;
+            }
+            queue.clear();
+            closedConnections.increment();
+            Set<Connection> targets = connections.get(key);
+            if (targets != null) {
+                targets.remove(this);
+            }
+            return true;
+        }
+    }
+}
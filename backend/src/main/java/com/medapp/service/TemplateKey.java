@@ -0,0 +1,104 @@
+package com.medapp.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A typed notification template variable. Each key owns a fixed slot, so
+ * templates resolve {{name}} to an array index once at startup and
+ * TemplateParams is a plain array rather than a map.
+ */
+public final class TemplateKey<T> {
+
+    enum Kind { TEXT, NUMBER, DATE, LIST }
+
+    private static final List<TemplateKey<?>> ALL = new ArrayList<>();
+    private static final Map<String, TemplateKey<?>> BY_NAME = new HashMap<>();
+
+    // Shared
+    public static final TemplateKey<String> PATIENT_NAME = text("patientName");
+    public static final TemplateKey<String> USER_NAME = text("userName");
+    public static final TemplateKey<String> EMAIL = text("email");
+    public static final TemplateKey<Long> PRESCRIPTION_ID = number("prescriptionId");
+    public static final TemplateKey<LocalDate> DATE = date("date");
+
+    // Refill workflow
+    public static final TemplateKey<LocalDate> REFILL_DATE = date("refillDate");
+    public static final TemplateKey<String> REFILL_NOTE = text("refillNote");
+    public static final TemplateKey<String> DELIVERY_ADDRESS = text("deliveryAddress");
+    public static final TemplateKey<String> REFILL_LINK = text("refillLink");
+    public static final TemplateKey<List<TemplateParams>> MEDICINES = list("medicines");
+    public static final TemplateKey<String> MEDICINE_NAME = text("medicineName");
+    public static final TemplateKey<Long> QUANTITY = number("quantity");
+    public static final TemplateKey<List<TemplateParams>> PRESCRIPTIONS = list("prescriptions");
+
+    // Digests: several notifications of one type merged into one email
+    public static final TemplateKey<Long> COUNT = number("count");
+    public static final TemplateKey<List<TemplateParams>> ITEMS = list("items");
+    public static final TemplateKey<String> ITEM = text("item");
+
+    // Account
+    public static final TemplateKey<String> RESET_LINK = text("resetLink");
+    public static final TemplateKey<String> REASON = text("reason");
+
+    private final String name;
+    private final int slot;
+    private final Kind kind;
+
+    private TemplateKey(String name, Kind kind) {
+        this.name = name;
+        this.kind = kind;
+        this.slot = ALL.size();
+        ALL.add(this);
+        BY_NAME.put(name, this);
+    }
+
+    private static TemplateKey<String> text(String name) {
+        return new TemplateKey<>(name, Kind.TEXT);
+    }
+
+    private static TemplateKey<Long> number(String name) {
+        return new TemplateKey<>(name, Kind.NUMBER);
+    }
+
+    private static TemplateKey<LocalDate> date(String name) {
+        return new TemplateKey<>(name, Kind.DATE);
+    }
+
+    private static TemplateKey<List<TemplateParams>> list(String name) {
+        return new TemplateKey<>(name, Kind.LIST);
+    }
+
+    static TemplateKey<?> byName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    static int count() {
+        return ALL.size();
+    }
+
+    static List<TemplateKey<?>> all() {
+        return Collections.unmodifiableList(ALL);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    int slot() {
+        return slot;
+    }
+
+    Kind kind() {
+        return kind;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,29 @@
+package com.medapp.service;
+
+/**
+ * Values for one render of a notification template, indexed by TemplateKey slot.
+ * Can be cleared and refilled to render many messages without reallocating.
+ */
+public final class TemplateParams {
+
+    private final Object[] values = new Object[TemplateKey.count()];
+
+    public <T> TemplateParams set(TemplateKey<T> key, T value) {
+        values[key.slot()] = value;
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(TemplateKey<T> key) {
+        return (T) values[key.slot()];
+    }
+
+    Object get(int slot) {
+        return values[slot];
+    }
+
+    public TemplateParams clear() {
+        java.util.Arrays.fill(values, null);
+        return this;
+    }
+}
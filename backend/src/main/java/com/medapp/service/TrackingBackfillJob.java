@@ -0,0 +1,134 @@
+package com.medapp.service;
+
+import com.medapp.model.Prescription;
+import com.medapp.model.PrescriptionTracking;
+import com.medapp.repository.PrescriptionRepository;
+import com.medapp.repository.PrescriptionTrackingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One-off migration that gives legacy prescriptions (created before tracking existed)
+ * an UPLOADED row, plus APPROVED when already approved, so timelines are never empty.
+ *
+ * Runs at startup in keyset chunks of chunk-size prescriptions, one transaction per
+ * chunk. Only prescriptions created before the run started are touched, so it never
+ * races the normal upload path; once everything is backfilled each run is a single
+ * empty query. With several instances starting together, only the holder of the
+ * scheduler_lock lease backfills (renewed after every chunk), since the
+ * untracked-prescription check is not atomic with the inserts. Disable with
+ * app.tracking.backfill.enabled=false.
+ */
+@Component
+public class TrackingBackfillJob implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(TrackingBackfillJob.class);
+
+    private static final String BACKFILL_LOCK = "tracking-backfill";
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private PrescriptionTrackingRepository trackingRepository;
+
+    @Autowired
+    private TrackingService trackingService;
+
+    @Autowired
+    private SchedulerLockService schedulerLockService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.tracking.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.tracking.backfill.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.tracking.backfill.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        Duration lease = Duration.ofSeconds(leaseSeconds);
+        if (!schedulerLockService.tryAcquire(BACKFILL_LOCK, lease)) {
+            logger.info("Tracking backfill skipped; another node holds the lease");
+            return;
+        }
+        try {
+            backfill(lease);
+        } finally {
+            schedulerLockService.release(BACKFILL_LOCK);
+        }
+    }
+
+    private void backfill(Duration lease) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long afterId = 0;
+        int prescriptions = 0;
+        int rows = 0;
+
+        while (true) {
+            List<Object[]> chunk = prescriptionRepository.findUntrackedAfter(afterId, startedAt, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            List<Long> ids = new ArrayList<>(chunk.size());
+            Integer inserted = transaction.execute(tx -> {
+                List<PrescriptionTracking> inserts = new ArrayList<>();
+                for (Object[] row : chunk) {
+                    Long id = (Long) row[0];
+                    Prescription.Status status = (Prescription.Status) row[1];
+                    LocalDateTime createdAt = (LocalDateTime) row[2];
+                    LocalDateTime updatedAt = (LocalDateTime) row[3];
+                    ids.add(id);
+                    inserts.add(backfillRow(id, PrescriptionTracking.Status.UPLOADED, createdAt));
+                    if (status == Prescription.Status.APPROVED) {
+                        inserts.add(backfillRow(id, PrescriptionTracking.Status.APPROVED, updatedAt != null ? updatedAt : createdAt));
+                    }
+                }
+                trackingRepository.saveAll(inserts);
+                return inserts.size();
+            });
+            trackingService.evictHistory(ids);
+
+            prescriptions += chunk.size();
+            rows += inserted != null ? inserted : 0;
+            afterId = ids.get(ids.size() - 1);
+            if (!schedulerLockService.tryAcquire(BACKFILL_LOCK, lease)) {
+                logger.warn("Lost the tracking backfill lease after {} prescriptions; stopping", prescriptions);
+                break;
+            }
+        }
+
+        if (prescriptions > 0) {
+            logger.info("Tracking backfill added {} rows for {} legacy prescriptions", rows, prescriptions);
+        }
+    }
+
+    private PrescriptionTracking backfillRow(Long prescriptionId, PrescriptionTracking.Status status, LocalDateTime at) {
+        PrescriptionTracking t = new PrescriptionTracking();
+        t.setPrescription(prescriptionRepository.getReferenceById(prescriptionId));
+        t.setStatus(status);
+        t.setCreatedAt(at);
+        return t;
+    }
+}
@@ -1,24 +1,90 @@
 package com.medapp.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.medapp.model.Prescription;
 import com.medapp.model.PrescriptionTracking;
 import com.medapp.repository.PrescriptionRepository;
+import com.medapp.repository.PrescriptionTrackingBatchWriter;
 import com.medapp.repository.PrescriptionTrackingRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class TrackingService {
+    public static final String EVENT_TRACKING = "tracking";
+    public static final String EVENT_RESYNC = "resync";
+
     @Autowired private PrescriptionRepository prescriptionRepository;
     @Autowired private PrescriptionTrackingRepository trackingRepository;
+    @Autowired private PrescriptionTrackingBatchWriter trackingBatchWriter;
+    @Autowired @Qualifier("sseExecutor") private Executor sseExecutor;
+    @Autowired private ObjectMapper objectMapper;
+
+    @Value("${app.sse.tracking.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${app.sse.tracking.replay.buffer-size:32}")
+    private int replayBufferSize;
 
-    private final Map<Long, SseEmitter> prescriptionEmitters = new ConcurrentHashMap<>();
+    @Value("${app.sse.tracking.replay.max-prescriptions:10000}")
+    private int replayMaxPrescriptions;
+
+    // Recent events per prescription for Last-Event-ID replay, least recently used evicted first
+    private final Map<Long, ReplayBuffer> replayBuffers = Collections.synchronizedMap(
+            new LinkedHashMap<Long, ReplayBuffer>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, ReplayBuffer> eldest) {
+                    return size() > replayMaxPrescriptions;
+                }
+            });
+
+    @Value("${app.tracking.history-cache.max-prescriptions:5000}")
+    private int historyCacheMaxPrescriptions;
+
+    // publish() only sees this node's writes, so a timeline is reloaded once it is this old
+    @Value("${app.tracking.history-cache.ttl-seconds:60}")
+    private long historyCacheTtlSeconds;
+
+    // Full timeline per prescription, kept current by publish(); lists are immutable and replaced on write
+    private final Map<Long, CachedHistory> historyCache = Collections.synchronizedMap(
+            new LinkedHashMap<Long, CachedHistory>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CachedHistory> eldest) {
+                    return size() > historyCacheMaxPrescriptions;
+                }
+            });
+
+    private final LongAdder historyHits = new LongAdder();
+    private final LongAdder historyMisses = new LongAdder();
+    private final LongAdder replayFromBuffer = new LongAdder();
+    private final LongAdder replayFromDatabase = new LongAdder();
+    private final LongAdder replayResyncs = new LongAdder();
+
+    // Every viewer of a prescription (patient, pharmacist dashboard, ...) gets its own connection
+    private SseHub<Long> hub;
+
+    @PostConstruct
+    void init() {
+        hub = new SseHub<>("tracking", queueCapacity, sseExecutor, objectMapper);
+    }
 
     public PrescriptionTracking record(Long prescriptionId, PrescriptionTracking.Status status, String notes) {
         Prescription prescription = prescriptionRepository.findById(prescriptionId).orElseThrow();
@@ -27,39 +93,236 @@ public class TrackingService {
         t.setStatus(status);
         t.setNotes(notes);
         PrescriptionTracking saved = trackingRepository.save(t);
-        // broadcast
-        SseEmitter emitter = prescriptionEmitters.get(prescriptionId);
-        if (emitter != null) {
-            try {
-                emitter.send(SseEmitter.event().name("tracking").data(saved));
-            } catch (IOException ignored) {}
-        }
+        // broadcast once the caller's transaction commits; payload is built now while the entity is attached
+        TrackingEvent event = new TrackingEvent(saved);
+        TransactionHooks.afterCommit(() -> publish(event));
         return saved;
     }
 
-    public List<PrescriptionTracking> history(Long prescriptionId) {
-        Prescription prescription = prescriptionRepository.findById(prescriptionId).orElseThrow();
-        List<PrescriptionTracking> list = trackingRepository.findByPrescriptionOrderByCreatedAtAsc(prescription);
-        if (list.isEmpty()) {
-            // Bootstrap minimal history so the timeline is not empty for legacy data
-            record(prescriptionId, PrescriptionTracking.Status.UPLOADED, null);
-            // Best-effort additional point if already approved
-            try {
-                if (prescription.getStatus() == com.medapp.model.Prescription.Status.APPROVED) {
-                    record(prescriptionId, PrescriptionTracking.Status.APPROVED, null);
-                }
-            } catch (Exception ignored) {}
-            list = trackingRepository.findByPrescriptionOrderByCreatedAtAsc(prescription);
+    /**
+     * Record the same status for many prescriptions with one batched insert (bulk dispatch).
+     * Events are published after commit exactly as record() does.
+     */
+    public List<TrackingEvent> recordAll(List<Long> prescriptionIds, PrescriptionTracking.Status status, String notes) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = trackingBatchWriter.insertAll(prescriptionIds, status, notes, now);
+        List<TrackingEvent> events = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            events.add(new TrackingEvent(ids.get(i), prescriptionIds.get(i), status, notes, now));
+        }
+        TransactionHooks.afterCommit(() -> events.forEach(this::publish));
+        return events;
+    }
+
+    private void publish(TrackingEvent event) {
+        ReplayBuffer buffer = replayBuffers.computeIfAbsent(event.prescriptionId, id -> new ReplayBuffer(replayBufferSize));
+        // Buffer append and fan-out happen under the buffer lock so a concurrent replay sees each event exactly once
+        synchronized (buffer) {
+            buffer.add(event);
+            CachedHistory cached = historyCache.get(event.prescriptionId);
+            if (cached != null && (cached.events.isEmpty() || cached.events.get(cached.events.size() - 1).id < event.id)) {
+                List<TrackingEvent> updated = new ArrayList<>(cached.events.size() + 1);
+                updated.addAll(cached.events);
+                updated.add(event);
+                // Keeps the original expiry: other nodes' writes are only picked up by a reload
+                historyCache.put(event.prescriptionId, new CachedHistory(Collections.unmodifiableList(updated), cached.expiresAt));
+            }
+            hub.publish(event.prescriptionId, EVENT_TRACKING, String.valueOf(event.id), event);
+        }
+    }
+
+    /**
+     * Timeline of a prescription, oldest first. Read-only: legacy prescriptions
+     * without rows are backfilled once by TrackingBackfillJob, not here.
+     */
+    public List<TrackingEvent> history(Long prescriptionId) {
+        CachedHistory cached = historyCache.get(prescriptionId);
+        if (cached != null && System.nanoTime() - cached.expiresAt < 0) {
+            historyHits.increment();
+            return cached.events;
+        }
+        historyMisses.increment();
+
+        List<TrackingEvent> loaded = new ArrayList<>();
+        long lastLoadedId = 0;
+        for (PrescriptionTracking t : trackingRepository.findByPrescriptionIdOrdered(prescriptionId)) {
+            loaded.add(new TrackingEvent(t));
+            lastLoadedId = Math.max(lastLoadedId, t.getId());
+        }
+        if (loaded.isEmpty() && !prescriptionRepository.existsById(prescriptionId)) {
+            throw new NoSuchElementException("Prescription not found");
+        }
+
+        ReplayBuffer buffer = replayBuffers.computeIfAbsent(prescriptionId, id -> new ReplayBuffer(replayBufferSize));
+        synchronized (buffer) {
+            // Anything published while the query ran is in the replay buffer
+            loaded.addAll(buffer.eventsAfter(lastLoadedId));
+            List<TrackingEvent> history = Collections.unmodifiableList(loaded);
+            historyCache.put(prescriptionId,
+                    new CachedHistory(history, System.nanoTime() + historyCacheTtlSeconds * 1_000_000_000L));
+            return history;
+        }
+    }
+
+    /**
+     * Drop cached timelines whose rows were written outside record() (backfill)
+     */
+    public void evictHistory(Collection<Long> prescriptionIds) {
+        for (Long prescriptionId : prescriptionIds) {
+            historyCache.remove(prescriptionId);
         }
-        return list;
     }
 
     public SseEmitter subscribe(Long prescriptionId) {
-        SseEmitter emitter = new SseEmitter(0L);
-        prescriptionEmitters.put(prescriptionId, emitter);
-        emitter.onCompletion(() -> prescriptionEmitters.remove(prescriptionId));
-        emitter.onTimeout(() -> prescriptionEmitters.remove(prescriptionId));
-        return emitter;
+        return subscribe(prescriptionId, null);
+    }
+
+    /**
+     * Subscribe, replaying events after lastEventId (the SSE Last-Event-ID of a reconnecting client).
+     * Recent events come from the in-memory buffer; anything older than the buffer covers is read
+     * from the database. If too much was missed, a single "resync" event tells the client to reload history.
+     */
+    public SseEmitter subscribe(Long prescriptionId, Long lastEventId) {
+        if (lastEventId == null) {
+            return hub.subscribe(prescriptionId, 0L);
+        }
+        int replayLimit = Math.max(1, queueCapacity - 2);
+        ReplayBuffer buffer = replayBuffers.computeIfAbsent(prescriptionId, id -> new ReplayBuffer(replayBufferSize));
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            long coveredAfter;
+            synchronized (buffer) {
+                coveredAfter = buffer.coveredAfter;
+                if (lastEventId >= coveredAfter) {
+                    replayFromBuffer.increment();
+                    return hub.subscribe(prescriptionId, 0L, toReplay(buffer.eventsAfter(lastEventId)));
+                }
+            }
+
+            // The buffer does not reach back far enough; read the gap from the database outside the lock
+            List<PrescriptionTracking> missed = trackingRepository.findRange(prescriptionId, lastEventId,
+                    coveredAfter, PageRequest.of(0, replayLimit + 1));
+            if (missed.size() > replayLimit) {
+                break;
+            }
+            synchronized (buffer) {
+                if (buffer.coveredAfter != coveredAfter) {
+                    // Events arrived or were evicted meanwhile; look again
+                    continue;
+                }
+                List<TrackingEvent> replay = new ArrayList<>();
+                long last = lastEventId;
+                for (PrescriptionTracking t : missed) {
+                    replay.add(new TrackingEvent(t));
+                    last = t.getId();
+                }
+                replay.addAll(buffer.eventsAfter(last));
+                replayFromDatabase.increment();
+                return hub.subscribe(prescriptionId, 0L, toReplay(replay));
+            }
+        }
+
+        replayResyncs.increment();
+        return hub.subscribe(prescriptionId, 0L,
+                List.of(new SseHub.Event(EVENT_RESYNC, null, Map.of("prescriptionId", prescriptionId))));
+    }
+
+    private static List<SseHub.Event> toReplay(List<TrackingEvent> events) {
+        List<SseHub.Event> replay = new ArrayList<>(events.size());
+        for (TrackingEvent event : events) {
+            replay.add(new SseHub.Event(EVENT_TRACKING, String.valueOf(event.id), event));
+        }
+        return replay;
+    }
+
+    @Scheduled(fixedRateString = "${app.sse.heartbeat-ms:25000}")
+    public void heartbeat() {
+        hub.heartbeat();
+    }
+
+    public Map<String, Object> getStreamStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(hub.getStats());
+        stats.put("historyCached", historyCache.size());
+        stats.put("historyHits", historyHits.sum());
+        stats.put("historyMisses", historyMisses.sum());
+        stats.put("replayBuffers", replayBuffers.size());
+        stats.put("replayFromBuffer", replayFromBuffer.sum());
+        stats.put("replayFromDatabase", replayFromDatabase.sum());
+        stats.put("replayResyncs", replayResyncs.sum());
+        return stats;
+    }
+
+    /**
+     * A cached timeline and when (System.nanoTime) it must be reloaded
+     */
+    private static class CachedHistory {
+        final List<TrackingEvent> events;
+        final long expiresAt;
+
+        CachedHistory(List<TrackingEvent> events, long expiresAt) {
+            this.events = events;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Last few events of one prescription. Every event with an id greater than
+     * coveredAfter is held here; older ones must come from the database.
+     * Callers synchronize on the buffer.
+     */
+    private static class ReplayBuffer {
+        private final int capacity;
+        private final ArrayDeque<TrackingEvent> events = new ArrayDeque<>();
+        // Nothing is known until the first event arrives
+        private long coveredAfter = Long.MAX_VALUE;
+
+        ReplayBuffer(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(TrackingEvent event) {
+            if (coveredAfter == Long.MAX_VALUE) {
+                coveredAfter = event.id - 1;
+            }
+            events.addLast(event);
+            while (events.size() > capacity) {
+                coveredAfter = events.removeFirst().id;
+            }
+        }
+
+        List<TrackingEvent> eventsAfter(long id) {
+            List<TrackingEvent> result = new ArrayList<>();
+            for (TrackingEvent event : events) {
+                if (event.id > id) {
+                    result.add(event);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * What a timeline needs to render one step
+     */
+    public static class TrackingEvent {
+        public final Long id;
+        public final Long prescriptionId;
+        public final PrescriptionTracking.Status status;
+        public final String notes;
+        public final String createdAt;
+
+        public TrackingEvent(PrescriptionTracking t) {
+            this(t.getId(), t.getPrescription().getId(), t.getStatus(), t.getNotes(), t.getCreatedAt());
+        }
+
+        public TrackingEvent(Long id, Long prescriptionId, PrescriptionTracking.Status status, String notes,
+                             LocalDateTime createdAt) {
+            this.id = id;
+            this.prescriptionId = prescriptionId;
+            this.status = status;
+            this.notes = notes;
+            this.createdAt = createdAt != null ? createdAt.toString() : null;
+        }
     }
 }
 
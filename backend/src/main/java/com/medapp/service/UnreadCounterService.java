@@ -0,0 +1,149 @@
+package com.medapp.service;
+
+import com.medapp.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process unread message counters per user, so polling the unread count is a
+ * memory read instead of a COUNT over messages.
+ *
+ * A counter is seeded from the database the first time a user asks, then moved
+ * by message writes after they commit. Increments for users with no counter are
+ * skipped, since the seed will include them. A scheduled pass re-counts tracked
+ * users to correct drift (e.g. a write that committed between seed and insert)
+ * and forgets users that have not asked for a while.
+ */
+@Service
+public class UnreadCounterService {
+    private static final Logger logger = LoggerFactory.getLogger(UnreadCounterService.class);
+
+    private static final int RECONCILE_CHUNK = 500;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Value("${app.chat.unread.idle-eviction-minutes:60}")
+    private long idleEvictionMinutes;
+
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder seeds = new LongAdder();
+    private final LongAdder reconcileRuns = new LongAdder();
+    private final LongAdder reconcileCorrections = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Current unread count for a user
+     */
+    public long get(Long userId) {
+        Counter counter = counters.get(userId);
+        if (counter == null) {
+            seeds.increment();
+            long fromDb = messageRepository.countUnreadByReceiverId(userId);
+            Counter seeded = new Counter(fromDb);
+            counter = counters.putIfAbsent(userId, seeded);
+            if (counter == null) {
+                counter = seeded;
+            }
+        } else {
+            hits.increment();
+        }
+        counter.lastAccess = System.currentTimeMillis();
+        return Math.max(0, counter.count.sum());
+    }
+
+    public void incrementAfterCommit(Long userId) {
+        TransactionHooks.afterCommit(() -> add(userId, 1));
+    }
+
+    public void decrementAfterCommit(Long userId, long by) {
+        if (by > 0) {
+            TransactionHooks.afterCommit(() -> add(userId, -by));
+        }
+    }
+
+    private void add(Long userId, long delta) {
+        Counter counter = counters.get(userId);
+        if (counter != null) {
+            counter.count.add(delta);
+        }
+    }
+
+    /**
+     * Re-count tracked users against the database and drop idle ones
+     */
+    @Scheduled(fixedDelayString = "${app.chat.unread.reconcile-ms:300000}")
+    public void reconcile() {
+        reconcileRuns.increment();
+        long idleBefore = System.currentTimeMillis() - idleEvictionMinutes * 60_000L;
+        counters.entrySet().removeIf(e -> {
+            if (e.getValue().lastAccess < idleBefore) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        });
+
+        List<Long> userIds = new ArrayList<>(counters.keySet());
+        int corrected = 0;
+        for (int from = 0; from < userIds.size(); from += RECONCILE_CHUNK) {
+            List<Long> chunk = userIds.subList(from, Math.min(from + RECONCILE_CHUNK, userIds.size()));
+            Map<Long, Long> actual = new HashMap<>();
+            for (Object[] row : messageRepository.countUnreadGroupedByReceiver(chunk)) {
+                actual.put((Long) row[0], (Long) row[1]);
+            }
+            for (Long userId : chunk) {
+                Counter counter = counters.get(userId);
+                if (counter == null) {
+                    continue;
+                }
+                long drift = actual.getOrDefault(userId, 0L) - counter.count.sum();
+                if (drift != 0) {
+                    counter.count.add(drift);
+                    corrected++;
+                }
+            }
+        }
+        if (corrected > 0) {
+            reconcileCorrections.add(corrected);
+            logger.info("Unread counter reconciliation corrected {} of {} users", corrected, userIds.size());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.sum();
+        long seedCount = seeds.sum();
+        stats.put("trackedUsers", counters.size());
+        stats.put("hits", hitCount);
+        stats.put("seeds", seedCount);
+        stats.put("hitRatio", hitCount + seedCount == 0 ? 0.0 : (double) hitCount / (hitCount + seedCount));
+        stats.put("reconcileRuns", reconcileRuns.sum());
+        stats.put("reconcileCorrections", reconcileCorrections.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    private static class Counter {
+        final LongAdder count = new LongAdder();
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Counter(long initial) {
+            count.add(initial);
+        }
+    }
+}
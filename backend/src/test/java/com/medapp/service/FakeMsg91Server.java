@@ -0,0 +1,97 @@
+package com.medapp.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * Stand-in for the MSG91 flow endpoint (POST /api/v5/flow/). Replies with
+ * the configured status and body after delayMs, records request bodies and
+ * authkey headers, and counts distinct client connections by remote port.
+ */
+class FakeMsg91Server implements AutoCloseable {
+
+    private final HttpServer server;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<String> authKeys = new CopyOnWriteArrayList<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private volatile int status = 200;
+    private volatile String responseBody = "{\"type\":\"success\",\"message\":\"3763646c3058373530393938\"}";
+    private volatile long delayMs;
+
+    FakeMsg91Server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/v5/flow/", this::handle);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/v5/flow/";
+    }
+
+    void respond(int status, String body) {
+        this.status = status;
+        this.responseBody = body;
+    }
+
+    void setDelayMs(long delayMs) {
+        this.delayMs = delayMs;
+    }
+
+    /**
+     * Forget recorded requests and connections (after a warm-up call)
+     */
+    void reset() {
+        requests.clear();
+        authKeys.clear();
+        clientPorts.clear();
+    }
+
+    List<String> getRequests() {
+        return requests;
+    }
+
+    List<String> getAuthKeys() {
+        return authKeys;
+    }
+
+    int getConnections() {
+        return clientPorts.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        authKeys.add(exchange.getRequestHeaders().getFirst("authkey"));
+        requests.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        if (delayMs > 0) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] body = responseBody.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,131 @@
+package com.medapp.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough of an SMTP server for the mail pool tests: accepts every message,
+ * rejects recipients containing "reject" (550) and defers those containing
+ * "busy" (450), and counts connections. greetingDelayMs
+ * stands in for the TCP + STARTTLS + AUTH cost of opening a real session.
+ */
+class FakeSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final long greetingDelayMs;
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<String> recipients = new CopyOnWriteArrayList<>();
+
+    FakeSmtpServer(long greetingDelayMs) throws IOException {
+        this.greetingDelayMs = greetingDelayMs;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        threads.execute(this::acceptLoop);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    List<String> getRecipients() {
+        return recipients;
+    }
+
+    /**
+     * Drop every open client connection, as a server timing out idle sessions would
+     */
+    void dropConnections() throws IOException {
+        for (Socket socket : open) {
+            socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                open.add(socket);
+                threads.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+            if (greetingDelayMs > 0) {
+                Thread.sleep(greetingDelayMs);
+            }
+            reply(out, "220 localhost fake ESMTP");
+            String recipient = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("EHLO")) {
+                    reply(out, "250-localhost\r\n250 8BITMIME");
+                } else if (command.startsWith("RCPT TO")) {
+                    if (command.contains("REJECT")) {
+                        reply(out, "550 No such user");
+                    } else if (command.contains("BUSY")) {
+                        reply(out, "450 Mailbox busy, try again later");
+                    } else {
+                        recipient = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                        reply(out, "250 OK");
+                    }
+                } else if (command.equals("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        // Discard the message body
+                    }
+                    recipients.add(recipient);
+                    reply(out, "250 OK queued");
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    // HELO, MAIL FROM, RSET, NOOP
+                    recipient = command.startsWith("RSET") ? null : recipient;
+                    reply(out, "250 OK");
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Client went away or the test dropped the connection
+        } finally {
+            open.remove(socket);
+        }
+    }
+
+    private static void reply(OutputStream out, String response) throws IOException {
+        out.write((response + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+        threads.shutdownNow();
+    }
+}
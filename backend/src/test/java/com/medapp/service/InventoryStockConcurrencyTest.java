@@ -0,0 +1,186 @@
+package com.medapp.service;
+
+import com.medapp.exception.InsufficientStockException;
+import com.medapp.model.Inventory;
+import com.medapp.model.Medicine;
+import com.medapp.model.Pharmacist;
+import com.medapp.model.User;
+import com.medapp.repository.InventoryRepository;
+import com.medapp.repository.MedicineRepository;
+import com.medapp.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Hammers one inventory row from many threads, each fill in its own transaction,
+ * and checks the conditional decrement neither oversells nor loses deductions.
+ */
+@DataJpaTest
+@Import(InventoryService.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:inventory_stock;MODE=MySQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryStockConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentFillsNeverOversell() throws Exception {
+        Fixture fixture = createInventory("oversell", 100);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        // 16 threads x 20 fills of 1 unit = 320 attempts against 100 in stock
+        runConcurrently(20, () -> {
+            try {
+                fill(fixture, 1);
+                succeeded.incrementAndGet();
+            } catch (InsufficientStockException e) {
+                rejected.incrementAndGet();
+            }
+        });
+
+        assertThat(succeeded.get()).isEqualTo(100);
+        assertThat(rejected.get()).isEqualTo(THREADS * 20 - 100);
+        assertThat(stockOf(fixture)).isZero();
+    }
+
+    @Test
+    void concurrentFillsLoseNoDecrements() throws Exception {
+        Fixture fixture = createInventory("no-lost-updates", 1000);
+
+        // 16 threads x 25 fills of 2 units = 800 units, all of which fit
+        runConcurrently(25, () -> fill(fixture, 2));
+
+        assertThat(stockOf(fixture)).isEqualTo(200);
+        assertThat(inventoryRepository.findById(fixture.inventoryId).orElseThrow().getVersion())
+                .isEqualTo(THREADS * 25L);
+    }
+
+    @Test
+    void manualEditBasedOnStaleRowFailsAfterFill() {
+        Fixture fixture = createInventory("stale-edit", 10);
+        Inventory staleCopy = inventoryRepository.findById(fixture.inventoryId).orElseThrow();
+
+        fill(fixture, 3);
+
+        staleCopy.setStockQuantity(50);
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> inventoryRepository.save(staleCopy));
+        assertThat(stockOf(fixture)).isEqualTo(7);
+    }
+
+    private void fill(Fixture fixture, int quantity) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                inventoryService.deductStock(fixture.pharmacistId, Map.of(fixture.medicineId, quantity)));
+    }
+
+    private void runConcurrently(int iterationsPerThread, Runnable fill) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < iterationsPerThread; i++) {
+                        fill.run();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private int stockOf(Fixture fixture) {
+        return inventoryRepository.findById(fixture.inventoryId).orElseThrow().getStockQuantity();
+    }
+
+    private Fixture createInventory(String name, int stock) {
+        Pharmacist pharmacist = new Pharmacist();
+        pharmacist.setName("Pharmacist " + name);
+        pharmacist.setEmail(name + "@pharmacy.test");
+        pharmacist.setPassword("secret");
+        pharmacist.setRole(User.Role.PHARMACIST);
+        pharmacist.setIsApproved(true);
+        pharmacist = userRepository.save(pharmacist);
+
+        Medicine medicine = new Medicine();
+        medicine.setName("Medicine " + name);
+        medicine.setManufacturer("Test Labs");
+        medicine.setDosageForm("Tablet");
+        medicine.setStrength("10mg");
+        medicine = medicineRepository.save(medicine);
+
+        Inventory inventory = new Inventory();
+        inventory.setMedicine(medicine);
+        inventory.setPharmacist(pharmacist);
+        inventory.setStockQuantity(stock);
+        inventory.setLowStockThreshold(5);
+        inventory = inventoryRepository.save(inventory);
+
+        return new Fixture(inventory.getId(), medicine.getId(), pharmacist.getId());
+    }
+
+    private static class Fixture {
+        final Long inventoryId;
+        final Long medicineId;
+        final Long pharmacistId;
+
+        Fixture(Long inventoryId, Long medicineId, Long pharmacistId) {
+            this.inventoryId = inventoryId;
+            this.medicineId = medicineId;
+            this.pharmacistId = pharmacistId;
+        }
+    }
+}
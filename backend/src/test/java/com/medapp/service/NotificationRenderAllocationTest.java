@@ -0,0 +1,76 @@
+package com.medapp.service;
+
+import com.medapp.model.FilledMedicine;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bytes allocated per refill reminder body: the old String.format plus stream
+ * reduce concatenation against the compiled template. Measured per thread with
+ * com.sun.management.ThreadMXBean after a warm-up, and printed.
+ */
+class NotificationRenderAllocationTest {
+
+    private static final int WARMUP = 20_000;
+    private static final int RENDERS = 50_000;
+    private static final int MEDICINES = 8;
+
+    @Test
+    void compiledTemplateAllocatesLessThanFormatAndConcat() throws Exception {
+        NotificationTemplates templates = new NotificationTemplates("classpath:notifications/", "en");
+        List<FilledMedicine> medicines = new ArrayList<>();
+        for (int i = 0; i < MEDICINES; i++) {
+            medicines.add(NotificationTemplatesTest.medicine("Medicine " + i, 10 + i));
+        }
+        LocalDate due = LocalDate.of(2026, 3, 7);
+
+        Render concat = () -> {
+            String list = medicines.stream()
+                    .map(fm -> String.format("- %s (x%d)", fm.getMedicineName(), fm.getTotalNeeded()))
+                    .reduce("", (a, b) -> a.isEmpty() ? b : a + "\n" + b);
+            return String.format("Hello %s,\n\nThis is a reminder that your medicines for prescription #%s will run out soon.\n"
+                    + "Refill Due Date: %s\n\nMedicines (with dosage):\n%s\n\nYou can request a refill from your ReMedGo dashboard.\n\n- ReMedGo",
+                    "Asha", "42", due.toString(), list);
+        };
+        Render template = () -> templates.render("refill-reminder", new TemplateParams()
+                .set(TemplateKey.PATIENT_NAME, "Asha")
+                .set(TemplateKey.PRESCRIPTION_ID, 42L)
+                .set(TemplateKey.REFILL_DATE, due)
+                .set(TemplateKey.MEDICINES, NotificationTemplates.medicineItems(medicines))).text;
+
+        long concatBytes = bytesPerRender(concat);
+        long templateBytes = bytesPerRender(template);
+
+        System.out.printf("Refill reminder body, %d medicines, bytes allocated per render:%n", MEDICINES);
+        System.out.printf("  String.format + reduce: %8d%n", concatBytes);
+        System.out.printf("  compiled template:      %8d%n", templateBytes);
+
+        assertThat(templateBytes).isLessThan(concatBytes);
+    }
+
+    private static long bytesPerRender(Render render) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += render.run().length();
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < RENDERS; i++) {
+            sink += render.run().length();
+        }
+        long after = threads.getThreadAllocatedBytes(thread);
+        assertThat(sink).isPositive();
+        return (after - before) / RENDERS;
+    }
+
+    private interface Render {
+        String run();
+    }
+}
@@ -0,0 +1,104 @@
+package com.medapp.service;
+
+import com.medapp.model.FilledMedicine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * NotificationTemplates against the templates in notification-templates-test/ and the shipped ones
+ */
+class NotificationTemplatesTest {
+
+    private NotificationTemplates templates;
+
+    @BeforeEach
+    void load() throws Exception {
+        templates = new NotificationTemplates("classpath:notification-templates-test/", "en");
+    }
+
+    @Test
+    void rendersSubjectVariablesAndListSections() {
+        NotificationTemplates.Rendered rendered = templates.render("greeting", params()
+                .set(TemplateKey.REFILL_NOTE, "Take after food"));
+
+        assertThat(rendered.subject).isEqualTo("Prescription #42");
+        assertThat(rendered.text).isEqualTo("Hello Asha,\n"
+                + "- Paracetamol (x10)\n"
+                + "- Cetirizine (x5)\n"
+                + "Note: Take after food\n"
+                + "Due 2026-03-07");
+    }
+
+    @Test
+    void sectionOverAnEmptyValueIsSkipped() {
+        NotificationTemplates.Rendered rendered = templates.render("greeting", params()
+                .set(TemplateKey.MEDICINES, List.of())
+                .set(TemplateKey.REFILL_NOTE, " "));
+
+        assertThat(rendered.text).isEqualTo("Hello Asha,\nDue 2026-03-07");
+    }
+
+    @Test
+    void localeFallsBackFromCountryToLanguageToDefault() {
+        assertThat(templates.render("greeting", new Locale("hi", "IN"), params()).text).isEqualTo("नमस्ते Asha");
+        assertThat(templates.render("greeting", new Locale("hi"), params()).subject).isEqualTo("नुस्खा #42");
+        assertThat(templates.render("greeting", Locale.FRANCE, params()).subject).isEqualTo("Prescription #42");
+    }
+
+    @Test
+    void htmlValuesAreEscaped() {
+        NotificationTemplates.Rendered rendered = templates.render("greeting", params()
+                .set(TemplateKey.PATIENT_NAME, "<b>Asha</b> & co")
+                .set(TemplateKey.DELIVERY_ADDRESS, "12 MG Road\nBengaluru"));
+
+        assertThat(rendered.html).isEqualTo("<p>Hello &lt;b&gt;Asha&lt;/b&gt; &amp; co</p><p>12 MG Road<br>Bengaluru</p>");
+        assertThat(rendered.text).startsWith("Hello <b>Asha</b> & co,");
+    }
+
+    @Test
+    void unknownKeysAndUnbalancedSectionsFailAtParse() {
+        assertThatThrownBy(() -> NotificationTemplates.parse("bad.txt", "Hi {{nickname}}", false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("unknown template key {{nickname}}");
+        assertThatThrownBy(() -> NotificationTemplates.parse("bad.txt", "{{#medicines}}x", false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("unclosed");
+        assertThatThrownBy(() -> NotificationTemplates.parse("bad.txt", "{{medicines}}", false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("only be used as a section");
+    }
+
+    @Test
+    void shippedTemplatesAllLoad() throws Exception {
+        NotificationTemplates shipped = new NotificationTemplates("classpath:notifications/", "en");
+
+        NotificationTemplates.Rendered reminder = shipped.render("refill-reminder", params());
+        assertThat(reminder.subject).isEqualTo("ReMedGo – Refill Reminder");
+        assertThat(reminder.text).contains("prescription #42", "Refill Due Date: 2026-03-07", "- Paracetamol (x10)\n- Cetirizine (x5)\n");
+        assertThat(reminder.html).contains("Paracetamol");
+        assertThat(shipped.hasTemplate("sms-medicine-filled")).isTrue();
+    }
+
+    static TemplateParams params() {
+        return new TemplateParams()
+                .set(TemplateKey.PATIENT_NAME, "Asha")
+                .set(TemplateKey.PRESCRIPTION_ID, 42L)
+                .set(TemplateKey.REFILL_DATE, LocalDate.of(2026, 3, 7))
+                .set(TemplateKey.MEDICINES, NotificationTemplates.medicineItems(List.of(
+                        medicine("Paracetamol", 10), medicine("Cetirizine", 5))));
+    }
+
+    static FilledMedicine medicine(String name, int quantity) {
+        FilledMedicine medicine = new FilledMedicine();
+        medicine.setMedicineName(name);
+        medicine.setTotalNeeded(quantity);
+        return medicine;
+    }
+}
@@ -0,0 +1,170 @@
+package com.medapp.service;
+
+import com.medapp.config.SmsClientConfig;
+import com.medapp.exception.NotificationDeliveryException;
+import com.medapp.exception.SmsRecipientRejectedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SmsService's HTTP client, timeouts and circuit breaker against a local MSG91 flow stub
+ */
+class SmsServiceTest {
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_MS = 200;
+
+    private FakeMsg91Server server;
+    private CircuitBreaker breaker;
+    private SmsService smsService;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new FakeMsg91Server();
+        breaker = new CircuitBreaker("msg91", FAILURE_THRESHOLD, OPEN_MS);
+        smsService = new SmsService(SmsClientConfig.smsRestTemplate(Duration.ofSeconds(1), Duration.ofMillis(300)),
+                breaker, null);
+        ReflectionTestUtils.setField(smsService, "msg91ApiKey", "test-key");
+        ReflectionTestUtils.setField(smsService, "senderId", "REMEDGO");
+        ReflectionTestUtils.setField(smsService, "templateId", "flow-1");
+        ReflectionTestUtils.setField(smsService, "msg91ApiUrl", server.getUrl());
+
+        // Load the HTTP client and JSON stack on a client with a generous timeout, so a
+        // cold first request never hits the short read timeout; then start counting afresh
+        SmsClientConfig.smsRestTemplate(Duration.ofSeconds(5), Duration.ofSeconds(10))
+                .postForEntity(server.getUrl(), Map.of("flow_id", "warm-up"), Map.class);
+        server.reset();
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    @Test
+    void sendsFlowRequestsOverOneKeptAliveConnection() {
+        for (int i = 0; i < 5; i++) {
+            smsService.deliver("9198765432" + i, "Refill due");
+        }
+
+        assertThat(server.getRequests()).hasSize(5);
+        assertThat(server.getRequests().get(0)).contains("\"flow_id\":\"flow-1\"", "\"mobiles\":\"91987654320\"", "\"VAR1\":\"Refill due\"");
+        assertThat(server.getAuthKeys()).containsOnly("test-key");
+        assertThat(server.getConnections()).isEqualTo(1);
+    }
+
+    @Test
+    void batchSendsAllRecipientsInOneRequest() {
+        String requestId = smsService.deliverBatch(List.of(
+                new SmsService.Recipient("919876543210", "Refill due for #1"),
+                new SmsService.Recipient("919876543211", "Refill due for #2"),
+                new SmsService.Recipient("919876543212", "Refill due for #3")));
+
+        assertThat(requestId).isEqualTo("3763646c3058373530393938");
+        assertThat(server.getRequests()).hasSize(1);
+        assertThat(server.getRequests().get(0)).contains(
+                "\"recipients\":[", "\"mobiles\":\"919876543211\"", "\"VAR1\":\"Refill due for #3\"");
+    }
+
+    @Test
+    void slowProviderHitsTheReadTimeout() {
+        server.setDelayMs(2_000);
+
+        assertThatThrownBy(() -> smsService.deliver("919876543210", "Refill due"))
+                .isInstanceOf(NotificationDeliveryException.class)
+                .matches(e -> ((NotificationDeliveryException) e).isRetryable())
+                .hasMessageContaining("timed out");
+
+        assertThat(breaker.getStats().get("failures")).isEqualTo(1L);
+    }
+
+    @Test
+    void breakerOpensAfterConsecutiveFailuresAndFailsFast() {
+        server.respond(503, "{\"type\":\"error\"}");
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertThatThrownBy(() -> smsService.deliver("919876543210", "Refill due"))
+                    .isInstanceOf(NotificationDeliveryException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThatThrownBy(() -> smsService.deliver("919876543210", "Refill due"))
+                .isInstanceOf(NotificationDeliveryException.class)
+                .hasMessageContaining("circuit breaker is open");
+        assertThat(server.getRequests()).hasSize(FAILURE_THRESHOLD);
+        assertThat(breaker.getStats().get("rejected")).isEqualTo(1L);
+    }
+
+    @Test
+    void successfulTrialAfterOpenPeriodClosesTheBreaker() throws Exception {
+        tripBreaker();
+        server.respond(200, "{\"type\":\"success\",\"message\":\"ok\"}");
+        Thread.sleep(OPEN_MS + 50);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        smsService.deliver("919876543210", "Refill due");
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getStats().get("timesOpened")).isEqualTo(1L);
+    }
+
+    @Test
+    void failedTrialReopensTheBreaker() throws Exception {
+        tripBreaker();
+        Thread.sleep(OPEN_MS + 50);
+
+        assertThatThrownBy(() -> smsService.deliver("919876543210", "Refill due"))
+                .isInstanceOf(NotificationDeliveryException.class);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.getStats().get("timesOpened")).isEqualTo(2L);
+        assertThat(server.getRequests()).hasSize(FAILURE_THRESHOLD + 1);
+    }
+
+    @Test
+    void rejectedRequestsDoNotTripTheBreaker() {
+        server.respond(400, "{\"type\":\"error\",\"message\":\"Invalid mobile\"}");
+        for (int i = 0; i < FAILURE_THRESHOLD + 2; i++) {
+            assertThatThrownBy(() -> smsService.deliver("12", "Refill due"))
+                    .isInstanceOf(NotificationDeliveryException.class)
+                    .matches(e -> !((NotificationDeliveryException) e).isRetryable());
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(server.getRequests()).hasSize(FAILURE_THRESHOLD + 2);
+    }
+
+    @Test
+    void onlyRecipientLevelRejectionsAreReportedAsSuch() {
+        List<SmsService.Recipient> batch = List.of(new SmsService.Recipient("919876543210", "Refill due"));
+
+        server.respond(400, "{\"type\":\"error\",\"message\":\"Invalid mobile number\"}");
+        assertThatThrownBy(() -> smsService.deliverBatch(batch)).isInstanceOf(SmsRecipientRejectedException.class);
+
+        server.respond(400, "{\"type\":\"error\",\"message\":\"Flow ID is invalid\"}");
+        assertThatThrownBy(() -> smsService.deliverBatch(batch))
+                .isInstanceOf(NotificationDeliveryException.class)
+                .isNotInstanceOf(SmsRecipientRejectedException.class);
+
+        server.respond(401, "{\"type\":\"error\",\"message\":\"Authentication failure\"}");
+        assertThatThrownBy(() -> smsService.deliverBatch(batch))
+                .isInstanceOf(NotificationDeliveryException.class)
+                .isNotInstanceOf(SmsRecipientRejectedException.class);
+    }
+
+    private void tripBreaker() {
+        server.respond(500, "{\"type\":\"error\"}");
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertThatThrownBy(() -> smsService.deliver("919876543210", "Refill due"))
+                    .isInstanceOf(NotificationDeliveryException.class);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.medapp.service;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SmtpConnectionPool against an in-process SMTP stand-in
+ */
+class SmtpConnectionPoolTest {
+
+    private FakeSmtpServer server;
+    private Session session;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new FakeSmtpServer(0);
+        Properties props = new Properties();
+        props.put("mail.smtp.connectiontimeout", "5000");
+        props.put("mail.smtp.timeout", "5000");
+        session = Session.getInstance(props);
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        server.close();
+    }
+
+    @Test
+    void concurrentSendsShareAtMostPoolSizeConnections() throws Exception {
+        try (SmtpConnectionPool pool = pool(2, 100)) {
+            ExecutorService threads = Executors.newFixedThreadPool(8);
+            List<Future<?>> sends = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String to = "patient" + i + "@example.com";
+                sends.add(threads.submit(() -> {
+                    pool.send(message(to));
+                    return null;
+                }));
+            }
+            for (Future<?> send : sends) {
+                send.get();
+            }
+            threads.shutdown();
+
+            assertThat(server.getRecipients()).hasSize(40);
+            assertThat(server.getConnections()).isLessThanOrEqualTo(2);
+        }
+    }
+
+    @Test
+    void batchGoesOverOneConnection() throws Exception {
+        try (SmtpConnectionPool pool = pool(4, 100)) {
+            List<MessagingException> results = pool.sendAll(messages(25));
+
+            assertThat(results).hasSize(25).containsOnlyNulls();
+            assertThat(server.getConnections()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void rejectedRecipientFailsAloneAndKeepsTheConnection() throws Exception {
+        try (SmtpConnectionPool pool = pool(1, 100)) {
+            List<MessagingException> results = pool.sendAll(List.of(
+                    message("first@example.com"), message("reject@example.com"), message("third@example.com")));
+
+            assertThat(results.get(0)).isNull();
+            assertThat(results.get(1)).isInstanceOf(SendFailedException.class);
+            assertThat(results.get(2)).isNull();
+            assertThat(server.getRecipients()).containsExactly("first@example.com", "third@example.com");
+            assertThat(server.getConnections()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void recipientFailuresAreRetryableOnlyFor4xxReplies() throws Exception {
+        try (SmtpConnectionPool pool = pool(1, 100)) {
+            List<MessagingException> results = pool.sendAll(List.of(
+                    message("reject@example.com"), message("busy@example.com")));
+
+            assertThat(results).allSatisfy(e -> assertThat(e).isInstanceOf(SendFailedException.class));
+            assertThat(EmailService.isRetryable(results.get(0))).isFalse();
+            assertThat(EmailService.isRetryable(results.get(1))).isTrue();
+            assertThat(EmailService.isRetryable(new MessagingException("Connection reset"))).isTrue();
+            // What Angus raises when the server closed the session: no reply code
+            assertThat(EmailService.isRetryable(
+                    new SMTPSendFailedException("MAIL FROM", -1, "[EOF]", null, null, null, null))).isTrue();
+            assertThat(EmailService.isRetryable(new SendFailedException("No recipient addresses"))).isFalse();
+        }
+    }
+
+    @Test
+    void brokenConnectionIsReplacedAndTheMessageRetried() throws Exception {
+        try (SmtpConnectionPool pool = pool(1, 100)) {
+            pool.send(message("before@example.com"));
+            server.dropConnections();
+
+            pool.send(message("after@example.com"));
+
+            assertThat(server.getRecipients()).containsExactly("before@example.com", "after@example.com");
+            assertThat(server.getConnections()).isEqualTo(2);
+            assertThat(pool.getStats().get("discarded")).isEqualTo(1L);
+        }
+    }
+
+    @Test
+    void interactiveSendUsesTheReserveWhileBulkSendsWait() throws Exception {
+        try (FakeSmtpServer slowServer = new FakeSmtpServer(1000);
+             SmtpConnectionPool pool = new SmtpConnectionPool(session, "smtp", "localhost", slowServer.getPort(),
+                     null, null, 1, 60_000, 100, 200, 1, 5_000)) {
+            ExecutorService threads = Executors.newSingleThreadExecutor();
+            Future<List<MessagingException>> bulk = threads.submit(() -> pool.sendAll(messages(1)));
+            Thread.sleep(100);
+
+            // The only bulk connection is busy opening; another batch gives up, an account email does not
+            assertThatThrownBy(() -> pool.sendAll(messages(1)))
+                    .isInstanceOf(MessagingException.class)
+                    .hasMessageContaining("Timed out");
+            pool.sendAllInteractive(List.of(message("reset@example.com")));
+
+            assertThat(bulk.get()).containsOnlyNulls();
+            threads.shutdown();
+            assertThat(slowServer.getRecipients()).containsExactlyInAnyOrder("patient0@example.com", "reset@example.com");
+            assertThat(pool.getStats().get("interactiveBorrows")).isEqualTo(1L);
+        }
+    }
+
+    @Test
+    void connectionIsRecycledAfterMaxMessages() throws Exception {
+        try (SmtpConnectionPool pool = pool(1, 5)) {
+            List<MessagingException> results = pool.sendAll(messages(12));
+
+            assertThat(results).containsOnlyNulls();
+            assertThat(server.getConnections()).isEqualTo(3);
+        }
+    }
+
+    private SmtpConnectionPool pool(int size, int maxMessagesPerConnection) {
+        return new SmtpConnectionPool(session, "smtp", "localhost", server.getPort(), null, null,
+                size, 60_000, maxMessagesPerConnection, 5_000);
+    }
+
+    private List<MimeMessage> messages(int count) throws MessagingException {
+        List<MimeMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(message("patient" + i + "@example.com"));
+        }
+        return messages;
+    }
+
+    private MimeMessage message(String to) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("noreply@example.com"));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
+        message.setSubject("ReMedGo – Refill Reminder", "UTF-8");
+        message.setText("Hello,\n\nYour medicines will run out soon.\n\n- ReMedGo", "UTF-8");
+        return message;
+    }
+}
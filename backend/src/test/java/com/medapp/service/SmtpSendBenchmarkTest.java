@@ -0,0 +1,95 @@
+package com.medapp.service;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of a connection per message (what JavaMailSender.send does) against
+ * the pool, with each new SMTP session costing HANDSHAKE_MS as STARTTLS and AUTH
+ * would. Prints messages per second for both.
+ */
+class SmtpSendBenchmarkTest {
+
+    private static final int MESSAGES = 200;
+    private static final int THREADS = 4;
+    private static final long HANDSHAKE_MS = 20;
+
+    @Test
+    void pooledConnectionsOutperformConnectionPerMessage() throws Exception {
+        try (FakeSmtpServer server = new FakeSmtpServer(HANDSHAKE_MS)) {
+            Session session = Session.getInstance(new Properties());
+
+            double perMessage = run(() -> {
+                Transport transport = session.getTransport("smtp");
+                transport.connect("localhost", server.getPort(), null, null);
+                try {
+                    MimeMessage message = message(session);
+                    transport.sendMessage(message, message.getAllRecipients());
+                } finally {
+                    transport.close();
+                }
+            });
+            int perMessageConnections = server.getConnections();
+
+            double pooled;
+            try (SmtpConnectionPool pool = new SmtpConnectionPool(session, "smtp", "localhost", server.getPort(),
+                    null, null, THREADS, 60_000, 1000, 5_000)) {
+                pooled = run(() -> pool.send(message(session)));
+            }
+            int pooledConnections = server.getConnections() - perMessageConnections;
+
+            System.out.printf("SMTP send, %d messages on %d threads, %d ms handshake:%n", MESSAGES, THREADS, HANDSHAKE_MS);
+            System.out.printf("  connection per message: %8.1f msg/s, %d connections%n", perMessage, perMessageConnections);
+            System.out.printf("  pooled:                 %8.1f msg/s, %d connections%n", pooled, pooledConnections);
+
+            assertThat(server.getRecipients()).hasSize(2 * MESSAGES);
+            assertThat(pooledConnections).isLessThanOrEqualTo(THREADS);
+            assertThat(pooled).isGreaterThan(perMessage);
+        }
+    }
+
+    private double run(Send send) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        List<Future<?>> sends = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            sends.add(threads.submit(() -> {
+                send.run();
+                return null;
+            }));
+        }
+        for (Future<?> future : sends) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        threads.shutdown();
+        return MESSAGES / seconds;
+    }
+
+    private static MimeMessage message(Session session) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("noreply@example.com"));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse("patient@example.com"));
+        message.setSubject("ReMedGo – Refill Reminder", "UTF-8");
+        message.setText("Hello,\n\nYour medicines will run out soon.\n\n- ReMedGo", "UTF-8");
+        return message;
+    }
+
+    private interface Send {
+        void run() throws Exception;
+    }
+}